@@ -43,6 +43,7 @@ import androidx.navigation.Navigation;
 import androidx.navigation.ui.NavigationUI;
 
 import com.codetrio.spatialflow.service.AudioPlaybackService;
+import com.codetrio.spatialflow.service.LibraryIndex;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.color.DynamicColors;
 
@@ -89,6 +90,8 @@ public class MainActivity extends AppCompatActivity implements DefaultLifecycleO
 
         startAudioService();
         checkAudioPermission();
+        // Reads the library index now so the song picker opens from memory
+        LibraryIndex.getInstance(this);
 
         navView = findViewById(R.id.nav_view);
         navController = Navigation.findNavController(this, R.id.nav_host_fragment_activity_main);
@@ -242,6 +245,16 @@ public class MainActivity extends AppCompatActivity implements DefaultLifecycleO
         }
     }
 
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == AUDIO_PERMISSION_REQUEST && grantResults.length > 0
+                && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            LibraryIndex.getInstance(this).sync();
+        }
+    }
+
     private void applyWindowInsetsBehavior() {
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.container), (v, insets) -> {
             Insets sys = insets.getInsets(WindowInsetsCompat.Type.systemBars());
@@ -1,6 +1,9 @@
 package com.codetrio.spatialflow;
 
 import android.app.Application;
+
+import com.codetrio.spatialflow.service.ExportQueue;
+import com.codetrio.spatialflow.service.ExportQueueService;
 import com.google.android.material.color.DynamicColors;
 
 public class SpatialFlowApplication extends Application {
@@ -9,5 +12,12 @@ public class SpatialFlowApplication extends Application {
         super.onCreate();
         // Apply dynamic colors to all activities
         DynamicColors.applyToActivitiesIfAvailable(this);
+
+        // Resume exports interrupted by a kill or reboot
+        new Thread(() -> {
+            if (ExportQueue.getInstance(this).hasUnfinished()) {
+                ExportQueueService.start(this);
+            }
+        }, "ExportQueueResume").start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package com.codetrio.spatialflow.audio;
+
+import java.util.Arrays;
+
+/**
+ * Parametric equalizer built from cascaded peaking biquads (RBJ cookbook),
+ * one per band. Unlike the platform {@link android.media.audiofx.Equalizer},
+ * band count and center frequencies are exactly what the caller asks for,
+ * so the curve is the same on every device.
+ *
+ * Gains are published as a whole array and picked up by {@link #process}
+ * at the next block. There each band ramps towards its target in small
+ * steps, recomputing its coefficients only while it moves, so slider drags
+ * and on/off switches do not produce zipper noise. Bands resting at 0 dB
+ * are skipped and {@link #process} never allocates.
+ */
+public class BiquadEqualizer {
+
+    /** Centers of the five sliders in the effects screen. */
+    public static final float[] FIVE_BAND_HZ = {60f, 230f, 910f, 3600f, 14000f};
+
+    /** ISO octave centers, 31 Hz to 16 kHz. */
+    public static final float[] TEN_BAND_HZ = {
+            31.5f, 63f, 125f, 250f, 500f, 1000f, 2000f, 4000f, 8000f, 16000f
+    };
+
+    /** ISO third-octave centers, 20 Hz to 20 kHz. */
+    public static final float[] THIRTY_ONE_BAND_HZ = {
+            20f, 25f, 31.5f, 40f, 50f, 63f, 80f, 100f, 125f, 160f, 200f, 250f, 315f,
+            400f, 500f, 630f, 800f, 1000f, 1250f, 1600f, 2000f, 2500f, 3150f, 4000f,
+            5000f, 6300f, 8000f, 10000f, 12500f, 16000f, 20000f
+    };
+
+    public static final float MAX_GAIN_DB = 15f;
+
+    // Gain changes are spread over ~75 ms for a full 15 dB swing
+    private static final float RAMP_DB_PER_SECOND = 200f;
+    private static final int RAMP_BLOCK_FRAMES = 64;
+
+    // Coefficients per band, already divided by a0
+    private static final int B0 = 0, B1 = 1, B2 = 2, A1 = 3, A2 = 4, STRIDE = 5;
+
+    private final int sampleRate;
+    private final float[] frequencies;
+    private final float[] q;
+    private final float[] zeroGains;
+    private final float rampStepDb;
+
+    // Replaced as a whole, never written after publishing
+    private volatile float[] targetGainsDb;
+    private volatile boolean enabled = false;
+
+    // Audio thread only
+    private final float[] currentGainsDb;
+    private final double[] coefficients;
+    private final int[] activeBands;
+    private int activeCount = 0;
+    private float[] appliedTarget;
+    private boolean ramping = false;
+
+    // Transposed direct form II state, two per band and channel
+    private final double[] stateL;
+    private final double[] stateR;
+
+    /**
+     * @param frequencies Band centers in Hz, ascending
+     */
+    public BiquadEqualizer(int sampleRate, float[] frequencies) {
+        int bands = frequencies.length;
+        this.sampleRate = sampleRate;
+        this.frequencies = frequencies.clone();
+        this.q = new float[bands];
+        this.zeroGains = new float[bands];
+        this.rampStepDb = RAMP_DB_PER_SECOND * RAMP_BLOCK_FRAMES / sampleRate;
+        this.targetGainsDb = zeroGains;
+        this.appliedTarget = zeroGains;
+        this.currentGainsDb = new float[bands];
+        this.coefficients = new double[bands * STRIDE];
+        this.activeBands = new int[bands];
+        this.stateL = new double[bands * 2];
+        this.stateR = new double[bands * 2];
+
+        // Bandwidth follows the band spacing so neighbours overlap evenly
+        for (int i = 0; i < bands; i++) {
+            double lower = i > 0 ? frequencies[i - 1] : frequencies[i] / 2.0;
+            double upper = i + 1 < bands ? frequencies[i + 1] : frequencies[i] * 2.0;
+            double octaves = Math.log(upper / lower) / Math.log(2) / 2.0;
+            double ratio = Math.pow(2, octaves);
+            q[i] = (float) (Math.sqrt(ratio) / (ratio - 1));
+        }
+    }
+
+    public int getBandCount() {
+        return frequencies.length;
+    }
+
+    public float getBandFrequency(int band) {
+        return frequencies[band];
+    }
+
+    /**
+     * Disabling ramps every band back to 0 dB before the EQ drops out.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setBandGain(int band, float gainDb) {
+        if (band < 0 || band >= frequencies.length) return;
+        float[] gains = targetGainsDb.clone();
+        gains[band] = gainDb;
+        targetGainsDb = gains;
+    }
+
+    /**
+     * Publishes all band gains at once. The array is kept, not copied, and
+     * must not be modified afterwards; values are clamped to
+     * {@link #MAX_GAIN_DB}.
+     */
+    public void setGains(float[] gainsDb) {
+        if (gainsDb.length != frequencies.length) return;
+        targetGainsDb = gainsDb;
+    }
+
+    public float getBandGain(int band) {
+        return targetGainsDb[band];
+    }
+
+    /**
+     * Clears the filter state, e.g. after a seek. Audio thread only.
+     */
+    public void reset() {
+        Arrays.fill(stateL, 0.0);
+        Arrays.fill(stateR, 0.0);
+    }
+
+    /**
+     * Filters {@code frames} interleaved stereo frames from {@code in} to
+     * {@code out}. Both may be the same array.
+     */
+    public void process(float[] in, float[] out, int frames) {
+        final float[] target = enabled ? targetGainsDb : zeroGains;
+        if (target != appliedTarget) {
+            appliedTarget = target;
+            ramping = true;
+        }
+
+        int start = 0;
+        while (start < frames) {
+            int count = frames - start;
+            if (ramping) {
+                stepGains(target);
+                count = Math.min(count, RAMP_BLOCK_FRAMES);
+            }
+            if (activeCount == 0) {
+                if (in != out) System.arraycopy(in, start * 2, out, start * 2, count * 2);
+            } else {
+                filter(in, out, start, count);
+            }
+            start += count;
+        }
+    }
+
+    /**
+     * Moves every band one ramp step towards {@code target} and rebuilds the
+     * coefficients of the bands that moved.
+     */
+    private void stepGains(float[] target) {
+        double nyquist = sampleRate / 2.0;
+        boolean moving = false;
+        activeCount = 0;
+
+        for (int band = 0; band < frequencies.length; band++) {
+            float goal = Math.max(-MAX_GAIN_DB, Math.min(MAX_GAIN_DB, target[band]));
+            float current = currentGainsDb[band];
+            if (current != goal) {
+                float delta = goal - current;
+                float next = Math.abs(delta) <= rampStepDb
+                        ? goal : current + Math.signum(delta) * rampStepDb;
+                if (current == 0f) {
+                    // The band was bypassed, its memory is from long ago
+                    stateL[band * 2] = stateL[band * 2 + 1] = 0.0;
+                    stateR[band * 2] = stateR[band * 2 + 1] = 0.0;
+                }
+                currentGainsDb[band] = next;
+                computeCoefficients(band, next);
+                moving |= next != goal;
+            }
+            // Bands at or above Nyquist cannot be represented at this rate
+            if (currentGainsDb[band] != 0f && frequencies[band] < nyquist) {
+                activeBands[activeCount++] = band;
+            }
+        }
+        ramping = moving;
+    }
+
+    private void computeCoefficients(int band, float gainDb) {
+        double a = Math.pow(10, gainDb / 40.0);
+        double w0 = 2 * Math.PI * frequencies[band] / sampleRate;
+        double alpha = Math.sin(w0) / (2 * q[band]);
+        double cos = Math.cos(w0);
+        double a0 = 1 + alpha / a;
+
+        int c = band * STRIDE;
+        coefficients[c + B0] = (1 + alpha * a) / a0;
+        coefficients[c + B1] = -2 * cos / a0;
+        coefficients[c + B2] = (1 - alpha * a) / a0;
+        coefficients[c + A1] = -2 * cos / a0;
+        coefficients[c + A2] = (1 - alpha / a) / a0;
+    }
+
+    private void filter(float[] in, float[] out, int startFrame, int frames) {
+        final double[] c = coefficients;
+        final int end = (startFrame + frames) * 2;
+
+        for (int i = startFrame * 2; i < end; i += 2) {
+            double l = in[i];
+            double r = in[i + 1];
+
+            for (int n = 0; n < activeCount; n++) {
+                int band = activeBands[n];
+                int k = band * STRIDE;
+                int s = band * 2;
+                double b0 = c[k + B0], b1 = c[k + B1], b2 = c[k + B2];
+                double a1 = c[k + A1], a2 = c[k + A2];
+
+                double yl = b0 * l + stateL[s];
+                stateL[s] = b1 * l - a1 * yl + stateL[s + 1];
+                stateL[s + 1] = b2 * l - a2 * yl;
+                l = yl;
+
+                double yr = b0 * r + stateR[s];
+                stateR[s] = b1 * r - a1 * yr + stateR[s + 1];
+                stateR[s + 1] = b2 * r - a2 * yr;
+                r = yr;
+            }
+
+            out[i] = (float) l;
+            out[i + 1] = (float) r;
+        }
+    }
+}
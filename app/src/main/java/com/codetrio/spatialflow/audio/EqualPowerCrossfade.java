@@ -0,0 +1,61 @@
+package com.codetrio.spatialflow.audio;
+
+/**
+ * Equal-power mix of two interleaved stereo streams: the outgoing one is
+ * scaled by cos and the incoming one by sin of the same angle, which goes
+ * from 0 to pi/2 over the fade, so the summed power of uncorrelated songs
+ * stays constant and there is no dip in the middle.
+ *
+ * The gains advance per frame with a rotation recurrence, two trig calls
+ * per block instead of two per frame, and the angle is recomputed from the
+ * fade position at every block so rounding never accumulates. Never
+ * allocates, safe to call from the audio thread.
+ */
+public final class EqualPowerCrossfade {
+
+    private static final double HALF_PI = Math.PI / 2;
+
+    private EqualPowerCrossfade() { }
+
+    /**
+     * Mixes {@code frames} frames of {@code from} and {@code to} into
+     * {@code out}. {@code out} may be {@code from}.
+     *
+     * @param toFrames frames available in {@code to}; the rest of the
+     *                 incoming side is silence
+     * @param position frames of the fade already mixed
+     * @param length   total fade length in frames; past it the incoming
+     *                 song plays alone
+     */
+    public static void mix(float[] out, float[] from, float[] to, int toFrames, int frames,
+                           long position, long length) {
+        double step = HALF_PI / Math.max(1, length);
+        double angle = Math.min(HALF_PI, position * step);
+        float gainOut = (float) Math.cos(angle);
+        float gainIn = (float) Math.sin(angle);
+        float stepCos = (float) Math.cos(step);
+        float stepSin = (float) Math.sin(step);
+        // Frames until the curve ends, then the gains stay at (0, 1)
+        long remaining = Math.max(0, length - position);
+
+        int mixed = Math.min(frames, toFrames);
+        for (int f = 0, i = 0; f < frames; f++, i += 2) {
+            if (f >= remaining) {
+                gainOut = 0f;
+                gainIn = 1f;
+            }
+            float inL = 0f;
+            float inR = 0f;
+            if (f < mixed) {
+                inL = to[i];
+                inR = to[i + 1];
+            }
+            out[i] = from[i] * gainOut + inL * gainIn;
+            out[i + 1] = from[i + 1] * gainOut + inR * gainIn;
+
+            float nextOut = gainOut * stepCos - gainIn * stepSin;
+            gainIn = gainIn * stepCos + gainOut * stepSin;
+            gainOut = nextOut;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.codetrio.spatialflow.audio;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import com.codetrio.spatialflow.util.AudioFileManager;
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Speculatively renders songs that are likely to be played next into the
+ * {@link RenderCache}, so switching to one of them plays 8D straight from
+ * the cache instead of waiting for FFmpeg.
+ *
+ * Renders one candidate at a time with a single session on a
+ * background-priority thread, and only while no interactive render runs
+ * ({@link #yield}), the battery is charging or above
+ * {@link #MIN_BATTERY_PERCENT}, power saver is off and the device is not
+ * thermally throttled.
+ *
+ * Must be used from the main thread.
+ */
+public class PreRenderer {
+
+    private static final String TAG = "PreRenderer";
+
+    public static final int MAX_CANDIDATES = 4;
+    private static final int MIN_BATTERY_PERCENT = 30;
+
+    private final Context context;
+    private final RenderCache cache;
+    private final float rotationSpeed;
+    private final String params;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "PreRender"));
+
+    private final List<Uri> candidates = new ArrayList<>();
+    private RenderTask task;
+    private Uri taskSource;
+    private boolean paused = false;
+    private boolean probing = false;
+    private boolean stopping = false;
+    private Runnable onStopped;
+
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    private final BroadcastReceiver powerReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onConditionsChanged();
+        }
+    };
+
+    public PreRenderer(Context context, RenderCache cache, float rotationSpeed) {
+        this.context = context.getApplicationContext();
+        this.cache = cache;
+        this.rotationSpeed = rotationSpeed;
+        this.params = FFmpegCommandBuilder.describe8D(rotationSpeed, SegmentedRender.PROFILE);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_BATTERY_LOW);
+        filter.addAction(Intent.ACTION_BATTERY_OKAY);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        this.context.registerReceiver(powerReceiver, filter);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager pm = this.context.getSystemService(PowerManager.class);
+            if (pm != null) {
+                thermalListener = status -> onConditionsChanged();
+                pm.addThermalStatusListener(thermalListener);
+            }
+        }
+    }
+
+    /**
+     * Replaces the songs to pre-render, most likely first. A render of a song
+     * that is no longer a candidate is stopped.
+     */
+    public void setCandidates(List<Uri> uris) {
+        candidates.clear();
+        for (Uri uri : uris) {
+            if (candidates.size() >= MAX_CANDIDATES) break;
+            if (!candidates.contains(uri)) candidates.add(uri);
+        }
+        if (task != null && !stopping && !candidates.contains(taskSource)) {
+            Log.d(TAG, "Candidate dropped, stopping " + taskSource);
+            stop(null);
+        }
+        scheduleNext();
+    }
+
+    /**
+     * Gives the CPU to an interactive render. Pre-rendering stays off until
+     * {@link #resume}.
+     *
+     * @param onStopped runs once a stopped session has ended, only if this
+     *                  returns true
+     * @return true if a session is still shutting down and the caller
+     * should wait for {@code onStopped}
+     */
+    public boolean yield(Runnable onStopped) {
+        paused = true;
+        if (stopping) {
+            this.onStopped = onStopped;
+            return true;
+        }
+        if (task == null) return false;
+
+        Log.d(TAG, "Yielding to interactive render");
+        return stop(onStopped);
+    }
+
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    public void resume() {
+        paused = false;
+        scheduleNext();
+    }
+
+    public void release() {
+        paused = true;
+        candidates.clear();
+        if (task != null && !stopping) stop(null);
+        try {
+            context.unregisterReceiver(powerReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Power receiver was not registered");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            PowerManager pm = context.getSystemService(PowerManager.class);
+            if (pm != null) pm.removeThermalStatusListener(thermalListener);
+        }
+        executor.shutdown();
+    }
+
+    // ===== SCHEDULING =====
+
+    private void onConditionsChanged() {
+        if (task != null && !stopping && !conditionsAllow()) {
+            Log.d(TAG, "Battery or thermal limit reached, stopping");
+            stop(null);
+        } else {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * @param then runs once the session has ended; null keeps a callback
+     *             an earlier {@link #yield} left waiting
+     */
+    private boolean stop(Runnable then) {
+        if (task.cancel()) {
+            stopping = true;
+            if (then != null) onStopped = then;
+            return true;
+        }
+        // Already finished, its onComplete commits it
+        task = null;
+        taskSource = null;
+        return false;
+    }
+
+    private void scheduleNext() {
+        if (paused || task != null || probing || stopping || candidates.isEmpty()) return;
+        if (!conditionsAllow()) return;
+
+        // Fingerprinting and probing read the files, keep them off the main thread
+        final List<Uri> snapshot = new ArrayList<>(candidates);
+        probing = true;
+        new Thread(() -> {
+            for (Uri uri : snapshot) {
+                String key = RenderCache.keyFor(context, uri, params);
+                if (key == null || cache.isCached(key)) continue;
+
+                long durationMs = AudioFileManager.readDuration(context, uri);
+                if (durationMs <= 0) continue;
+
+                mainHandler.post(() -> {
+                    probing = false;
+                    start(uri, key, durationMs);
+                });
+                return;
+            }
+            mainHandler.post(() -> probing = false);
+        }, "PreRenderProbe").start();
+    }
+
+    private void start(Uri source, String key, long durationMs) {
+        if (paused || task != null || stopping || !candidates.contains(source)) {
+            scheduleNext();
+            return;
+        }
+
+        Log.d(TAG, "Pre-rendering " + source);
+        final SegmentedRender render = cache.begin(key, source, rotationSpeed);
+        task = new RenderTask(context, render, RenderTask.plan(durationMs, 0, rotationSpeed, 1),
+                1, durationMs, rotationSpeed, new RenderTask.Listener() {
+                    @Override
+                    public void onSegmentsReady(List<SegmentedRender.Segment> added) { }
+
+                    @Override
+                    public void onProgress(int percent) { }
+
+                    @Override
+                    public void onComplete() {
+                        render.markComplete();
+                        new Thread(() -> cache.commit(render), "RenderCacheCommit").start();
+                        Log.d(TAG, "Pre-rendered " + source);
+                        finishTask(source);
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        cache.abandon(render);
+                        finishTask(source);
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        cache.abandon(render);
+                        if (task != null && task.getRender() == render) {
+                            task = null;
+                            taskSource = null;
+                        }
+                        stopping = false;
+                        Runnable then = onStopped;
+                        onStopped = null;
+                        if (then != null) {
+                            then.run();
+                        } else {
+                            scheduleNext();
+                        }
+                    }
+                });
+        taskSource = source;
+        task.setExecutor(executor);
+        task.start();
+    }
+
+    private void finishTask(Uri source) {
+        if (taskSource != null && taskSource.equals(source)) {
+            task = null;
+            taskSource = null;
+        }
+        candidates.remove(source);
+        scheduleNext();
+    }
+
+    private boolean conditionsAllow() {
+        PowerManager pm = context.getSystemService(PowerManager.class);
+        if (pm != null) {
+            if (pm.isPowerSaveMode()) return false;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    && pm.getCurrentThermalStatus() >= PowerManager.THERMAL_STATUS_MODERATE) {
+                return false;
+            }
+        }
+
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                    || status == BatteryManager.BATTERY_STATUS_FULL;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (!charging && level >= 0 && scale > 0 && level * 100 / scale < MIN_BATTERY_PERCENT) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
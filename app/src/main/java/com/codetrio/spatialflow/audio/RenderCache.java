@@ -0,0 +1,353 @@
+package com.codetrio.spatialflow.audio;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.LongSupplier;
+
+/**
+ * Persistent cache of rendered 8D audio. Each entry is one directory of
+ * {@link SegmentedRender} output, named after a hash of the source content
+ * and the FFmpeg chain parameters, so a song rendered in an earlier session
+ * is played back without running FFmpeg again.
+ *
+ * An entry only counts once its {@code complete} marker exists. The
+ * segments are synced to disk before the marker is written to a temp file
+ * and renamed, and the directory is synced after, so neither a crash nor a
+ * power loss leaves a marked entry with missing audio; an unmarked
+ * directory is removed by {@link #sweep}. Entries are evicted least
+ * recently used first (directory mtime) once the byte quota is exceeded.
+ * The quota is read at every eviction pass, so a changed setting applies
+ * from the next committed render.
+ */
+public class RenderCache {
+
+    private static final String TAG = "RenderCache";
+
+    /** Quota of a quarter of the space the cache could use. */
+    public static final long AUTO_MAX_BYTES = 0;
+
+    // Bounds of the auto quota. Preview renders are 16-bit WAV, about
+    // 10 MB per minute
+    private static final long MIN_AUTO_BYTES = 256L * 1024 * 1024;
+    private static final long MAX_AUTO_BYTES = 4L * 1024 * 1024 * 1024;
+
+    private static final String MARKER = "complete";
+    private static final String MARKER_TMP = "complete.tmp";
+
+    // Hashing the whole song would cost as much as decoding it; size plus
+    // head and tail is enough to tell files apart
+    private static final int FINGERPRINT_CHUNK = 64 * 1024;
+
+    private final File root;
+    private final LongSupplier maxBytes;
+    // Render currently writing each key; a cancelled render that stops late
+    // must not delete or commit over the one that replaced it
+    private final Map<String, SegmentedRender> activeKeys = new HashMap<>();
+
+    /**
+     * @param maxBytes byte quota, or {@link #AUTO_MAX_BYTES}; called from
+     *                 background threads
+     */
+    public RenderCache(File root, LongSupplier maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        if (!root.exists()) root.mkdirs();
+    }
+
+    /**
+     * Builds the cache key for a source and parameter description. The
+     * source is read through a file descriptor, so SAF documents work too.
+     *
+     * @return hex key, or null if the source cannot be read
+     */
+    public static String keyFor(Context context, Uri source, String params) {
+        try {
+            ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(source, "r");
+            if (pfd == null) return null;
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (FileChannel channel = new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel()) {
+                long length = channel.size();
+                ByteBuffer chunk = ByteBuffer.allocate(FINGERPRINT_CHUNK);
+
+                readChunk(channel, chunk, 0);
+                digest.update(chunk);
+
+                if (length > FINGERPRINT_CHUNK) {
+                    readChunk(channel, chunk, Math.max(FINGERPRINT_CHUNK, length - FINGERPRINT_CHUNK));
+                    digest.update(chunk);
+                }
+
+                digest.update((length + ";" + params).getBytes(StandardCharsets.UTF_8));
+            }
+
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+
+        } catch (IOException | SecurityException | NoSuchAlgorithmException e) {
+            Log.e(TAG, "Cannot fingerprint " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void readChunk(FileChannel channel, ByteBuffer chunk, long position) throws IOException {
+        chunk.clear();
+        while (chunk.hasRemaining()) {
+            int read = channel.read(chunk, position + chunk.position());
+            if (read < 0) break;
+        }
+        chunk.flip();
+    }
+
+    /**
+     * @return true if a finished render exists for {@code key}
+     */
+    public synchronized boolean isCached(String key) {
+        return new File(new File(root, key), MARKER).exists();
+    }
+
+    /**
+     * Returns a finished render for {@code key}, or null on a miss.
+     */
+    public synchronized SegmentedRender load(String key, Uri source, float rotationSpeed) {
+        File dir = new File(root, key);
+        File marker = new File(dir, MARKER);
+        if (!marker.exists()) return null;
+
+        Properties props = new Properties();
+        try (FileInputStream in = new FileInputStream(marker)) {
+            props.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable marker for " + key + ", dropping entry");
+            deleteDir(dir);
+            return null;
+        }
+
+        SegmentedRender render = new SegmentedRender(source, rotationSpeed, dir);
+        try {
+            int passes = Integer.parseInt(props.getProperty("passes", "0"));
+            for (int pass = 0; pass < passes; pass++) {
+                long offset = Long.parseLong(props.getProperty("offset" + pass, "0"));
+                render.poll(pass, offset);
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Corrupt marker for " + key + ", dropping entry");
+            deleteDir(dir);
+            return null;
+        }
+        if (render.getSegments().isEmpty()) {
+            Log.w(TAG, "Entry " + key + " has no segments, dropping it");
+            deleteDir(dir);
+            return null;
+        }
+        render.markComplete();
+
+        dir.setLastModified(System.currentTimeMillis());
+        Log.d(TAG, "Cache hit: " + key);
+        return render;
+    }
+
+    /**
+     * Starts a new entry. Any unfinished leftovers under the same key are
+     * cleared first.
+     */
+    public synchronized SegmentedRender begin(String key, Uri source, float rotationSpeed) {
+        File dir = new File(root, key);
+        deleteDir(dir);
+        SegmentedRender render = new SegmentedRender(source, rotationSpeed, dir);
+        activeKeys.put(key, render);
+        return render;
+    }
+
+    /**
+     * Marks a finished render as complete and evicts old entries if the
+     * cache is now over quota.
+     */
+    public synchronized void commit(SegmentedRender render) {
+        File dir = render.getDir();
+        if (activeKeys.get(dir.getName()) != render) {
+            Log.d(TAG, "Not committing " + dir.getName() + ", entry was restarted");
+            return;
+        }
+        activeKeys.remove(dir.getName());
+
+        Properties props = new Properties();
+        int passes = render.getPassCount();
+        props.setProperty("passes", String.valueOf(passes));
+        for (int pass = 0; pass < passes; pass++) {
+            props.setProperty("offset" + pass, String.valueOf(render.getPassOffset(pass)));
+        }
+
+        try {
+            // The audio must be on disk before a marker can vouch for it
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile()) syncFile(file);
+                }
+            }
+            syncDir(dir);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot sync " + dir.getName() + ": " + e.getMessage(), e);
+            return;
+        }
+
+        File tmp = new File(dir, MARKER_TMP);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write marker: " + e.getMessage(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(new File(dir, MARKER))) {
+            Log.e(TAG, "Cannot commit " + dir.getName());
+            tmp.delete();
+            return;
+        }
+        try {
+            syncDir(dir);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot sync marker of " + dir.getName() + ": " + e.getMessage());
+        }
+
+        dir.setLastModified(System.currentTimeMillis());
+        Log.d(TAG, "Committed " + dir.getName());
+        trim(dir.getName());
+    }
+
+    /**
+     * Drops an unfinished render, e.g. when the track changes mid-render.
+     */
+    public synchronized void abandon(SegmentedRender render) {
+        File dir = render.getDir();
+        SegmentedRender owner = activeKeys.get(dir.getName());
+        if (owner != null && owner != render) return;
+        activeKeys.remove(dir.getName());
+        if (!new File(dir, MARKER).exists()) {
+            deleteDir(dir);
+        }
+    }
+
+    /**
+     * Removes entries left unfinished by a crash or kill and enforces the
+     * quota. Safe to call from a background thread.
+     */
+    public synchronized void sweep() {
+        File[] entries = root.listFiles();
+        if (entries == null) return;
+        for (File dir : entries) {
+            if (activeKeys.containsKey(dir.getName())) continue;
+            if (!dir.isDirectory() || !new File(dir, MARKER).exists()) {
+                Log.d(TAG, "Removing unfinished entry " + dir.getName());
+                deleteDir(dir);
+            }
+        }
+        trim(null);
+    }
+
+    private void trim(String keep) {
+        File[] entries = root.listFiles(File::isDirectory);
+        if (entries == null) return;
+
+        long total = 0;
+        long[] sizes = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = sizeOf(entries[i]);
+            total += sizes[i];
+        }
+        long quota = maxBytes.getAsLong();
+        if (quota == AUTO_MAX_BYTES) quota = autoQuota(total);
+        if (total <= quota) return;
+
+        // Oldest first; mtime is bumped on every hit
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        long[] stamps = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) stamps[i] = entries[i].lastModified();
+        Arrays.sort(order, (a, b) -> Long.compare(stamps[a], stamps[b]));
+
+        int evicted = 0;
+        for (int i : order) {
+            if (total <= quota) break;
+            String name = entries[i].getName();
+            if (name.equals(keep) || activeKeys.containsKey(name)) continue;
+            deleteDir(entries[i]);
+            total -= sizes[i];
+            evicted++;
+        }
+        Log.d(TAG, "Evicted " + evicted + " entries, cache now " + total + " bytes");
+    }
+
+    /**
+     * @param used bytes the cache takes now, free for it too
+     */
+    private long autoQuota(long used) {
+        long available = root.getUsableSpace() + used;
+        return Math.max(MIN_AUTO_BYTES, Math.min(MAX_AUTO_BYTES, available / 4));
+    }
+
+    private static void syncFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.getFD().sync();
+        }
+    }
+
+    /**
+     * fsyncs a directory so renames and new files in it survive a power loss.
+     */
+    private static void syncDir(File dir) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(dir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("fsync " + dir.getName() + " failed", e);
+        }
+    }
+
+    private static long sizeOf(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) size += file.length();
+        }
+        return size;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+}
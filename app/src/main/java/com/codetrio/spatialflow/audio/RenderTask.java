@@ -0,0 +1,332 @@
+package com.codetrio.spatialflow.audio;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKit;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
+import com.arthenica.ffmpegkit.LogCallback;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.arthenica.ffmpegkit.SessionState;
+import com.arthenica.ffmpegkit.StatisticsCallback;
+import com.codetrio.spatialflow.util.AudioFileManager;
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the FFmpeg sessions of one {@link SegmentedRender}. The track is cut
+ * into shards, each rendered by its own session into its own segment pass.
+ * FFmpeg runs a filter graph on one core, so long tracks are rendered with
+ * up to one session per core; short tracks use a single session.
+ *
+ * Shard boundaries sit on multiples of the pulsator period and every shard
+ * after 0 renders one period of pre-roll that is trimmed off, so LFO phase
+ * and the echo/delay lines match a single continuous render and the
+ * segments join without clicks.
+ *
+ * A task can be cancelled when its request is superseded: running sessions
+ * are stopped through their session ids and {@link Listener#onCancelled}
+ * fires once the last one has ended, so the output can be deleted safely.
+ *
+ * Listener callbacks run on the main thread.
+ */
+public class RenderTask {
+
+    private static final String TAG = "RenderTask";
+
+    // Parallel shards: long enough to amortize session start-up
+    private static final long MIN_SHARD_MS = 20_000;
+    private static final long MAX_SHARD_MS = 120_000;
+
+    public interface Listener {
+        void onSegmentsReady(List<SegmentedRender.Segment> added);
+        void onProgress(int percent);
+        void onComplete();
+        void onFailed();
+        void onCancelled();
+    }
+
+    public static class Shard {
+        public final long startMs;
+        public final long lengthMs; // <= 0: to the end of the track
+        public final long prerollMs;
+
+        Shard(long startMs, long lengthMs, long prerollMs) {
+            this.startMs = startMs;
+            this.lengthMs = lengthMs;
+            this.prerollMs = prerollMs;
+        }
+    }
+
+    private final Context context;
+    private final SegmentedRender render;
+    private final List<Shard> shards;
+    private final int maxSessions;
+    private final long durationMs;
+    private final float rotationSpeed;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final long[] shardProgressMs;
+    private int nextShard = 0;
+    private int finishedShards = 0;
+    private boolean failed = false;
+    private boolean cancelled = false;
+    private boolean stoppedReported = false;
+    private final Set<Long> liveSessions = new HashSet<>();
+    private int launching = 0;
+    private long startedAt;
+    private ExecutorService executor;
+
+    public RenderTask(Context context, SegmentedRender render, List<Shard> shards,
+                      int maxSessions, long durationMs, float rotationSpeed, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.render = render;
+        this.shards = shards;
+        this.maxSessions = Math.max(1, Math.min(maxSessions, shards.size()));
+        this.durationMs = durationMs;
+        this.rotationSpeed = rotationSpeed;
+        this.listener = listener;
+        this.shardProgressMs = new long[shards.size()];
+    }
+
+    /**
+     * Plans the shards for a track, playhead first.
+     *
+     * @param durationMs    Track length
+     * @param playheadMs    Where playback is; its shard is rendered first
+     * @param rotationSpeed Rotation speed the render uses
+     * @param sessions      Sessions that will run in parallel
+     */
+    public static List<Shard> plan(long durationMs, long playheadMs, float rotationSpeed, int sessions) {
+        long period = FFmpegCommandBuilder.getLfoPeriodMs(rotationSpeed);
+        long playhead = Math.max(0, Math.min(playheadMs, durationMs)) / period * period;
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        if (sessions > 1) {
+            long shardMs = (durationMs + sessions - 1) / sessions;
+            shardMs = Math.max(MIN_SHARD_MS, Math.min(MAX_SHARD_MS, shardMs));
+            shardMs = (shardMs + period - 1) / period * period;
+            for (long t = shardMs; t < durationMs; t += shardMs) {
+                bounds.add(t);
+            }
+        }
+        if (playhead > 0 && playhead < durationMs && !bounds.contains(playhead)) {
+            bounds.add(playhead);
+        }
+        Collections.sort(bounds);
+
+        List<Shard> before = new ArrayList<>();
+        List<Shard> after = new ArrayList<>();
+        for (int i = 0; i < bounds.size(); i++) {
+            long start = bounds.get(i);
+            long length = i + 1 < bounds.size() ? bounds.get(i + 1) - start : 0;
+            Shard shard = new Shard(start, length, start > 0 ? period : 0);
+            if (start >= playhead) {
+                after.add(shard);
+            } else {
+                before.add(shard);
+            }
+        }
+        after.addAll(before);
+        return after;
+    }
+
+    /**
+     * @return sessions worth running in parallel on this device
+     */
+    public static int defaultSessions() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public SegmentedRender getRender() {
+        return render;
+    }
+
+    /**
+     * Runs the sessions on {@code executor} instead of FFmpegKit's default
+     * pool, e.g. on low-priority threads. Call before {@link #start}.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void start() {
+        startedAt = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Rendering " + shards.size() + " shards with " + maxSessions + " sessions");
+        for (int i = 0; i < maxSessions; i++) {
+            launchNext();
+        }
+    }
+
+    /**
+     * Stops all sessions of this task. {@link Listener#onCancelled} follows
+     * once none is running any more.
+     *
+     * @return false if the task had already finished, its output is complete
+     */
+    public boolean cancel() {
+        List<Long> sessions;
+        synchronized (this) {
+            if (finishedShards == shards.size()) return false;
+            if (cancelled) return true;
+            cancelled = true;
+            sessions = new ArrayList<>(liveSessions);
+        }
+        Log.d(TAG, "Cancelling render, " + sessions.size() + " sessions running");
+        for (long id : sessions) {
+            FFmpegKit.cancel(id);
+        }
+        checkStopped();
+        return true;
+    }
+
+    private void launchNext() {
+        final int pass;
+        synchronized (this) {
+            if (failed || cancelled || nextShard >= shards.size()) return;
+            pass = nextShard++;
+            launching++;
+        }
+        final Shard shard = shards.get(pass);
+
+        // Fresh input per session, SAF descriptors are closed when it ends
+        String input = AudioFileManager.getFFmpegInput(context, render.getSource());
+        if (input == null) {
+            Log.e(TAG, "No FFmpeg input for " + render.getSource());
+            synchronized (this) {
+                launching--;
+            }
+            fail();
+            return;
+        }
+
+        long passLength = shard.lengthMs > 0 ? shard.lengthMs : Math.max(0, durationMs - shard.startMs);
+        String command = FFmpegCommandBuilder.build8DSegmented(
+                input, shard.startMs, shard.lengthMs, shard.prerollMs,
+                render.getSegmentPattern(pass), render.getListPath(pass),
+                SegmentedRender.buildSegmentTimes(passLength), rotationSpeed,
+                SegmentedRender.PROFILE);
+
+        FFmpegSessionCompleteCallback onEnded = ended -> {
+            ReturnCode returnCode = ended.getReturnCode();
+            Log.d(TAG, "Shard " + pass + " completed with code: " + returnCode);
+            if (onSessionEnded(ended.getSessionId())) return;
+
+            // Rows written after the last statistics tick
+            publish(render.poll(pass, shard.startMs));
+
+            if (ReturnCode.isSuccess(returnCode)) {
+                onShardDone(pass, passLength);
+            } else {
+                Log.e(TAG, "FFmpeg FAILED: " + returnCode);
+                fail();
+            }
+        };
+        LogCallback onLog = log -> Log.d(TAG, "FFmpeg: " + log.getMessage());
+        StatisticsCallback onStatistics = statistics -> {
+            if (statistics != null && statistics.getTime() > 0) {
+                updateProgress(pass, (long) statistics.getTime());
+            }
+            publish(render.poll(pass, shard.startMs));
+        };
+
+        FFmpegSession session = executor != null
+                ? FFmpegKit.executeAsync(command, onEnded, onLog, onStatistics, executor)
+                : FFmpegKit.executeAsync(command, onEnded, onLog, onStatistics);
+
+        boolean cancelNow;
+        synchronized (this) {
+            launching--;
+            // The session may already have ended, see onSessionEnded
+            if (session.getState() != SessionState.COMPLETED
+                    && session.getState() != SessionState.FAILED) {
+                liveSessions.add(session.getSessionId());
+            }
+            cancelNow = cancelled;
+        }
+        if (cancelNow) {
+            // cancel() ran before this session had an id
+            FFmpegKit.cancel(session.getSessionId());
+            checkStopped();
+        }
+    }
+
+    /**
+     * @return true if the task was cancelled and the session's result
+     * should be ignored
+     */
+    private boolean onSessionEnded(long sessionId) {
+        synchronized (this) {
+            liveSessions.remove(sessionId);
+            if (!cancelled) return false;
+        }
+        checkStopped();
+        return true;
+    }
+
+    private void checkStopped() {
+        synchronized (this) {
+            if (!cancelled || !liveSessions.isEmpty() || launching > 0 || stoppedReported) return;
+            stoppedReported = true;
+        }
+        Log.d(TAG, "All sessions stopped after cancel");
+        mainHandler.post(listener::onCancelled);
+    }
+
+    private void onShardDone(int pass, long passLength) {
+        boolean complete;
+        synchronized (this) {
+            shardProgressMs[pass] = passLength;
+            complete = ++finishedShards == shards.size();
+        }
+        if (complete) {
+            long elapsed = SystemClock.elapsedRealtime() - startedAt;
+            FFmpegCommandBuilder.logRenderStats(SegmentedRender.PROFILE, maxSessions,
+                    elapsed, durationMs, render.getSizeBytes());
+            mainHandler.post(listener::onComplete);
+        } else {
+            launchNext();
+        }
+    }
+
+    private void updateProgress(int pass, long renderedMs) {
+        if (durationMs <= 0) return;
+        long total = 0;
+        synchronized (this) {
+            if (cancelled) return;
+            shardProgressMs[pass] = renderedMs;
+            for (long ms : shardProgressMs) total += ms;
+        }
+        int percent = (int) Math.min(total * 100 / durationMs, 99);
+        mainHandler.post(() -> listener.onProgress(percent));
+    }
+
+    private void publish(List<SegmentedRender.Segment> added) {
+        synchronized (this) {
+            if (cancelled) return;
+        }
+        if (!added.isEmpty()) {
+            mainHandler.post(() -> listener.onSegmentsReady(added));
+        }
+    }
+
+    private void fail() {
+        synchronized (this) {
+            if (failed || cancelled) return;
+            failed = true;
+        }
+        mainHandler.post(listener::onFailed);
+    }
+}
@@ -0,0 +1,366 @@
+package com.codetrio.spatialflow.audio;
+
+import android.media.MediaPlayer;
+import android.media.PlaybackParams;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays the segments of a {@link SegmentedRender} in order while later
+ * segments are still being encoded. Consecutive segments are chained with
+ * {@link MediaPlayer#setNextMediaPlayer} so boundaries are gapless; if
+ * playback catches up with the encoder it waits for the next segment.
+ *
+ * All players share one audio session so attached AudioEffects carry over.
+ * Must be used from the main thread.
+ */
+public class SegmentedPlayer {
+
+    private static final String TAG = "SegmentedPlayer";
+
+    // Segment list times come from a float CSV, allow a little slack
+    private static final long BOUNDARY_TOLERANCE_MS = 30;
+
+    public interface Listener {
+        void onCompletion();
+        void onError(String message);
+
+        /**
+         * Playback stalled waiting for the encoder, or resumed after a stall
+         * or segment switch; the position may have jumped.
+         */
+        void onBufferingChanged(boolean buffering);
+    }
+
+    private final int audioSessionId;
+    private final Listener listener;
+    private final List<SegmentedRender.Segment> segments = new ArrayList<>();
+    private boolean renderComplete = false;
+
+    private MediaPlayer current;
+    private SegmentedRender.Segment currentSegment;
+    private boolean currentPrepared = false;
+
+    private MediaPlayer next;
+    private SegmentedRender.Segment nextSegment;
+    // next is prepared and set as current's next player
+    private boolean nextChained = false;
+
+    private boolean wantPlaying = false;
+    private long waitingForMs = -1;
+    // Run once the position of the last seek can play
+    private Runnable onLanded;
+
+    private float leftVolume = 1f;
+    private float rightVolume = 1f;
+    // Set by a SourceSwap fading this player in or out
+    private float fadeGain = 1f;
+    private float speed = 1f;
+
+    public SegmentedPlayer(int audioSessionId, Listener listener) {
+        this.audioSessionId = audioSessionId;
+        this.listener = listener;
+    }
+
+    // ===== SEGMENT FEED =====
+
+    public void addSegment(SegmentedRender.Segment segment) {
+        if (segments.contains(segment)) return;
+
+        int i = 0;
+        while (i < segments.size() && segments.get(i).startMs < segment.startMs) i++;
+        segments.add(i, segment);
+
+        if (waitingForMs >= 0 && contains(segment, waitingForMs)) {
+            long position = waitingForMs;
+            waitingForMs = -1;
+            Log.d(TAG, "Segment arrived for waiting position " + position + " ms");
+            openSegment(segment, position - segment.startMs);
+        } else if (currentPrepared && next == null) {
+            prepareNext();
+        }
+    }
+
+    public void setRenderComplete() {
+        renderComplete = true;
+        if (waitingForMs >= 0 && segmentAt(waitingForMs) == null) {
+            // Caught up at the very end of the track
+            waitingForMs = -1;
+            wantPlaying = false;
+            listener.onCompletion();
+        }
+    }
+
+    // ===== TRANSPORT =====
+
+    public void start(long positionMs, boolean autoPlay) {
+        wantPlaying = autoPlay;
+        seekTo(positionMs);
+    }
+
+    public void play() {
+        wantPlaying = true;
+        if (current != null && currentPrepared && !current.isPlaying()) {
+            current.start();
+            applyParams(current);
+        }
+    }
+
+    public void pause() {
+        wantPlaying = false;
+        if (current != null && currentPrepared && current.isPlaying()) {
+            current.pause();
+        }
+    }
+
+    public boolean isPlaying() {
+        return wantPlaying;
+    }
+
+    /**
+     * @return true while the position is not advancing because the segment
+     * to play is not encoded or not prepared yet
+     */
+    public boolean isBuffering() {
+        return waitingForMs >= 0 || (current != null && !currentPrepared);
+    }
+
+    public void seekTo(long positionMs) {
+        seekTo(positionMs, null);
+    }
+
+    /**
+     * Seeks and runs {@code onLanded} once playback can start there, which
+     * may be after the segment has been encoded.
+     */
+    public void seekTo(long positionMs, Runnable onLanded) {
+        this.onLanded = onLanded;
+        SegmentedRender.Segment target = segmentAt(positionMs);
+        if (target == null) {
+            // Not encoded yet, resume once the muxer gets there
+            waitingForMs = positionMs;
+            if (current != null && currentPrepared && current.isPlaying()) {
+                current.pause();
+            }
+            Log.d(TAG, "Waiting for segment at " + positionMs + " ms");
+            listener.onBufferingChanged(true);
+            return;
+        }
+
+        waitingForMs = -1;
+        if (target == currentSegment && currentPrepared) {
+            current.seekTo((int) (positionMs - target.startMs));
+        } else {
+            openSegment(target, positionMs - target.startMs);
+        }
+    }
+
+    public long getPositionMs() {
+        if (waitingForMs >= 0) return waitingForMs;
+        if (current == null || currentSegment == null || !currentPrepared) {
+            return currentSegment != null ? currentSegment.startMs : 0;
+        }
+        try {
+            return currentSegment.startMs + current.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            return currentSegment.startMs;
+        }
+    }
+
+    public void setVolume(float left, float right) {
+        leftVolume = left;
+        rightVolume = right;
+        applyVolume();
+    }
+
+    public void setFadeGain(float gain) {
+        fadeGain = gain;
+        applyVolume();
+    }
+
+    private void applyVolume() {
+        if (current != null) current.setVolume(leftVolume * fadeGain, rightVolume * fadeGain);
+        if (next != null) next.setVolume(leftVolume * fadeGain, rightVolume * fadeGain);
+    }
+
+    public float getPlaybackSpeed() {
+        return speed;
+    }
+
+    public void setPlaybackSpeed(float speed) {
+        this.speed = speed;
+        if (current != null && currentPrepared && current.isPlaying()) {
+            applyParams(current);
+        }
+    }
+
+    public void release() {
+        releaseNext();
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        currentSegment = null;
+        currentPrepared = false;
+        wantPlaying = false;
+        onLanded = null;
+    }
+
+    // ===== INTERNALS =====
+
+    private void openSegment(SegmentedRender.Segment segment, long offsetMs) {
+        releaseNext();
+        if (current != null) {
+            current.release();
+        }
+
+        current = createPlayer(segment);
+        currentSegment = segment;
+        currentPrepared = false;
+        if (current == null) return;
+
+        final MediaPlayer player = current;
+        player.setOnPreparedListener(mp -> {
+            if (mp != current) return;
+            currentPrepared = true;
+            if (offsetMs > 0) {
+                mp.seekTo((int) offsetMs);
+            } else {
+                land();
+            }
+            if (wantPlaying) {
+                mp.start();
+                applyParams(mp);
+            }
+            prepareNext();
+            listener.onBufferingChanged(false);
+        });
+        player.prepareAsync();
+    }
+
+    private void prepareNext() {
+        if (currentSegment == null || next != null) return;
+
+        SegmentedRender.Segment following = segmentAt(currentSegment.endMs);
+        if (following == null || following == currentSegment) return;
+
+        MediaPlayer player = createPlayer(following);
+        if (player == null) return;
+
+        next = player;
+        nextSegment = following;
+        player.setOnPreparedListener(mp -> {
+            if (mp != next || current == null) return;
+            try {
+                current.setNextMediaPlayer(mp);
+                nextChained = true;
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Cannot chain next segment: " + e.getMessage());
+            }
+        });
+        player.prepareAsync();
+    }
+
+    private MediaPlayer createPlayer(SegmentedRender.Segment segment) {
+        MediaPlayer player = new MediaPlayer();
+        try {
+            player.setAudioSessionId(audioSessionId);
+            player.setDataSource(segment.path);
+            player.setVolume(leftVolume * fadeGain, rightVolume * fadeGain);
+            player.setOnCompletionListener(this::onSegmentCompleted);
+            player.setOnSeekCompleteListener(mp -> {
+                if (mp == current) land();
+            });
+            player.setOnErrorListener((mp, what, extra) -> {
+                Log.e(TAG, "Segment error: what=" + what + ", extra=" + extra);
+                listener.onError("Segment playback failed (" + what + ")");
+                return true;
+            });
+            return player;
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Cannot open segment " + segment.path + ": " + e.getMessage(), e);
+            player.release();
+            return null;
+        }
+    }
+
+    private void onSegmentCompleted(MediaPlayer mp) {
+        if (mp != current) return;
+
+        if (next != null && nextChained) {
+            // The framework already started the chained player
+            mp.release();
+            current = next;
+            currentSegment = nextSegment;
+            currentPrepared = true;
+            next = null;
+            nextSegment = null;
+            nextChained = false;
+            if (wantPlaying) applyParams(current);
+            prepareNext();
+            return;
+        }
+        // Still preparing or could not be chained, nothing started it:
+        // open the following segment directly below
+        releaseNext();
+
+        long end = currentSegment != null ? currentSegment.endMs : 0;
+        if (renderComplete && segmentAt(end) == null) {
+            wantPlaying = false;
+            listener.onCompletion();
+        } else {
+            Log.d(TAG, "Playback caught up with the encoder at " + end + " ms");
+            waitingForMs = end;
+            SegmentedRender.Segment following = segmentAt(end);
+            if (following != null) {
+                waitingForMs = -1;
+                openSegment(following, 0);
+            }
+            listener.onBufferingChanged(true);
+        }
+    }
+
+    private void land() {
+        Runnable landed = onLanded;
+        onLanded = null;
+        if (landed != null) landed.run();
+    }
+
+    private void releaseNext() {
+        if (next != null) {
+            next.release();
+            next = null;
+            nextSegment = null;
+        }
+        nextChained = false;
+    }
+
+    /**
+     * Only called on a started player: setting params starts a paused one.
+     * Also applied at 1x, so going back from another speed takes effect.
+     */
+    private void applyParams(MediaPlayer player) {
+        try {
+            PlaybackParams params = player.getPlaybackParams();
+            params.setSpeed(speed);
+            params.setPitch(speed);
+            player.setPlaybackParams(params);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to set playback speed: " + e.getMessage());
+        }
+    }
+
+    private SegmentedRender.Segment segmentAt(long positionMs) {
+        for (SegmentedRender.Segment segment : segments) {
+            if (contains(segment, positionMs)) return segment;
+        }
+        return null;
+    }
+
+    private static boolean contains(SegmentedRender.Segment segment, long positionMs) {
+        return segment.startMs <= positionMs + BOUNDARY_TOLERANCE_MS && positionMs < segment.endMs;
+    }
+}
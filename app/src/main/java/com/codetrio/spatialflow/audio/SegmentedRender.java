@@ -0,0 +1,187 @@
+package com.codetrio.spatialflow.audio;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bookkeeping for one progressive 8D render. FFmpeg's segment muxer writes
+ * the output as consecutive files and appends each finished one to a CSV
+ * list; {@link #poll} turns new list rows into playable {@link Segment}s.
+ *
+ * A render runs in passes (one FFmpeg session each, see {@link RenderTask}):
+ * pass 0 starts at the playhead so audio is ready quickly, the others fill
+ * in the rest of the track.
+ */
+public class SegmentedRender {
+
+    private static final String TAG = "SegmentedRender";
+
+    // First segment is short so playback can start after a few seconds
+    private static final long FIRST_SEGMENT_MS = 4_000;
+    private static final long SECOND_SEGMENT_MS = 8_000;
+    private static final long SEGMENT_MS = 30_000;
+
+    // Playback renders are throwaway, use the cheap intermediate encoding
+    public static final FFmpegCommandBuilder.Profile PROFILE = FFmpegCommandBuilder.Profile.PREVIEW;
+
+    public static class Segment {
+        public final String path;
+        public final long startMs;
+        public final long endMs;
+
+        Segment(String path, long startMs, long endMs) {
+            this.path = path;
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+    }
+
+    private final Uri source;
+    private final float rotationSpeed;
+    private final File dir;
+
+    private final List<Segment> segments = new ArrayList<>();
+    // Indexed by pass, grown as passes show up
+    private int[] consumedRows = new int[0];
+    private long[] passOffsets = new long[0];
+    private volatile boolean complete = false;
+
+    public SegmentedRender(Uri source, float rotationSpeed, File dir) {
+        this.source = source;
+        this.rotationSpeed = rotationSpeed;
+        this.dir = dir;
+        if (!dir.exists()) dir.mkdirs();
+    }
+
+    public Uri getSource() {
+        return source;
+    }
+
+    public float getRotationSpeed() {
+        return rotationSpeed;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public String getSegmentPattern(int pass) {
+        return new File(dir, "p" + pass + "_%03d." + PROFILE.getExtension()).getAbsolutePath();
+    }
+
+    public String getListPath(int pass) {
+        return new File(dir, "list_" + pass + ".csv").getAbsolutePath();
+    }
+
+    /**
+     * @return absolute start of the given pass, as last passed to {@link #poll}
+     */
+    public synchronized long getPassOffset(int pass) {
+        return pass < passOffsets.length ? passOffsets[pass] : 0;
+    }
+
+    public synchronized int getPassCount() {
+        return passOffsets.length;
+    }
+
+    /**
+     * @return bytes currently on disk for this render
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) size += file.length();
+        }
+        return size;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void markComplete() {
+        complete = true;
+    }
+
+    /**
+     * @return a snapshot of all finished segments, ordered by start time
+     */
+    public synchronized List<Segment> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Reads rows the muxer appended since the last call.
+     *
+     * @param pass     render pass whose list should be read
+     * @param offsetMs absolute position of the pass start in the track
+     * @return newly finished segments (may be empty)
+     */
+    public synchronized List<Segment> poll(int pass, long offsetMs) {
+        if (pass >= passOffsets.length) {
+            consumedRows = Arrays.copyOf(consumedRows, pass + 1);
+            passOffsets = Arrays.copyOf(passOffsets, pass + 1);
+        }
+        passOffsets[pass] = offsetMs;
+        List<Segment> added = new ArrayList<>();
+        File list = new File(getListPath(pass));
+        if (!list.exists()) return added;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(list))) {
+            String line;
+            int row = 0;
+            while ((line = reader.readLine()) != null) {
+                if (row++ < consumedRows[pass]) continue;
+
+                // filename,start,end
+                String[] parts = line.split(",");
+                if (parts.length < 3) {
+                    row--; // partially written row, retry next poll
+                    break;
+                }
+                long start = offsetMs + Math.round(Double.parseDouble(parts[1]) * 1000);
+                long end = offsetMs + Math.round(Double.parseDouble(parts[2]) * 1000);
+                Segment segment = new Segment(new File(dir, parts[0]).getAbsolutePath(), start, end);
+                segments.add(segment);
+                added.add(segment);
+            }
+            consumedRows[pass] = row;
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Cannot read segment list: " + e.getMessage());
+        }
+
+        if (!added.isEmpty()) {
+            Collections.sort(segments, (a, b) -> Long.compare(a.startMs, b.startMs));
+        }
+        return added;
+    }
+
+    /**
+     * Split points for the segment muxer, relative to the pass start:
+     * 4 s, 12 s, then every 30 s.
+     */
+    public static String buildSegmentTimes(long lengthMs) {
+        StringBuilder times = new StringBuilder();
+        long t = FIRST_SEGMENT_MS;
+        long step = SECOND_SEGMENT_MS;
+        while (t < lengthMs || times.length() == 0) {
+            if (times.length() > 0) times.append(',');
+            times.append(t / 1000.0);
+            t += step;
+            step = SEGMENT_MS;
+        }
+        return times.toString();
+    }
+}
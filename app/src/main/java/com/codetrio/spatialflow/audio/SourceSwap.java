@@ -0,0 +1,137 @@
+package com.codetrio.spatialflow.audio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Hands playback from one player to another without a gap: the incoming
+ * side is seeked to the outgoing playhead while the outgoing one keeps
+ * playing, then started silent and faded in with an equal-power curve as
+ * the outgoing one fades out.
+ *
+ * Seeks take time during which the outgoing side moves on, so the landing
+ * point is checked and the seek repeated ahead by the observed lag until
+ * the playheads are within {@link #ALIGN_TOLERANCE_MS}. Must be used from
+ * the main thread.
+ */
+public class SourceSwap {
+
+    private static final String TAG = "SourceSwap";
+
+    private static final long FADE_MS = 150;
+    private static final long FADE_STEP_MS = 10;
+    private static final long ALIGN_TOLERANCE_MS = 15;
+    private static final int MAX_SEEKS = 3;
+
+    /** One player taking part in the swap. */
+    public interface Side {
+        long getPositionMs();
+
+        /**
+         * Moves to {@code positionMs} and runs {@code onLanded} once playback
+         * can start there.
+         */
+        void seekTo(long positionMs, Runnable onLanded);
+
+        void start();
+
+        /** Volume on top of the balance, 0 to 1. */
+        void setFadeGain(float gain);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Side from;
+    private final Side to;
+    private final long offsetMs;
+    private final Runnable onDone;
+
+    private int seeks = 0;
+    private boolean started = false;
+    private boolean finished = false;
+    private long fadeStart;
+
+    private final Runnable fadeStep = this::fadeStep;
+
+    /**
+     * @param offsetMs where the incoming side is relative to the outgoing
+     *                 one for the same moment of the song
+     * @param onDone   run when the outgoing side is silent and can go
+     */
+    public SourceSwap(Side from, Side to, long offsetMs, Runnable onDone) {
+        this.from = from;
+        this.to = to;
+        this.offsetMs = offsetMs;
+        this.onDone = onDone;
+    }
+
+    public void start() {
+        to.setFadeGain(0f);
+        seekIncoming(0);
+    }
+
+    /**
+     * @return the playhead of the side that is audible
+     */
+    public long getPositionMs() {
+        return started ? to.getPositionMs() : from.getPositionMs() + offsetMs;
+    }
+
+    /**
+     * Jumps to the end: the incoming side plays at full volume, the outgoing
+     * one is handed to {@code onDone}. For transport actions mid-swap.
+     */
+    public void finish() {
+        if (finished) return;
+        handler.removeCallbacks(fadeStep);
+        if (!started) {
+            started = true;
+            to.start();
+        }
+        complete();
+    }
+
+    private void seekIncoming(long leadMs) {
+        seeks++;
+        to.seekTo(Math.max(0, from.getPositionMs() + offsetMs + leadMs), this::onLanded);
+    }
+
+    private void onLanded() {
+        if (finished) return;
+
+        long drift = from.getPositionMs() + offsetMs - to.getPositionMs();
+        if (Math.abs(drift) > ALIGN_TOLERANCE_MS && seeks < MAX_SEEKS) {
+            // The outgoing side moved on while seeking, land that far ahead
+            seekIncoming(Math.max(0, drift));
+            return;
+        }
+
+        Log.d(TAG, "Incoming side aligned within " + drift + " ms after " + seeks + " seeks");
+        started = true;
+        to.start();
+        fadeStart = SystemClock.uptimeMillis();
+        fadeStep();
+    }
+
+    private void fadeStep() {
+        if (finished) return;
+
+        double t = Math.min(1.0, (SystemClock.uptimeMillis() - fadeStart) / (double) FADE_MS);
+        if (t >= 1.0) {
+            complete();
+            return;
+        }
+        double angle = t * Math.PI / 2;
+        from.setFadeGain((float) Math.cos(angle));
+        to.setFadeGain((float) Math.sin(angle));
+        handler.postDelayed(fadeStep, FADE_STEP_MS);
+    }
+
+    private void complete() {
+        finished = true;
+        from.setFadeGain(0f);
+        to.setFadeGain(1f);
+        onDone.run();
+    }
+}
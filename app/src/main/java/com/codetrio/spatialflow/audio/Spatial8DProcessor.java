@@ -0,0 +1,151 @@
+package com.codetrio.spatialflow.audio;
+
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Block-based Java port of the FFmpeg 8D chain used by
+ * {@link com.codetrio.spatialflow.util.FFmpegCommandBuilder#build8D}.
+ * Chain (same constants as the FFmpeg filter graph):
+ *  1) apulsator   – sine auto‑panner, width 0.75, right channel offset 0.5
+ *  2) extrastereo – widening with m=1.3, no clipping
+ *  3) adelay      – 10 ms Haas delay on the right channel
+ *  4) aecho       – 0.9/0.9 gains, 40|80 ms taps decaying 0.20|0.15
+ *
+ * Works in place on interleaved stereo floats and never allocates after
+ * construction, so it is safe to call from the audio thread.
+ */
+public class Spatial8DProcessor {
+
+    // apulsator
+    private static final double PULSATOR_WIDTH = 0.75;
+    private static final double PULSATOR_OFFSET_L = 0.0;
+    private static final double PULSATOR_OFFSET_R = 0.5;
+
+    // extrastereo
+    private static final float STEREO_MULTIPLIER = 1.3f;
+
+    // adelay, shared with the FFmpeg chain and the original/8D swap alignment
+    private static final int HAAS_DELAY_MS = FFmpegCommandBuilder.HAAS_DELAY_MS;
+
+    // aecho
+    private static final float ECHO_IN_GAIN = 0.9f;
+    private static final float ECHO_OUT_GAIN = 0.9f;
+    private static final int[] ECHO_DELAYS_MS = {40, 80};
+    private static final float[] ECHO_DECAYS = {0.20f, 0.15f};
+
+    private final int sampleRate;
+
+    // Read once per block so UI changes land within one buffer
+    private volatile boolean enabled = true;
+    private volatile float rotationHz;
+
+    private double lfoPhase = 0.0;
+
+    private final float[] haasLine;
+    private int haasIndex = 0;
+
+    private final int[] echoTaps = new int[ECHO_DELAYS_MS.length];
+    private final float[] echoLineL;
+    private final float[] echoLineR;
+    private int echoIndex = 0;
+
+    public Spatial8DProcessor(int sampleRate, float rotationHz) {
+        this.sampleRate = sampleRate;
+        this.rotationHz = rotationHz;
+
+        haasLine = new float[Math.max(1, sampleRate * HAAS_DELAY_MS / 1000)];
+
+        int maxEcho = 1;
+        for (int i = 0; i < ECHO_DELAYS_MS.length; i++) {
+            echoTaps[i] = Math.max(1, sampleRate * ECHO_DELAYS_MS[i] / 1000);
+            maxEcho = Math.max(maxEcho, echoTaps[i]);
+        }
+        echoLineL = new float[maxEcho];
+        echoLineR = new float[maxEcho];
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setRotationSpeed(float hz) {
+        this.rotationHz = hz;
+    }
+
+    public float getRotationSpeed() {
+        return rotationHz;
+    }
+
+    /**
+     * Clears delay lines and LFO phase, e.g. after a seek.
+     */
+    public void reset() {
+        lfoPhase = 0.0;
+        Arrays.fill(haasLine, 0f);
+        Arrays.fill(echoLineL, 0f);
+        Arrays.fill(echoLineR, 0f);
+        haasIndex = 0;
+        echoIndex = 0;
+    }
+
+    /**
+     * Processes {@code frames} interleaved stereo frames in place.
+     */
+    public void process(float[] buffer, int frames) {
+        if (!enabled) return;
+
+        final double phaseStep = rotationHz / (double) sampleRate;
+        final double width = Math.min(1.99, Math.max(0.01, PULSATOR_WIDTH));
+
+        for (int f = 0, i = 0; f < frames; f++, i += 2) {
+            float l = buffer[i];
+            float r = buffer[i + 1];
+
+            // 1) apulsator (amount = 1, so the dry path drops out)
+            l *= (float) (lfoValue(lfoPhase, width, PULSATOR_OFFSET_L) * 0.5 + 0.5);
+            r *= (float) (lfoValue(lfoPhase, width, PULSATOR_OFFSET_R) * 0.5 + 0.5);
+            lfoPhase += phaseStep;
+            if (lfoPhase >= 1.0) lfoPhase -= Math.floor(lfoPhase);
+
+            // 2) extrastereo
+            float average = (l + r) * 0.5f;
+            l = average + STEREO_MULTIPLIER * (l - average);
+            r = average + STEREO_MULTIPLIER * (r - average);
+
+            // 3) adelay 0|10
+            float delayedR = haasLine[haasIndex];
+            haasLine[haasIndex] = r;
+            if (++haasIndex == haasLine.length) haasIndex = 0;
+            r = delayedR;
+
+            // 4) aecho (feed-forward taps on the echo input)
+            float outL = l * ECHO_IN_GAIN;
+            float outR = r * ECHO_IN_GAIN;
+            int size = echoLineL.length;
+            for (int t = 0; t < echoTaps.length; t++) {
+                int ix = echoIndex - echoTaps[t];
+                if (ix < 0) ix += size;
+                outL += echoLineL[ix] * ECHO_DECAYS[t];
+                outR += echoLineR[ix] * ECHO_DECAYS[t];
+            }
+            echoLineL[echoIndex] = l;
+            echoLineR[echoIndex] = r;
+            if (++echoIndex == size) echoIndex = 0;
+
+            buffer[i] = outL * ECHO_OUT_GAIN;
+            buffer[i + 1] = outR * ECHO_OUT_GAIN;
+        }
+    }
+
+    private static double lfoValue(double phase, double width, double offset) {
+        double phs = Math.min(100.0, phase / width + offset);
+        if (phs > 1.0) phs = phs % 1.0;
+        return Math.sin(phs * 2.0 * Math.PI);
+    }
+}
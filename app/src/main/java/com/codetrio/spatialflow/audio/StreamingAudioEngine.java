@@ -0,0 +1,714 @@
+package com.codetrio.spatialflow.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.PlaybackParams;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.codetrio.spatialflow.model.EffectsState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes a file with MediaCodec, runs the PCM through {@link BiquadEqualizer}
+ * and {@link Spatial8DProcessor} block by block and writes it to an
+ * {@link AudioTrack}. No intermediate file is rendered, so 8D on/off, rotation
+ * and EQ changes are audible within one buffer. EQ and balance come from the
+ * shared {@link EffectsState} snapshot, read once per block and ramped.
+ *
+ * The AudioTrack is created on the caller's audio session so the platform
+ * BassBoost / LoudnessEnhancer keep working. A next song opened ahead with
+ * {@link #prepareNext} takes over the decoder when the current one ends and
+ * is written to the same AudioTrack, so the transition has no gap. With a
+ * crossfade set, both songs are decoded during the last seconds of the
+ * current one and mixed with {@link EqualPowerCrossfade} before the effects,
+ * so EQ and 8D run once on the mix.
+ */
+public class StreamingAudioEngine {
+
+    private static final String TAG = "StreamingAudioEngine";
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    // Decoded stereo frames a source can hold before it is read; grown only
+    // for decoders with unusually large output buffers
+    private static final int FIFO_FRAMES = 8192;
+
+    public interface Listener {
+        void onCompletion();
+        void onError(String message);
+
+        /**
+         * The song from {@link #prepareNext} has taken over; the position
+         * restarted at 0.
+         */
+        void onNextStarted(Uri uri);
+    }
+
+    /**
+     * One opened song: its extractor, decoder and the decoded stereo frames
+     * not yet written out.
+     */
+    private static final class Source {
+        final Uri uri;
+        final MediaExtractor extractor;
+        final MediaCodec codec;
+        final int sampleRate;
+        final long durationMs;
+        // Decode thread only, updated by output format changes
+        int channelCount;
+        boolean floatPcm = false;
+        boolean inputDone = false;
+        boolean outputDone = false;
+        // Presentation time of the last decoded buffer
+        long decodedUs = 0;
+        float[] fifo = new float[FIFO_FRAMES * 2];
+        int fifoFrames = 0;
+
+        Source(Uri uri, MediaExtractor extractor, MediaCodec codec, MediaFormat format) {
+            this.uri = uri;
+            this.extractor = extractor;
+            this.codec = codec;
+            this.sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            this.channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            this.durationMs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) / 1000 : 0;
+        }
+
+        /**
+         * Appends one decoder buffer as interleaved stereo float.
+         */
+        void append(ByteBuffer pcm) {
+            int channels = Math.max(1, channelCount);
+            int samples = floatPcm ? pcm.remaining() / 4 : pcm.remaining() / 2;
+            int frames = samples / channels;
+
+            if (fifo.length < (fifoFrames + frames) * 2) {
+                float[] grown = new float[(fifoFrames + frames) * 2];
+                System.arraycopy(fifo, 0, grown, 0, fifoFrames * 2);
+                fifo = grown;
+            }
+
+            int at = fifoFrames * 2;
+            if (floatPcm) {
+                FloatBuffer src = pcm.asFloatBuffer();
+                for (int f = 0; f < frames; f++, at += 2) {
+                    int base = f * channels;
+                    float l = src.get(base);
+                    fifo[at] = l;
+                    fifo[at + 1] = channels > 1 ? src.get(base + 1) : l;
+                }
+            } else {
+                ShortBuffer src = pcm.asShortBuffer();
+                for (int f = 0; f < frames; f++, at += 2) {
+                    int base = f * channels;
+                    float l = src.get(base) / 32768f;
+                    fifo[at] = l;
+                    fifo[at + 1] = channels > 1 ? src.get(base + 1) / 32768f : l;
+                }
+            }
+            fifoFrames += frames;
+        }
+
+        /**
+         * Drops the first {@code frames} frames once they are written out.
+         */
+        void consume(int frames) {
+            int left = fifoFrames - frames;
+            if (left > 0) System.arraycopy(fifo, frames * 2, fifo, 0, left * 2);
+            fifoFrames = Math.max(0, left);
+        }
+
+        /**
+         * Moves decoding to {@code positionMs} and drops what was decoded.
+         */
+        void seek(long positionMs) {
+            extractor.seekTo(positionMs * 1000, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            codec.flush();
+            inputDone = false;
+            outputDone = false;
+            decodedUs = positionMs * 1000;
+            fifoFrames = 0;
+        }
+
+        /**
+         * @return true once everything was decoded and written out
+         */
+        boolean isDrained() {
+            return outputDone && fifoFrames == 0;
+        }
+
+        void release() {
+            try {
+                codec.stop();
+            } catch (IllegalStateException ignored) { }
+            codec.release();
+            extractor.release();
+        }
+    }
+
+    private final int audioSessionId;
+    private final Listener listener;
+    private final AtomicReference<EffectsState> effectsState;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+
+    private volatile Source source;
+    // Opened ahead, taken by the decode thread when the current song ends
+    // or a crossfade starts
+    private Source nextSource;
+    // Decode thread only: the incoming song while a crossfade runs
+    private Source fadeSource;
+    private long fadePosition = 0;
+    private long fadeLength = 0;
+    private long fadeStartWritten = 0;
+    private volatile int crossfadeMs = 0;
+    private AudioTrack audioTrack;
+    private Spatial8DProcessor processor;
+    private BiquadEqualizer equalizer;
+
+    private int sampleRate;
+
+    private Thread decodeThread;
+    private volatile boolean running = false;
+    private volatile boolean playing = false;
+    private volatile long pendingSeekMs = -1;
+    private volatile boolean completed = false;
+    private volatile boolean released = false;
+
+    // Position bookkeeping: base position of the last seek + frames played
+    // since the head passed headBase (where the current song's audio starts)
+    private volatile long seekBaseMs = 0;
+    private volatile long headBase = 0;
+    // Decode thread only: frames written since the last flush
+    private long framesWritten = 0;
+
+    // Reused between blocks, grown on demand
+    private float[] blockBuffer = new float[0];
+
+    // Decode thread only: last snapshot applied and the balance ramp
+    private EffectsState appliedState;
+    private float leftGain = 1f;
+    private float rightGain = 1f;
+    private float speed = 1f;
+
+    public StreamingAudioEngine(int audioSessionId, AtomicReference<EffectsState> effectsState,
+                                Listener listener) {
+        this.audioSessionId = audioSessionId;
+        this.effectsState = effectsState;
+        this.listener = listener;
+    }
+
+    /**
+     * Opens {@code uri} and prepares decoder + AudioTrack. Content URIs are
+     * read through a file descriptor, nothing is copied.
+     *
+     * @return true if the file has a decodable audio track
+     */
+    public boolean open(Context context, Uri uri, float rotationHz) {
+        source = openSource(context, uri);
+        if (source == null) return false;
+        sampleRate = source.sampleRate;
+
+        try {
+            int minBuffer = AudioTrack.getMinBufferSize(sampleRate,
+                    AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_FLOAT);
+
+            audioTrack = new AudioTrack(
+                    new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build(),
+                    new AudioFormat.Builder()
+                            .setSampleRate(sampleRate)
+                            .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                            .build(),
+                    minBuffer * 2,
+                    AudioTrack.MODE_STREAM,
+                    audioSessionId);
+
+            processor = new Spatial8DProcessor(sampleRate, rotationHz);
+            equalizer = new BiquadEqualizer(sampleRate, BiquadEqualizer.FIVE_BAND_HZ);
+
+            Log.d(TAG, "Opened " + uri + " (" + sampleRate + " Hz, " + source.channelCount + " ch)");
+            return true;
+
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Failed to open stream: " + e.getMessage(), e);
+            release();
+            return false;
+        }
+    }
+
+    /**
+     * Opens the song to continue with when the current one ends. Blocking,
+     * call off the main thread. Replaces an earlier next song, {@code null}
+     * clears it.
+     *
+     * @return false if it cannot be decoded or needs another sample rate,
+     * which the running AudioTrack cannot switch to
+     */
+    public boolean prepareNext(Context context, Uri uri) {
+        Source next = uri != null ? openSource(context, uri) : null;
+        if (next != null && next.sampleRate != sampleRate) {
+            Log.d(TAG, "Next song is " + next.sampleRate + " Hz, not " + sampleRate + ", no handover");
+            next.release();
+            next = null;
+        }
+
+        Source previous;
+        synchronized (lock) {
+            if (released) {
+                if (next != null) next.release();
+                return false;
+            }
+            previous = nextSource;
+            nextSource = next;
+        }
+        if (previous != null) previous.release();
+        return next != null;
+    }
+
+    /**
+     * @return the opened song, or null if it has no decodable audio track
+     */
+    private static Source openSource(Context context, Uri uri) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+
+            if (format == null) {
+                Log.e(TAG, "No audio track in " + uri);
+                extractor.release();
+                return null;
+            }
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            return new Source(uri, extractor, codec, format);
+
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Failed to open " + uri + ": " + e.getMessage(), e);
+            if (codec != null) codec.release();
+            extractor.release();
+            return null;
+        }
+    }
+
+    public Spatial8DProcessor getProcessor() {
+        return processor;
+    }
+
+    public BiquadEqualizer getEqualizer() {
+        return equalizer;
+    }
+
+    public int getAudioSessionId() {
+        return audioSessionId;
+    }
+
+    // ===== TRANSPORT =====
+
+    public void play() {
+        if (audioTrack == null) return;
+        if (completed) {
+            // Same as MediaPlayer: start() after completion restarts the track
+            completed = false;
+            seekTo(0);
+        }
+        synchronized (lock) {
+            playing = true;
+            audioTrack.play();
+            lock.notifyAll();
+        }
+        startDecodeThreadIfNeeded();
+    }
+
+    public void pause() {
+        if (audioTrack == null) return;
+        synchronized (lock) {
+            playing = false;
+            audioTrack.pause();
+        }
+    }
+
+    public void seekTo(long positionMs) {
+        pendingSeekMs = Math.max(0, positionMs);
+        seekBaseMs = pendingSeekMs;
+        headBase = 0;
+        synchronized (lock) {
+            // A paused track may be holding the decode thread in a blocking write
+            if (!playing && audioTrack != null) audioTrack.flush();
+            lock.notifyAll();
+        }
+        startDecodeThreadIfNeeded();
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public long getDurationMs() {
+        Source current = source;
+        return current != null ? current.durationMs : 0;
+    }
+
+    public long getPositionMs() {
+        if (audioTrack == null || sampleRate == 0) return seekBaseMs;
+        long frames = (audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase;
+        // Negative while the end of the previous song is still draining
+        return seekBaseMs + Math.max(0, frames) * 1000 / sampleRate;
+    }
+
+    public void setPlaybackSpeed(float speed) {
+        if (audioTrack == null) return;
+        try {
+            PlaybackParams params = audioTrack.getPlaybackParams();
+            params.setSpeed(speed);
+            params.setPitch(speed);
+            audioTrack.setPlaybackParams(params);
+            this.speed = speed;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Failed to set playback speed: " + e.getMessage());
+        }
+    }
+
+    public float getPlaybackSpeed() {
+        return speed;
+    }
+
+    /**
+     * Overlap with the next song from {@link #prepareNext}. 0 hands over
+     * gaplessly without overlap. Taken into account from the next handover.
+     */
+    public void setCrossfadeMs(int crossfadeMs) {
+        this.crossfadeMs = Math.max(0, crossfadeMs);
+    }
+
+    public void release() {
+        running = false;
+        playing = false;
+        Source next;
+        synchronized (lock) {
+            released = true;
+            next = nextSource;
+            nextSource = null;
+            if (audioTrack != null) {
+                audioTrack.pause();
+                audioTrack.flush();
+            }
+            lock.notifyAll();
+        }
+        if (decodeThread != null) {
+            try {
+                decodeThread.join(500);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            decodeThread = null;
+        }
+        if (fadeSource != null) {
+            fadeSource.release();
+            fadeSource = null;
+        }
+        if (next != null) next.release();
+        if (source != null) {
+            source.release();
+            source = null;
+        }
+        if (audioTrack != null) {
+            audioTrack.release();
+            audioTrack = null;
+        }
+    }
+
+    // ===== DECODE LOOP =====
+
+    private void startDecodeThreadIfNeeded() {
+        if (running || source == null) return;
+        running = true;
+        decodeThread = new Thread(this::decodeLoop, "SpatialFlow-8D");
+        decodeThread.setPriority(Thread.MAX_PRIORITY);
+        decodeThread.start();
+    }
+
+    private void decodeLoop() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        try {
+            while (running) {
+                synchronized (lock) {
+                    while (running && !playing && pendingSeekMs < 0) {
+                        lock.wait();
+                    }
+                }
+                if (!running) break;
+
+                Source current = source;
+                long seek = pendingSeekMs;
+                if (seek >= 0) {
+                    pendingSeekMs = -1;
+                    cancelFade();
+                    current.seek(seek);
+                    audioTrack.pause();
+                    audioTrack.flush();
+                    framesWritten = 0;
+                    if (playing) audioTrack.play();
+                    processor.reset();
+                    equalizer.reset();
+                }
+
+                if (current.isDrained()) {
+                    Source next = fadeSource;
+                    long startsAt = fadeStartWritten;
+                    if (next == null) {
+                        next = takeNextSource();
+                        startsAt = framesWritten;
+                    }
+                    if (next != null) {
+                        switchTo(current, next, startsAt);
+                        continue;
+                    }
+                    playing = false;
+                    completed = true;
+                    mainHandler.post(listener::onCompletion);
+                    continue;
+                }
+
+                if (!playing) continue;
+
+                if (current.fifoFrames == 0) {
+                    pump(current, info);
+                    continue;
+                }
+
+                if (fadeSource == null) maybeStartFade(current);
+
+                int frames = current.fifoFrames;
+                Source incoming = fadeSource;
+                if (incoming != null) {
+                    // Decode the incoming song as far as the outgoing one
+                    while (running && incoming.fifoFrames < frames && !incoming.outputDone) {
+                        pump(incoming, info);
+                    }
+                    if (!running) break;
+                }
+
+                writeFrames(current, incoming, frames);
+
+                if (incoming != null && fadePosition >= fadeLength) {
+                    // The fade is complete, whatever is left of the old song is silent
+                    switchTo(current, incoming, fadeStartWritten);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Decode loop failed: " + e.getMessage(), e);
+            playing = false;
+            mainHandler.post(() -> listener.onError(e.getMessage()));
+        }
+        running = false;
+    }
+
+    /**
+     * One decoder step: queues at most one input buffer and appends at most
+     * one output buffer to the source's FIFO.
+     */
+    private void pump(Source src, MediaCodec.BufferInfo info) {
+        if (!src.inputDone) {
+            int inIndex = src.codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+            if (inIndex >= 0) {
+                ByteBuffer in = src.codec.getInputBuffer(inIndex);
+                int size = in != null ? src.extractor.readSampleData(in, 0) : -1;
+                if (size < 0) {
+                    src.codec.queueInputBuffer(inIndex, 0, 0, 0,
+                            MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    src.inputDone = true;
+                } else {
+                    src.codec.queueInputBuffer(inIndex, 0, size,
+                            src.extractor.getSampleTime(), 0);
+                    src.extractor.advance();
+                }
+            }
+        }
+
+        int outIndex = src.codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+        if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            MediaFormat out = src.codec.getOutputFormat();
+            src.floatPcm = out.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                    && out.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+            if (out.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+                src.channelCount = out.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            }
+        } else if (outIndex >= 0) {
+            ByteBuffer out = src.codec.getOutputBuffer(outIndex);
+            if (out != null && info.size > 0) {
+                out.position(info.offset);
+                out.limit(info.offset + info.size);
+                src.append(out.order(ByteOrder.nativeOrder()));
+                src.decodedUs = info.presentationTimeUs;
+            }
+            src.codec.releaseOutputBuffer(outIndex, false);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                src.outputDone = true;
+            }
+        }
+    }
+
+    // ===== CROSSFADE =====
+
+    private Source takeNextSource() {
+        synchronized (lock) {
+            Source next = nextSource;
+            nextSource = null;
+            return next;
+        }
+    }
+
+    /**
+     * Starts mixing in the next song once the current one is within the
+     * crossfade length of its end. The fade runs to the current song's real
+     * end and is capped at half of either song.
+     */
+    private void maybeStartFade(Source current) {
+        int fadeMs = crossfadeMs;
+        if (fadeMs <= 0 || current.durationMs <= 0) return;
+        long remainingUs = current.durationMs * 1000 - current.decodedUs;
+        if (remainingUs > fadeMs * 1000L || remainingUs <= 0) return;
+
+        Source next = takeNextSource();
+        if (next == null) return;
+
+        long length = remainingUs * sampleRate / 1_000_000;
+        length = Math.min(length, current.durationMs * sampleRate / 2000);
+        if (next.durationMs > 0) length = Math.min(length, next.durationMs * sampleRate / 2000);
+
+        fadeSource = next;
+        fadePosition = 0;
+        fadeLength = Math.max(1, length);
+        fadeStartWritten = framesWritten;
+        Log.d(TAG, "Crossfade into " + next.uri + " over " + fadeLength + " frames");
+    }
+
+    /**
+     * A seek in the outgoing song: the incoming one goes back to the start
+     * and waits again as the next song, unless another one was prepared.
+     */
+    private void cancelFade() {
+        Source incoming = fadeSource;
+        if (incoming == null) return;
+        fadeSource = null;
+        incoming.seek(0);
+        synchronized (lock) {
+            if (nextSource == null && !released) {
+                nextSource = incoming;
+                incoming = null;
+            }
+        }
+        if (incoming != null) incoming.release();
+    }
+
+    /**
+     * Makes {@code next} the current song. Same AudioTrack and 8D/EQ state;
+     * the new song's position counts from {@code startsAt}, the frame where
+     * its first sample was written.
+     */
+    private void switchTo(Source current, Source next, long startsAt) {
+        source = next;
+        fadeSource = null;
+        headBase = startsAt;
+        seekBaseMs = 0;
+        current.release();
+        mainHandler.post(() -> listener.onNextStarted(next.uri));
+    }
+
+    // ===== OUTPUT =====
+
+    /**
+     * Writes the first {@code frames} frames of {@code current}, mixed with
+     * {@code incoming} during a crossfade, through EQ, 8D and balance to the
+     * AudioTrack.
+     */
+    private void writeFrames(Source current, Source incoming, int frames) {
+        if (blockBuffer.length < frames * 2) {
+            blockBuffer = new float[frames * 2];
+        }
+
+        if (incoming != null) {
+            int mixed = Math.min(frames, incoming.fifoFrames);
+            EqualPowerCrossfade.mix(blockBuffer, current.fifo, incoming.fifo, mixed, frames,
+                    fadePosition, fadeLength);
+            incoming.consume(mixed);
+            fadePosition += frames;
+        } else {
+            System.arraycopy(current.fifo, 0, blockBuffer, 0, frames * 2);
+        }
+        current.consume(frames);
+
+        EffectsState state = effectsState.get();
+        if (state != appliedState) {
+            // Allocates only when the settings changed, not per block
+            if (appliedState == null || (state.diff(appliedState) & EffectsState.CHANGED_EQ_BANDS) != 0) {
+                equalizer.setGains(state.getEqGainsDb());
+            }
+            equalizer.setEnabled(state.isEqualizerEnabled);
+            appliedState = state;
+        }
+
+        equalizer.process(blockBuffer, blockBuffer, frames);
+        processor.process(blockBuffer, frames);
+        applyBalance(state.getLeftVolume(), state.getRightVolume(), frames);
+        audioTrack.write(blockBuffer, 0, frames * 2, AudioTrack.WRITE_BLOCKING);
+        framesWritten += frames;
+    }
+
+    /**
+     * Scales the block by the balance gains, ramping linearly from the
+     * previous block's gains so a moving slider does not click.
+     */
+    private void applyBalance(float left, float right, int frames) {
+        if (left == leftGain && right == rightGain) {
+            if (left == 1f && right == 1f) return;
+            for (int f = 0, i = 0; f < frames; f++, i += 2) {
+                blockBuffer[i] *= left;
+                blockBuffer[i + 1] *= right;
+            }
+            return;
+        }
+
+        float stepL = (left - leftGain) / frames;
+        float stepR = (right - rightGain) / frames;
+        for (int f = 0, i = 0; f < frames; f++, i += 2) {
+            blockBuffer[i] *= leftGain + stepL * f;
+            blockBuffer[i + 1] *= rightGain + stepR * f;
+        }
+        leftGain = left;
+        rightGain = right;
+    }
+}
@@ -0,0 +1,200 @@
+package com.codetrio.spatialflow.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable snapshot of every user effect setting. Each change produces a
+ * new state with a higher version, so the service can drop stale states
+ * and apply only what {@link #diff} reports as changed.
+ */
+public final class EffectsState {
+
+    // Process-wide, a state built later always has the higher version
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    public static final int BANDS = 5;
+
+    // Bits returned by diff()
+    public static final int CHANGED_8D_ENABLED = 1;
+    public static final int CHANGED_8D_SPEED = 1 << 1;
+    public static final int CHANGED_BASS_ENABLED = 1 << 2;
+    public static final int CHANGED_BASS_BOOST = 1 << 3;
+    public static final int CHANGED_EQ_ENABLED = 1 << 4;
+    public static final int CHANGED_EQ_BANDS = 1 << 5;
+    public static final int CHANGED_LOUDNESS_ENABLED = 1 << 6;
+    public static final int CHANGED_LOUDNESS_GAIN = 1 << 7;
+    public static final int CHANGED_BALANCE = 1 << 8;
+    public static final int CHANGED_PLAYBACK_SPEED = 1 << 9;
+    public static final int CHANGED_ALL = (1 << 10) - 1;
+
+    public static final EffectsState DEFAULT = new EffectsState(0, false, 0.2f, false, 0,
+            false, new int[BANDS], false, 0, 0, 1.0f);
+
+    public final long version;
+
+    public final boolean is8DEnabled;
+    public final float speed8D;             // Hz
+
+    public final boolean isBassEnabled;
+    public final int bassBoost;             // -15 to +15 dB
+
+    public final boolean isEqualizerEnabled;
+    private final int[] eqBands;            // dB, at 60/230/910/3600/14000 Hz
+
+    public final boolean isLoudnessEnabled;
+    public final int loudnessGain;          // 0 to 12 dB
+
+    public final int balance;               // -50 to +50, 0 = center
+    public final float playbackSpeed;       // 0.5x to 2.0x
+
+    private EffectsState(long version, boolean is8DEnabled, float speed8D,
+                         boolean isBassEnabled, int bassBoost,
+                         boolean isEqualizerEnabled, int[] eqBands,
+                         boolean isLoudnessEnabled, int loudnessGain,
+                         int balance, float playbackSpeed) {
+        this.version = version;
+        this.is8DEnabled = is8DEnabled;
+        this.speed8D = speed8D;
+        this.isBassEnabled = isBassEnabled;
+        this.bassBoost = bassBoost;
+        this.isEqualizerEnabled = isEqualizerEnabled;
+        this.eqBands = eqBands;
+        this.isLoudnessEnabled = isLoudnessEnabled;
+        this.loudnessGain = loudnessGain;
+        this.balance = balance;
+        this.playbackSpeed = playbackSpeed;
+    }
+
+    public int getEqBand(int band) {
+        return eqBands[band];
+    }
+
+    /**
+     * @return a new array with the band gains as floats
+     */
+    public float[] getEqGainsDb() {
+        float[] gains = new float[eqBands.length];
+        for (int i = 0; i < gains.length; i++) gains[i] = eqBands[i];
+        return gains;
+    }
+
+    public float getLeftVolume() {
+        return balance > 0 ? 1.0f - (balance / 50.0f) : 1.0f;
+    }
+
+    public float getRightVolume() {
+        return balance < 0 ? 1.0f + (balance / 50.0f) : 1.0f;
+    }
+
+    public boolean isNewerThan(EffectsState other) {
+        return other == null || version > other.version;
+    }
+
+    /**
+     * @param previous State that is currently applied, null if none
+     * @return CHANGED_* bits of the fields that differ from {@code previous}
+     */
+    public int diff(EffectsState previous) {
+        if (previous == null) return CHANGED_ALL;
+        if (previous == this) return 0;
+
+        int changed = 0;
+        if (is8DEnabled != previous.is8DEnabled) changed |= CHANGED_8D_ENABLED;
+        if (speed8D != previous.speed8D) changed |= CHANGED_8D_SPEED;
+        if (isBassEnabled != previous.isBassEnabled) changed |= CHANGED_BASS_ENABLED;
+        if (bassBoost != previous.bassBoost) changed |= CHANGED_BASS_BOOST;
+        if (isEqualizerEnabled != previous.isEqualizerEnabled) changed |= CHANGED_EQ_ENABLED;
+        if (eqBands != previous.eqBands && !Arrays.equals(eqBands, previous.eqBands)) {
+            changed |= CHANGED_EQ_BANDS;
+        }
+        if (isLoudnessEnabled != previous.isLoudnessEnabled) changed |= CHANGED_LOUDNESS_ENABLED;
+        if (loudnessGain != previous.loudnessGain) changed |= CHANGED_LOUDNESS_GAIN;
+        if (balance != previous.balance) changed |= CHANGED_BALANCE;
+        if (playbackSpeed != previous.playbackSpeed) changed |= CHANGED_PLAYBACK_SPEED;
+        return changed;
+    }
+
+    // ===== COPY-ON-WRITE =====
+    // Setting a field to its current value returns this, no new version
+
+    public EffectsState with8DEnabled(boolean enabled) {
+        if (enabled == is8DEnabled) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), enabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState with8DSpeed(float speed) {
+        if (speed == speed8D) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withBassEnabled(boolean enabled) {
+        if (enabled == isBassEnabled) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, enabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withBassBoost(int boost) {
+        if (boost == bassBoost) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, boost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withEqualizerEnabled(boolean enabled) {
+        if (enabled == isEqualizerEnabled) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                enabled, eqBands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withEqBand(int band, int gainDb) {
+        if (band < 0 || band >= eqBands.length || eqBands[band] == gainDb) return this;
+        int[] bands = eqBands.clone();
+        bands[band] = gainDb;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, bands, isLoudnessEnabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withLoudnessEnabled(boolean enabled) {
+        if (enabled == isLoudnessEnabled) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, enabled, loudnessGain, balance, playbackSpeed);
+    }
+
+    public EffectsState withLoudnessGain(int gain) {
+        if (gain == loudnessGain) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, gain, balance, playbackSpeed);
+    }
+
+    public EffectsState withBalance(int value) {
+        if (value == balance) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, value, playbackSpeed);
+    }
+
+    public EffectsState withPlaybackSpeed(float speed) {
+        if (speed == playbackSpeed) return this;
+        return new EffectsState(VERSIONS.incrementAndGet(), is8DEnabled, speed8D, isBassEnabled, bassBoost,
+                isEqualizerEnabled, eqBands, isLoudnessEnabled, loudnessGain, balance, speed);
+    }
+
+    /**
+     * Defaults for every field, as a new version so it replaces whatever is
+     * applied.
+     */
+    public static EffectsState reset() {
+        return new EffectsState(VERSIONS.incrementAndGet(), DEFAULT.is8DEnabled, DEFAULT.speed8D,
+                DEFAULT.isBassEnabled, DEFAULT.bassBoost, DEFAULT.isEqualizerEnabled, DEFAULT.eqBands,
+                DEFAULT.isLoudnessEnabled, DEFAULT.loudnessGain, DEFAULT.balance, DEFAULT.playbackSpeed);
+    }
+
+    @Override
+    public String toString() {
+        return "EffectsState{v" + version + ", 8D " + is8DEnabled + "/" + speed8D + " Hz, bass "
+                + isBassEnabled + "/" + bassBoost + " dB, EQ " + isEqualizerEnabled + " "
+                + Arrays.toString(eqBands) + ", loudness " + isLoudnessEnabled + "/" + loudnessGain
+                + " dB, balance " + balance + ", speed " + playbackSpeed + "x}";
+    }
+}
@@ -0,0 +1,34 @@
+package com.codetrio.spatialflow.model;
+
+import android.os.SystemClock;
+
+/**
+ * Playback position anchored to a point in time. A new clock is published
+ * only on transitions (play, pause, seek, speed change, source swap);
+ * between them consumers extrapolate with {@link #getPositionMs()}.
+ */
+public final class PlaybackClock {
+
+    public static final PlaybackClock STOPPED = new PlaybackClock(0, 0, 1f, false);
+
+    public final long positionMs;
+    public final long anchorRealtimeMs;   // SystemClock.elapsedRealtime() of positionMs
+    public final float speed;
+    public final boolean running;         // false while paused, stopped or buffering
+
+    public PlaybackClock(long positionMs, long anchorRealtimeMs, float speed, boolean running) {
+        this.positionMs = positionMs;
+        this.anchorRealtimeMs = anchorRealtimeMs;
+        this.speed = speed;
+        this.running = running;
+    }
+
+    public long positionAt(long realtimeMs) {
+        if (!running) return positionMs;
+        return positionMs + (long) ((realtimeMs - anchorRealtimeMs) * speed);
+    }
+
+    public long getPositionMs() {
+        return positionAt(SystemClock.elapsedRealtime());
+    }
+}
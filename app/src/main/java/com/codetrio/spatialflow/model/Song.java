@@ -0,0 +1,24 @@
+package com.codetrio.spatialflow.model;
+
+/**
+ * One song from the MediaStore audio library. Plain Java, so list logic
+ * built on it can be benchmarked on the JVM.
+ */
+public class Song {
+
+    public final long id;
+    public final String title;
+    public final String artist;
+    public final long albumId;
+    public final String path;
+    public final long dateAdded;
+
+    public Song(long id, String title, String artist, long albumId, String path, long dateAdded) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.albumId = albumId;
+        this.path = path;
+        this.dateAdded = dateAdded;
+    }
+}
@@ -0,0 +1,279 @@
+package com.codetrio.spatialflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The audio library stored by column instead of one {@link Song} per track:
+ * ids, album ids and dates are primitive arrays, titles and artists are
+ * {@code int} references into tables of distinct strings, so an artist with
+ * a thousand tracks is stored once. Rows are in library order (by title,
+ * untitled last).
+ *
+ * Filtering and sorting read the columns by row, or work on the distinct
+ * strings and map them through the references, without allocating per
+ * row. {@link #get(int)} materializes a {@link Song} only where one is
+ * handed out, e.g. for a row on screen.
+ *
+ * Immutable and safe to read from any thread. Plain Java, like {@link Song}.
+ */
+public final class SongTable {
+
+    /** Reference of a missing title or artist. */
+    public static final int NONE = -1;
+
+    public static final SongTable EMPTY = new Builder().build();
+
+    private final int size;
+    private final long[] ids;
+    private final long[] albumIds;
+    private final long[] datesAdded;
+    private final int[] titleRefs;
+    private final int[] artistRefs;
+    private final String[] paths;
+    private final String[] titles;    // distinct
+    private final String[] artists;   // distinct
+    // Ids ascending and the row of each, for rowOf
+    private final long[] sortedIds;
+    private final int[] sortedRows;
+
+    private SongTable(int size, long[] ids, long[] albumIds, long[] datesAdded, int[] titleRefs,
+                      int[] artistRefs, String[] paths, String[] titles, String[] artists) {
+        this.size = size;
+        this.ids = ids;
+        this.albumIds = albumIds;
+        this.datesAdded = datesAdded;
+        this.titleRefs = titleRefs;
+        this.artistRefs = artistRefs;
+        this.paths = paths;
+        this.titles = titles;
+        this.artists = artists;
+
+        sortedIds = new long[size];
+        sortedRows = new int[size];
+        long[] packed = new long[size];
+        boolean fitsInt = true;
+        for (int row = 0; row < size && fitsInt; row++) {
+            fitsInt = ids[row] >= 0 && ids[row] <= Integer.MAX_VALUE;
+            packed[row] = (ids[row] << 32) | row;
+        }
+        if (fitsInt) {
+            // MediaStore ids: one primitive sort of packed (id, row)
+            Arrays.sort(packed);
+            for (int k = 0; k < size; k++) {
+                sortedIds[k] = packed[k] >>> 32;
+                sortedRows[k] = (int) packed[k];
+            }
+        } else {
+            Integer[] byId = new Integer[size];
+            for (int row = 0; row < size; row++) byId[row] = row;
+            Arrays.sort(byId, (a, b) -> Long.compare(ids[a], ids[b]));
+            for (int k = 0; k < size; k++) {
+                sortedIds[k] = ids[byId[k]];
+                sortedRows[k] = byId[k];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public String title(int row) {
+        int ref = titleRefs[row];
+        return ref != NONE ? titles[ref] : null;
+    }
+
+    public String artist(int row) {
+        int ref = artistRefs[row];
+        return ref != NONE ? artists[ref] : null;
+    }
+
+    public long albumId(int row) {
+        return albumIds[row];
+    }
+
+    public String path(int row) {
+        return paths[row];
+    }
+
+    public long dateAdded(int row) {
+        return datesAdded[row];
+    }
+
+    // ===== DICTIONARIES =====
+
+    /**
+     * @return index of the row's title in the distinct titles, or {@link #NONE}
+     */
+    public int titleRef(int row) {
+        return titleRefs[row];
+    }
+
+    public int titleRefCount() {
+        return titles.length;
+    }
+
+    public String titleOfRef(int ref) {
+        return titles[ref];
+    }
+
+    /**
+     * @return index of the row's artist in the distinct artists, or {@link #NONE}
+     */
+    public int artistRef(int row) {
+        return artistRefs[row];
+    }
+
+    public int artistRefCount() {
+        return artists.length;
+    }
+
+    public String artistOfRef(int ref) {
+        return artists[ref];
+    }
+
+    // ===== LOOKUP =====
+
+    /**
+     * @return the row with this MediaStore id, or -1
+     */
+    public int rowOf(long id) {
+        int k = Arrays.binarySearch(sortedIds, id);
+        return k >= 0 ? sortedRows[k] : -1;
+    }
+
+    /**
+     * Materializes one row.
+     */
+    public Song get(int row) {
+        return new Song(ids[row], title(row), artist(row), albumIds[row], paths[row], datesAdded[row]);
+    }
+
+    /**
+     * @return true if the row holds exactly these values
+     */
+    public boolean sameAs(int row, String title, String artist, long albumId, String path, long dateAdded) {
+        return albumIds[row] == albumId && datesAdded[row] == dateAdded && paths[row].equals(path)
+                && equal(title(row), title) && equal(artist(row), artist);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Collects rows; equal titles and artists share one string. {@link #build()}
+     * puts them in library order.
+     */
+    public static final class Builder {
+        private int size = 0;
+        private long[] ids = new long[64];
+        private long[] albumIds = new long[64];
+        private long[] datesAdded = new long[64];
+        private int[] titleRefs = new int[64];
+        private int[] artistRefs = new int[64];
+        private String[] paths = new String[64];
+        private final Map<String, Integer> titleIndex = new HashMap<>();
+        private final List<String> titles = new ArrayList<>();
+        private final Map<String, Integer> artistIndex = new HashMap<>();
+        private final List<String> artists = new ArrayList<>();
+
+        public int size() {
+            return size;
+        }
+
+        public Builder add(long id, String title, String artist, long albumId, String path, long dateAdded) {
+            if (size == ids.length) grow();
+            ids[size] = id;
+            titleRefs[size] = intern(titleIndex, titles, title);
+            artistRefs[size] = intern(artistIndex, artists, artist);
+            albumIds[size] = albumId;
+            paths[size] = path;
+            datesAdded[size] = dateAdded;
+            size++;
+            return this;
+        }
+
+        public Builder addRow(SongTable table, int row) {
+            return add(table.ids[row], table.title(row), table.artist(row), table.albumIds[row],
+                    table.paths[row], table.datesAdded[row]);
+        }
+
+        private static int intern(Map<String, Integer> index, List<String> values, String value) {
+            if (value == null) return NONE;
+            Integer ref = index.get(value);
+            if (ref == null) {
+                ref = values.size();
+                index.put(value, ref);
+                values.add(value);
+            }
+            return ref;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            albumIds = Arrays.copyOf(albumIds, capacity);
+            datesAdded = Arrays.copyOf(datesAdded, capacity);
+            titleRefs = Arrays.copyOf(titleRefs, capacity);
+            artistRefs = Arrays.copyOf(artistRefs, capacity);
+            paths = Arrays.copyOf(paths, capacity);
+        }
+
+        /**
+         * @return the rows ordered by title ignoring case, untitled last
+         */
+        public SongTable build() {
+            String[] titleTable = titles.toArray(new String[0]);
+            String[] artistTable = artists.toArray(new String[0]);
+
+            // Rank the distinct titles once, then sort rows by (rank, row)
+            Integer[] byTitle = new Integer[titleTable.length];
+            for (int ref = 0; ref < byTitle.length; ref++) byTitle[ref] = ref;
+            Arrays.sort(byTitle, (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(titleTable[a], titleTable[b]));
+            int[] rankOfRef = new int[titleTable.length];
+            int rank = 0;
+            for (int k = 0; k < byTitle.length; k++) {
+                if (k > 0 && String.CASE_INSENSITIVE_ORDER.compare(
+                        titleTable[byTitle[k]], titleTable[byTitle[k - 1]]) != 0) {
+                    rank++;
+                }
+                rankOfRef[byTitle[k]] = rank;
+            }
+
+            long[] packed = new long[size];
+            for (int row = 0; row < size; row++) {
+                int ref = titleRefs[row];
+                long key = ref != NONE ? rankOfRef[ref] : Integer.MAX_VALUE;
+                packed[row] = (key << 32) | row;
+            }
+            Arrays.sort(packed);
+
+            long[] sortedIdColumn = new long[size];
+            long[] albumColumn = new long[size];
+            long[] dateColumn = new long[size];
+            int[] titleColumn = new int[size];
+            int[] artistColumn = new int[size];
+            String[] pathColumn = new String[size];
+            for (int row = 0; row < size; row++) {
+                int from = (int) packed[row];
+                sortedIdColumn[row] = ids[from];
+                albumColumn[row] = albumIds[from];
+                dateColumn[row] = datesAdded[from];
+                titleColumn[row] = titleRefs[from];
+                artistColumn[row] = artistRefs[from];
+                pathColumn[row] = paths[from];
+            }
+            return new SongTable(size, sortedIdColumn, albumColumn, dateColumn, titleColumn,
+                    artistColumn, pathColumn, titleTable, artistTable);
+        }
+    }
+}
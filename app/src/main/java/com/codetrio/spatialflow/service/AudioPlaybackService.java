@@ -4,8 +4,8 @@ package com.codetrio.spatialflow.service;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.media.AudioManager;
@@ -17,27 +17,43 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 import androidx.media.session.MediaButtonReceiver;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
-import com.arthenica.ffmpegkit.ReturnCode;
-import com.codetrio.spatialflow.MainActivity;
 import com.codetrio.spatialflow.R;
-import com.codetrio.spatialflow.util.AudioFileManager;
+import com.codetrio.spatialflow.audio.BiquadEqualizer;
+import com.codetrio.spatialflow.audio.PreRenderer;
+import com.codetrio.spatialflow.audio.RenderCache;
+import com.codetrio.spatialflow.audio.RenderTask;
+import com.codetrio.spatialflow.audio.SegmentedPlayer;
+import com.codetrio.spatialflow.audio.SegmentedRender;
+import com.codetrio.spatialflow.audio.SourceSwap;
+import com.codetrio.spatialflow.audio.StreamingAudioEngine;
+import com.codetrio.spatialflow.model.EffectsState;
+import com.codetrio.spatialflow.model.PlaybackClock;
+import com.codetrio.spatialflow.ui.SettingsFragment;
+import com.codetrio.spatialflow.util.AlbumArtCache;
 import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
 import com.codetrio.spatialflow.viewmodel.PlayerSharedViewModel;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AudioPlaybackService extends Service {
 
@@ -48,33 +64,105 @@ public class AudioPlaybackService extends Service {
     private static final String ACTION_PLAY = "com.codetrio.spatialflow.ACTION_PLAY";
     private static final String ACTION_PAUSE = "com.codetrio.spatialflow.ACTION_PAUSE";
 
+    // Rotation baked into FFmpeg renders; the 8D speed slider drives playback speed
+    private static final float RENDER_ROTATION_SPEED = 1.0f;
+
     private final IBinder binder = new LocalBinder();
     private MediaPlayer mediaPlayer;
     private PlayerSharedViewModel viewModel;
     private Handler handler;
-    private Runnable progressRunnable;
+    // Speed set on mediaPlayer itself, back to 1x whenever it is reset
+    private float mediaPlayerSpeed = 1.0f;
+    // Has a song prepared, so a next player can be chained to it
+    private boolean mediaPlayerPrepared = false;
     private MediaSessionCompat mediaSession;
+    private PlaybackNotification notification;
 
+    // Platform effects, created, changed and released on the effects thread
+    private HandlerThread effectsThread;
+    private Handler effectsHandler;
     private BassBoost bassBoostEffect;
     private Equalizer equalizerEffect;
     private LoudnessEnhancer loudnessEnhancer;
+    private EffectsState platformEffects;
+    private boolean platformEqEnabled = false;
+
+    // Effect settings in force, read without locks by the effects thread and
+    // the streaming engine
+    private final AtomicReference<EffectsState> effectsState = new AtomicReference<>(EffectsState.DEFAULT);
+    private final AtomicBoolean effectsSyncPending = new AtomicBoolean();
+    private final Runnable syncEffectsRunnable = this::syncPlatformEffects;
+    private volatile boolean streamingActive = false;
+
+    // Slider drags fire far more often than effects need updating
+    private static final long EFFECTS_SYNC_MS = 50;
+    private static final int PLATFORM_EFFECT_FIELDS = EffectsState.CHANGED_BASS_ENABLED
+            | EffectsState.CHANGED_BASS_BOOST | EffectsState.CHANGED_EQ_ENABLED
+            | EffectsState.CHANGED_EQ_BANDS | EffectsState.CHANGED_LOUDNESS_ENABLED
+            | EffectsState.CHANGED_LOUDNESS_GAIN;
 
     private Uri currentSourceUri;
-    private String currentOriginalFilePath;
-    private String currentProcessedFilePath;
     private boolean isProcessing = false;
 
     private String currentSongName = "SpatialFlow";
     private Bitmap currentAlbumArt = null;
+    private Bitmap currentAlbumSource = null;
     private boolean is8DEnabled = false;
 
+    private static final String KEY_RECENT_SONGS = "recent_songs";
+    private static final int MAX_RECENT_SONGS = 10;
+
+    // Cancelled FFmpeg sessions normally end within milliseconds
+    private static final long RENDER_STOP_TIMEOUT_MS = 2000;
+
     // 8D processing state
     private boolean hasProcessed8D = false;
     private float last8DSpeed = -1f;
-    private String lastProcessedSourcePath = null;
-
-    // Track which file MediaPlayer currently uses
-    private String currentlyLoadedPath = null;
+    private Uri lastProcessedSourceUri = null;
+
+    // Real-time 8D: when non-null, playback runs through the AudioTrack engine
+    private StreamingAudioEngine streamingEngine;
+    private float rotationSpeed8D = FFmpegCommandBuilder.getDefaultRotationSpeed();
+
+    // Progressive 8D render: segments play while later ones are still encoding
+    private SegmentedRender currentRender;
+    private RenderTask currentTask;
+    private SegmentedPlayer segmentedPlayer;
+    private RenderCache renderCache;
+    private float renderPlaybackSpeed = 1f;
+
+    // Original <-> 8D segments handover while both are audible
+    private SourceSwap activeSwap;
+    private Runnable onOriginalSeekLanded;
+    private float originalFadeGain = 1f;
+
+    // Superseded render whose FFmpeg sessions are still shutting down. Requests
+    // arriving meanwhile are parked, a newer one replaces an older one.
+    private RenderTask stoppingTask;
+    private Runnable pendingEffectsRequest;
+    // Bumped by every applyEffects call, so a cache lookup still running
+    // for an older one is ignored
+    private int effectsRequest = 0;
+    private final Runnable stopTimeout = () -> {
+        Log.w(TAG, "Cancelled render did not stop in time, continuing");
+        stoppingTask = null;
+        runPendingEffectsRequest();
+    };
+
+    // Renders likely-next songs into the cache while nothing else renders
+    private PreRenderer preRenderer;
+
+    // Songs to play in order. The next one is prepared ahead, on a second
+    // MediaPlayer chained with setNextMediaPlayer or inside the streaming
+    // engine, so the transition has no gap.
+    private PlaybackQueue queue;
+    private MediaPlayer nextPlayer;
+    private Uri nextPlayerUri;
+    private boolean nextPlayerPrepared = false;
+    private boolean nextPlayerLinked = false;
+    // Opens the engine's next song; one at a time, so the latest request wins
+    private final ExecutorService nextTrackExecutor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(runnable, "NextTrack"));
 
     public class LocalBinder extends Binder {
         public AudioPlaybackService getService() {
@@ -89,11 +177,21 @@ public class AudioPlaybackService extends Service {
         mediaPlayer = new MediaPlayer();
         mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
         handler = new Handler(Looper.getMainLooper());
+        effectsThread = new HandlerThread("EffectsSync");
+        effectsThread.start();
+        effectsHandler = new Handler(effectsThread.getLooper());
+
+        renderCache = new RenderCache(new File(getCacheDir(), "8d_render_cache"),
+                this::getRenderCacheQuota);
+        new Thread(renderCache::sweep, "RenderCacheSweep").start();
+        preRenderer = new PreRenderer(this, renderCache, RENDER_ROTATION_SPEED);
+        queue = new PlaybackQueue(this);
 
         createNotificationChannel();
         setupMediaSession();
+        notification = new PlaybackNotification(this, CHANNEL_ID, NOTIFICATION_ID,
+                mediaSession.getSessionToken(), ACTION_PLAY, ACTION_PAUSE);
         setupMediaPlayerListeners();
-        setupProgressTracking();
     }
 
     private void createNotificationChannel() {
@@ -152,10 +250,25 @@ public class AudioPlaybackService extends Service {
     private void updatePlaybackState(int state) {
         long position = 0;
         try {
-            position = mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
+            position = getPlaybackPosition();
         } catch (IllegalStateException e) {
             Log.w(TAG, "Cannot get position in current state");
         }
+        updatePlaybackState(state, position);
+    }
+
+    /**
+     * Anchors the playback clock at {@code position} as of now. Called on
+     * transitions only (play, pause, seek, speed change, source swap); the
+     * MediaSession and the UI extrapolate from the anchor in between.
+     */
+    private void updatePlaybackState(int state, long position) {
+        if (state == PlaybackStateCompat.STATE_PLAYING
+                && segmentedPlayer != null && segmentedPlayer.isBuffering()) {
+            state = PlaybackStateCompat.STATE_BUFFERING;
+        }
+        float speed = getPlaybackRate();
+        long now = SystemClock.elapsedRealtime();
 
         PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
                 .setActions(
@@ -164,9 +277,32 @@ public class AudioPlaybackService extends Service {
                                 PlaybackStateCompat.ACTION_STOP |
                                 PlaybackStateCompat.ACTION_SEEK_TO
                 )
-                .setState(state, position, 1.0f);
+                .setState(state, position, speed, now);
 
         mediaSession.setPlaybackState(stateBuilder.build());
+        if (viewModel != null) {
+            viewModel.postPlaybackClock(new PlaybackClock(position, now, speed,
+                    state == PlaybackStateCompat.STATE_PLAYING));
+        }
+    }
+
+    /**
+     * Re-anchors the clock at the current position, e.g. when the UI comes
+     * back and wants to correct any drift.
+     */
+    public void refreshPlaybackState() {
+        updatePlaybackState(isPlaying()
+                ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
+    }
+
+    private float getPlaybackRate() {
+        if (streamingEngine != null) {
+            return streamingEngine.getPlaybackSpeed();
+        }
+        if (segmentedPlayer != null) {
+            return segmentedPlayer.getPlaybackSpeed();
+        }
+        return mediaPlayerSpeed;
     }
 
     private void updateMediaMetadata() {
@@ -189,102 +325,60 @@ public class AudioPlaybackService extends Service {
         mediaSession.setMetadata(metadataBuilder.build());
     }
 
-    private Notification createNotification(boolean isPlaying) {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        notificationIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        notificationIntent.putExtra(MainActivity.EXTRA_OPEN_PLAYER, true);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this, 0, notificationIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        Intent playPauseIntent = new Intent(this, AudioPlaybackService.class)
-                .setAction(isPlaying ? ACTION_PAUSE : ACTION_PLAY);
-        PendingIntent playPausePendingIntent = PendingIntent.getService(
-                this, 0, playPauseIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_music_note)
-                .setContentTitle(currentSongName)
-                .setContentText(is8DEnabled ? "🎧 8D Audio" : "Normal Playback")
-                .setSubText("SpatialFlow")
-                .setContentIntent(pendingIntent)
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setOnlyAlertOnce(true)
-                .setShowWhen(false)
-                .setOngoing(isPlaying)
-                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-                .setCategory(NotificationCompat.CATEGORY_TRANSPORT)
-                .setAutoCancel(false);
-
-        if (currentAlbumArt != null) {
-            builder.setLargeIcon(currentAlbumArt);
-        }
-
-        builder.addAction(
-                isPlaying ? R.drawable.ic_pause : R.drawable.ic_play,
-                isPlaying ? "Pause" : "Play",
-                playPausePendingIntent
-        );
-
-        androidx.media.app.NotificationCompat.MediaStyle mediaStyle =
-                new androidx.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mediaSession.getSessionToken())
-                        .setShowActionsInCompactView(0);
-
-        builder.setStyle(mediaStyle);
+    private PlaybackNotification.Content notificationContent(boolean isPlaying) {
+        return new PlaybackNotification.Content(currentSongName, currentAlbumArt, isPlaying, is8DEnabled);
+    }
 
-        return builder.build();
+    private Notification createNotification(boolean isPlaying) {
+        return notification.build(notificationContent(isPlaying));
     }
 
+    /**
+     * Cheap to call repeatedly, only posts when the shown content changes.
+     */
     private void updateNotification(boolean isPlaying) {
-        Notification notification = createNotification(isPlaying);
-        NotificationManager manager = getSystemService(NotificationManager.class);
-        if (manager != null) {
-            manager.notify(NOTIFICATION_ID, notification);
-        }
+        notification.update(notificationContent(isPlaying));
     }
 
+    /**
+     * @param albumArt Usually the {@link AlbumArtCache} instance, which is
+     *                 already square and small and is used as is
+     */
     public void setSongMetadata(String songName, Bitmap albumArt) {
-        this.currentSongName = songName != null ? songName : "SpatialFlow";
-
-        if (albumArt != null) {
-            int size = Math.min(albumArt.getWidth(), albumArt.getHeight());
-            Bitmap squared = Bitmap.createBitmap(albumArt,
-                    (albumArt.getWidth() - size) / 2,
-                    (albumArt.getHeight() - size) / 2,
-                    size, size);
-            this.currentAlbumArt = Bitmap.createScaledBitmap(squared, 512, 512, true);
-        } else {
-            this.currentAlbumArt = null;
-        }
+        String name = songName != null ? songName : "SpatialFlow";
+        if (name.equals(currentSongName) && albumArt == currentAlbumSource) return;
+
+        this.currentSongName = name;
+        this.currentAlbumSource = albumArt;
+        this.currentAlbumArt = albumArt != null
+                ? AlbumArtCache.toSquare(albumArt, AlbumArtCache.ART_SIZE_PX) : null;
 
         updateMediaMetadata();
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
+        if (isPlaying()) {
             updateNotification(true);
         }
     }
 
     private void setupMediaPlayerListeners() {
-        mediaPlayer.setOnCompletionListener(mp -> {
-            Log.d(TAG, "Playback completed");
-            if (viewModel != null) {
-                viewModel.setIsPlaying(false);
-                viewModel.setCurrentPosition(0);
-            }
-            stopProgressTracking();
-            updatePlaybackState(PlaybackStateCompat.STATE_STOPPED);
-            updateNotification(false);
+        mediaPlayer.setOnCompletionListener(this::onMediaPlayerCompleted);
+
+        // seekTo() is asynchronous, anchor the clock where it actually landed
+        mediaPlayer.setOnSeekCompleteListener(mp -> {
+            Runnable landed = onOriginalSeekLanded;
+            onOriginalSeekLanded = null;
+            if (landed != null) landed.run();
+            if (streamingEngine == null && segmentedPlayer == null) refreshPlaybackState();
         });
 
         mediaPlayer.setOnPreparedListener(mp -> {
             Log.d(TAG, "MediaPlayer prepared, duration: " + mp.getDuration());
+            mediaPlayerPrepared = true;
             if (viewModel != null) {
                 viewModel.setDuration(mp.getDuration());
             }
             updateMediaMetadata();
             initializeAudioEffects();
+            linkNextPlayer();
         });
 
         mediaPlayer.setOnErrorListener((mp, what, extra) -> {
@@ -297,49 +391,89 @@ public class AudioPlaybackService extends Service {
         });
     }
 
-    private void setupProgressTracking() {
-        progressRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                    if (viewModel != null) {
-                        try {
-                            viewModel.setCurrentPosition(mediaPlayer.getCurrentPosition());
-                        } catch (IllegalStateException e) {
-                            Log.w(TAG, "Cannot get position while playing");
-                        }
-                    }
-                    updatePlaybackState(PlaybackStateCompat.STATE_PLAYING);
-                    handler.postDelayed(this, 500);
-                }
-            }
-        };
+    /**
+     * If the next player was chained, the platform has already started it:
+     * it becomes the main player and the finished one is released.
+     */
+    private void onMediaPlayerCompleted(MediaPlayer finished) {
+        if (finished != mediaPlayer) return;
+        if (!nextPlayerLinked) {
+            onPlaybackCompleted();
+            return;
+        }
+
+        Uri uri = nextPlayerUri;
+        mediaPlayer = nextPlayer;
+        mediaPlayerPrepared = true;
+        nextPlayer = null;
+        nextPlayerUri = null;
+        nextPlayerPrepared = false;
+        nextPlayerLinked = false;
+        setupMediaPlayerListeners();
+        finished.release();
+
+        // The new player started at normal speed
+        float speed = mediaPlayerSpeed;
+        mediaPlayerSpeed = 1.0f;
+        if (speed != 1.0f) setPlaybackSpeed(speed);
+        onNextTrackStarted(uri, mediaPlayer.getDuration());
+    }
+
+    private void onPlaybackCompleted() {
+        Uri next = queue.peekNext();
+        if (next != null) {
+            // Not prepared ahead (e.g. 8D segments were playing), load it now
+            Log.d(TAG, "Playback completed, loading next queued song");
+            loadAudio(next, true);
+            return;
+        }
+
+        Log.d(TAG, "Playback completed");
+        if (viewModel != null) {
+            viewModel.setIsPlaying(false);
+        }
+        updatePlaybackState(PlaybackStateCompat.STATE_STOPPED, 0);
+        updateNotification(false);
     }
 
+    /**
+     * Recreates the platform effects on the player's current audio session.
+     * AudioEffect objects live on the effects thread only.
+     */
     private void initializeAudioEffects() {
-        try {
-            int audioSessionId = mediaPlayer.getAudioSessionId();
-            releaseAudioEffects();
+        final int audioSessionId = mediaPlayer.getAudioSessionId();
+        effectsHandler.post(() -> {
+            releaseAudioEffectsNow();
+            try {
+                bassBoostEffect = new BassBoost(0, audioSessionId);
+                bassBoostEffect.setEnabled(false);
 
-            bassBoostEffect = new BassBoost(0, audioSessionId);
-            bassBoostEffect.setEnabled(false);
+                equalizerEffect = new Equalizer(0, audioSessionId);
+                equalizerEffect.setEnabled(false);
 
-            equalizerEffect = new Equalizer(0, audioSessionId);
-            equalizerEffect.setEnabled(false);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    loudnessEnhancer = new LoudnessEnhancer(audioSessionId);
+                    loudnessEnhancer.setEnabled(false);
+                }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                loudnessEnhancer = new LoudnessEnhancer(audioSessionId);
-                loudnessEnhancer.setEnabled(false);
-            }
+                Log.d(TAG, "AudioEffects initialized for session: " + audioSessionId);
 
-            Log.d(TAG, "AudioEffects initialized for session: " + audioSessionId);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to initialize AudioEffects: " + e.getMessage(), e);
+            }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to initialize AudioEffects: " + e.getMessage(), e);
-        }
+            // New effects start from scratch, apply every field
+            platformEffects = null;
+            platformEqEnabled = false;
+            syncPlatformEffects();
+        });
     }
 
     private void releaseAudioEffects() {
+        effectsHandler.post(this::releaseAudioEffectsNow);
+    }
+
+    private void releaseAudioEffectsNow() {
         if (bassBoostEffect != null) {
             bassBoostEffect.release();
             bassBoostEffect = null;
@@ -354,106 +488,192 @@ public class AudioPlaybackService extends Service {
         }
     }
 
-    // ===== REAL-TIME EFFECT CONTROLS =====
+    // ===== EFFECTS STATE =====
+
+    public EffectsState getEffectsState() {
+        return effectsState.get();
+    }
+
+    /**
+     * Applies a new effects state, touching only the fields that differ from
+     * the current one. Player-bound fields are applied right away on the main
+     * thread; platform AudioEffects are synced in one pass on the effects
+     * thread, at most every {@link #EFFECTS_SYNC_MS}. The streaming engine
+     * reads the state itself once per block.
+     *
+     * @return the state in force: {@code state}, or the current one if
+     * {@code state} is older
+     */
+    public EffectsState applyEffectsState(EffectsState state) {
+        EffectsState previous = effectsState.get();
+        if (!state.isNewerThan(previous)) return previous;
+
+        int changed = state.diff(previous);
+        effectsState.set(state);
+        if (changed == 0) return state;
+
+        if ((changed & EffectsState.CHANGED_8D_ENABLED) != 0) {
+            set8DEnabled(state.is8DEnabled);
+        }
+        if ((changed & EffectsState.CHANGED_8D_SPEED) != 0) {
+            set8DRotationSpeed(state.speed8D);
+        }
+        if ((changed & EffectsState.CHANGED_BALANCE) != 0) {
+            applyBalance(state);
+        }
+        if ((changed & EffectsState.CHANGED_PLAYBACK_SPEED) != 0) {
+            setPlaybackSpeed(state.playbackSpeed);
+        }
+        if ((changed & PLATFORM_EFFECT_FIELDS) != 0) {
+            scheduleEffectsSync(EFFECTS_SYNC_MS);
+        }
+        Log.d(TAG, "Effects v" + state.version + " applied, changed 0x" + Integer.toHexString(changed));
+        return state;
+    }
 
     public void set8DEnabled(boolean enabled) {
         this.is8DEnabled = enabled;
-        updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+        if (streamingEngine != null) {
+            // Real-time engine picks this up on its next block
+            streamingEngine.getProcessor().setEnabled(enabled);
+        }
+        updateNotification(isPlaying());
+        updatePreRenderCandidates();
         Log.d(TAG, "8D enabled flag set to: " + enabled);
     }
 
-    public void setBassEnabled(boolean enabled) {
-        if (bassBoostEffect != null) {
-            bassBoostEffect.setEnabled(enabled);
-            Log.d(TAG, "BassBoost enabled: " + enabled);
+    public void set8DRotationSpeed(float speedHz) {
+        rotationSpeed8D = FFmpegCommandBuilder.clampRotationSpeed(speedHz);
+        if (streamingEngine != null) {
+            streamingEngine.getProcessor().setRotationSpeed(rotationSpeed8D);
         }
+        Log.d(TAG, "8D rotation speed: " + rotationSpeed8D + " Hz");
     }
 
-    public void setBassBoost(int boostDb) {
-        if (bassBoostEffect != null) {
-            try {
-                int strength = Math.max(0, Math.min(1000, (boostDb + 15) * 1000 / 30));
-                bassBoostEffect.setStrength((short) strength);
-                Log.d(TAG, "BassBoost: " + boostDb + "dB (strength: " + strength + ")");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set bass boost: " + e.getMessage());
-            }
-        }
+    private void setBassEnabled(boolean enabled) {
+        applyEffectsState(effectsState.get().withBassEnabled(enabled));
     }
 
-    public void setEqualizerEnabled(boolean enabled) {
-        if (equalizerEffect != null) {
-            equalizerEffect.setEnabled(enabled);
-            Log.d(TAG, "Equalizer enabled: " + enabled);
-        }
+    private void setBassBoost(int boostDb) {
+        applyEffectsState(effectsState.get().withBassBoost(boostDb));
     }
 
-    public void setEqBandGain(int bandIndex, int gainDb) {
-        if (equalizerEffect != null) {
-            try {
-                short numBands = equalizerEffect.getNumberOfBands();
-                if (bandIndex < numBands) {
-                    short gainMb = (short) (gainDb * 100);
-                    equalizerEffect.setBandLevel((short) bandIndex, gainMb);
-                    Log.d(TAG, "EQ band " + bandIndex + ": " + gainDb + " dB");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set EQ: " + e.getMessage());
+    private void applyBalance(EffectsState state) {
+        // The streaming engine ramps balance itself
+        try {
+            if (mediaPlayer != null) {
+                mediaPlayer.setVolume(state.getLeftVolume() * originalFadeGain,
+                        state.getRightVolume() * originalFadeGain);
+            }
+            if (segmentedPlayer != null) {
+                segmentedPlayer.setVolume(state.getLeftVolume(), state.getRightVolume());
             }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Cannot set balance: " + e.getMessage());
         }
     }
 
-    public void setLoudnessEnabled(boolean enabled) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && loudnessEnhancer != null) {
-            loudnessEnhancer.setEnabled(enabled);
-            Log.d(TAG, "Loudness enabled: " + enabled);
+    private void scheduleEffectsSync(long delayMs) {
+        if (effectsSyncPending.compareAndSet(false, true)) {
+            effectsHandler.postDelayed(syncEffectsRunnable, delayMs);
+        } else if (delayMs == 0) {
+            effectsHandler.removeCallbacks(syncEffectsRunnable);
+            effectsHandler.post(syncEffectsRunnable);
         }
     }
 
-    public void setLoudnessGain(int gainDb) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && loudnessEnhancer != null) {
-            try {
-                int gainMb = gainDb * 1000;
-                loudnessEnhancer.setTargetGain(gainMb);
-                Log.d(TAG, "Loudness: " + gainDb + " dB");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set loudness: " + e.getMessage());
-            }
-        }
-    }
+    /**
+     * Effects thread. Pushes the latest state to the platform effects in one
+     * pass, only for fields that changed since the last sync. The streaming
+     * engine equalizes in Java with the exact band centers; the platform
+     * Equalizer only serves MediaPlayer playback, so the two are never
+     * active at once.
+     */
+    private void syncPlatformEffects() {
+        effectsSyncPending.set(false);
+        EffectsState state = effectsState.get();
+        EffectsState last = platformEffects;
+        boolean platformEq = state.isEqualizerEnabled && !streamingActive;
+
+        int changed = state.diff(last) & PLATFORM_EFFECT_FIELDS;
+        if (platformEq != platformEqEnabled) changed |= EffectsState.CHANGED_EQ_ENABLED;
+        if (changed == 0) return;
 
-    public void setBalance(int balanceValue) {
-        if (mediaPlayer != null) {
-            try {
-                float leftVol = 1.0f;
-                float rightVol = 1.0f;
+        try {
+            if (bassBoostEffect != null) {
+                if ((changed & EffectsState.CHANGED_BASS_BOOST) != 0) {
+                    int strength = Math.max(0, Math.min(1000, (state.bassBoost + 15) * 1000 / 30));
+                    bassBoostEffect.setStrength((short) strength);
+                }
+                if ((changed & EffectsState.CHANGED_BASS_ENABLED) != 0) {
+                    bassBoostEffect.setEnabled(state.isBassEnabled);
+                }
+            }
 
-                if (balanceValue < 0) {
-                    rightVol = 1.0f + (balanceValue / 50.0f);
-                } else if (balanceValue > 0) {
-                    leftVol = 1.0f - (balanceValue / 50.0f);
+            if (equalizerEffect != null) {
+                if ((changed & EffectsState.CHANGED_EQ_BANDS) != 0) {
+                    for (int band = 0; band < EffectsState.BANDS; band++) {
+                        if (last == null || last.getEqBand(band) != state.getEqBand(band)) {
+                            applyPlatformEqBand(band, state.getEqBand(band));
+                        }
+                    }
+                }
+                if ((changed & EffectsState.CHANGED_EQ_ENABLED) != 0) {
+                    equalizerEffect.setEnabled(platformEq);
                 }
+            }
 
-                mediaPlayer.setVolume(leftVol, rightVol);
-                Log.d(TAG, "Balance: " + balanceValue);
-            } catch (IllegalStateException e) {
-                Log.e(TAG, "Cannot set balance: " + e.getMessage());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && loudnessEnhancer != null) {
+                if ((changed & EffectsState.CHANGED_LOUDNESS_GAIN) != 0) {
+                    loudnessEnhancer.setTargetGain(state.loudnessGain * 1000);
+                }
+                if ((changed & EffectsState.CHANGED_LOUDNESS_ENABLED) != 0) {
+                    loudnessEnhancer.setEnabled(state.isLoudnessEnabled);
+                }
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply effects: " + e.getMessage());
         }
+
+        platformEffects = state;
+        platformEqEnabled = platformEq;
+        Log.d(TAG, "Platform effects synced to v" + state.version
+                + (platformEq ? " (platform EQ)" : ""));
+    }
+
+    /**
+     * Sets the device band containing our band's center. Band count and
+     * centers of the platform effect vary by device, so two of ours may
+     * share one band there.
+     */
+    private void applyPlatformEqBand(int bandIndex, int gainDb) {
+        int centerMilliHz = (int) (BiquadEqualizer.FIVE_BAND_HZ[bandIndex] * 1000);
+        short band = equalizerEffect.getBand(centerMilliHz);
+        if (band < 0) return;
+        short[] range = equalizerEffect.getBandLevelRange();
+        int gainMb = Math.max(range[0], Math.min(range[1], gainDb * 100));
+        equalizerEffect.setBandLevel(band, (short) gainMb);
     }
 
     public void setPlaybackSpeed(float speed) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mediaPlayer != null) {
+        if (streamingEngine != null) {
+            // setPlaybackParams would resume the parked MediaPlayer
+            streamingEngine.setPlaybackSpeed(speed);
+        } else if (segmentedPlayer != null) {
+            segmentedPlayer.setPlaybackSpeed(speed);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mediaPlayer != null) {
             try {
                 android.media.PlaybackParams params = mediaPlayer.getPlaybackParams();
                 params.setSpeed(speed);
                 params.setPitch(speed);
                 mediaPlayer.setPlaybackParams(params);
+                mediaPlayerSpeed = speed;
                 Log.d(TAG, "Speed: " + speed + "x (pitch matched)");
             } catch (Exception e) {
                 Log.e(TAG, "Failed to set playback speed: " + e.getMessage());
             }
         }
+        refreshPlaybackState();
     }
 
     // ===== AUDIO LOADING =====
@@ -464,6 +684,10 @@ public class AudioPlaybackService extends Service {
     }
 
     public void loadAudio(Uri uri) {
+        loadAudio(uri, false);
+    }
+
+    private void loadAudio(Uri uri, boolean autoPlay) {
         if (uri == null) {
             Log.e(TAG, "URI is null");
             return;
@@ -471,50 +695,62 @@ public class AudioPlaybackService extends Service {
 
         Log.d(TAG, "Loading audio from URI: " + uri);
         currentSourceUri = uri;
+        queue.select(uri);
+        addRecentSong(uri);
+        updatePreRenderCandidates();
+        releaseNextPlayer();
+        if (autoPlay && viewModel != null) {
+            viewModel.postCurrentSong(uri);
+        }
 
         hasProcessed8D = false;
         last8DSpeed = -1f;
-        lastProcessedSourcePath = null;
-        currentProcessedFilePath = null;
+        lastProcessedSourceUri = null;
 
         // Stop and cleanup
+        finishSwap();
+        releaseStreamingEngine();
+        discardRender();
+        if (isProcessing) {
+            finishProcessing(false);
+        }
         if (mediaPlayer.isPlaying()) {
             mediaPlayer.stop();
         }
-        stopProgressTracking();
 
         try {
-            currentOriginalFilePath = AudioFileManager.getRealPathFromURI(this, uri);
-            if (currentOriginalFilePath == null) {
-                Log.e(TAG, "Failed to get file path from URI");
-                return;
-            }
-
-            Log.d(TAG, "File path: " + currentOriginalFilePath);
+            // Played straight from the URI (file descriptor for content://)
+            resetMediaPlayer();
+            mediaPlayer.setDataSource(this, uri);
 
-            mediaPlayer.reset();
-            mediaPlayer.setDataSource(currentOriginalFilePath);
-            currentlyLoadedPath = currentOriginalFilePath;
-
-            // 🔥 Custom listener for loading - does NOT auto-play
+            // 🔥 Custom listener for loading - plays only when advancing the queue
             mediaPlayer.setOnPreparedListener(mp -> {
                 Log.d(TAG, "Audio loaded and ready, duration: " + mp.getDuration());
+                mediaPlayerPrepared = true;
 
                 if (viewModel != null) {
                     viewModel.setDuration(mp.getDuration());
-                    viewModel.setCurrentPosition(0);
                     viewModel.postIsPlaying(false); // ✅ Use postValue for thread safety
                 }
 
                 updateMediaMetadata();
                 initializeAudioEffects();
-                updatePlaybackState(PlaybackStateCompat.STATE_PAUSED);
+                updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, 0);
                 updateNotification(false);
 
                 // Restore default listener
                 setupMediaPlayerListeners();
 
-                Log.d(TAG, "Ready to play - awaiting user action");
+                if (isRealtime8DPreferred() && (is8DEnabled || getCrossfadeMs() > 0)) {
+                    // Crossfades are mixed by the engine, 8D or not
+                    startStreamingEngine(0, autoPlay);
+                } else {
+                    if (is8DEnabled) restoreCachedRender(uri);
+                    if (autoPlay) play();
+                    prepareNextTrack();
+                }
+
+                Log.d(TAG, autoPlay ? "Playing next queued song" : "Ready to play - awaiting user action");
             });
 
             mediaPlayer.prepareAsync();
@@ -528,54 +764,83 @@ public class AudioPlaybackService extends Service {
 
     public void applyEffects(boolean enable8D, boolean enableBass, float speed8D, int bassBoost) {
         Log.d(TAG, "applyEffects called: 8D=" + enable8D + ", speed=" + speed8D);
+        effectsRequest++;
 
         if (currentSourceUri == null) {
             Log.e(TAG, "No audio loaded");
             return;
         }
 
-        if (isProcessing) {
-            Log.w(TAG, "Already processing, ignoring duplicate request");
+        if (isRealtime8DPreferred()) {
+            applyEffectsRealtime(enable8D, enableBass, speed8D, bassBoost);
             return;
         }
 
-        String currentSourcePath = AudioFileManager.getRealPathFromURI(this, currentSourceUri);
+        if (stoppingTask != null || preRenderer.isStopping()) {
+            parkEffectsRequest(enable8D, enableBass, speed8D, bassBoost);
+            if (preRenderer.isStopping()) {
+                // It may be stopping on its own, and would then start the
+                // next pre-render instead of running the parked request
+                preRenderer.yield(this::onPreRenderStopped);
+            }
+            return;
+        }
+
+        final Uri sourceUri = currentSourceUri;
 
         if (!enable8D) {
             Log.d(TAG, "8D disabled, loading original");
             is8DEnabled = false;
             hasProcessed8D = false;
-            lastProcessedSourcePath = null;
-            currentProcessedFilePath = null;
+            lastProcessedSourceUri = null;
+            updatePreRenderCandidates();
 
             loadOriginalAudio();
+            discardRender();
+            if (isProcessing) {
+                finishProcessing(false);
+            }
             setBassEnabled(enableBass);
             setBassBoost(bassBoost);
             setPlaybackSpeed(1.0f);
-            updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+            updateNotification(isPlaying());
             return;
         }
 
         is8DEnabled = true;
         setBassEnabled(enableBass);
         setBassBoost(bassBoost);
+        updatePreRenderCandidates();
+
+        // speed8D is the rotation rate, baked into the render at
+        // RENDER_ROTATION_SPEED; renders play at the user's playback speed
+        final float playbackSpeed = effectsState.get().playbackSpeed;
+        boolean sameSource = sourceUri.equals(lastProcessedSourceUri);
+        boolean sameSpeed = Math.abs(playbackSpeed - last8DSpeed) < 0.01f;
+
+        if (currentTask != null && sourceUri.equals(currentRender.getSource())) {
+            // The running render already produces this output, the speed is
+            // only applied at playback
+            Log.d(TAG, "8D render for this song already running, keeping it");
+            renderPlaybackSpeed = playbackSpeed;
+            if (segmentedPlayer != null) {
+                setPlaybackSpeed(playbackSpeed);
+            }
+            return;
+        }
 
-        boolean sameSource = currentSourcePath != null &&
-                currentSourcePath.equals(lastProcessedSourcePath);
-        boolean sameSpeed = Math.abs(speed8D - last8DSpeed) < 0.01f;
-
-        if (hasProcessed8D && sameSource && currentProcessedFilePath != null && sameSpeed) {
+        if (hasProcessed8D && sameSource && currentRender != null && sameSpeed) {
             Log.d(TAG, "8D already processed with same parameters, skipping reprocessing");
             if (!isCurrentlyPlayingProcessedFile()) {
-                loadProcessedAudio(speed8D);
+                loadProcessedAudio(playbackSpeed);
             } else {
-                setPlaybackSpeed(speed8D);
+                setPlaybackSpeed(playbackSpeed);
             }
-            updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+            updateNotification(isPlaying());
             return;
         }
 
-        Log.d(TAG, "Starting NEW 8D processing with FFmpeg");
+        Log.d(TAG, "Starting NEW progressive 8D render with FFmpeg");
         isProcessing = true;
 
         if (viewModel != null) {
@@ -585,175 +850,813 @@ public class AudioPlaybackService extends Service {
             });
         }
 
-        final boolean wasPlaying = mediaPlayer.isPlaying();
-        final int savedPos = wasPlaying ? mediaPlayer.getCurrentPosition() : 0;
+        // A previous render may be playing, keep the playhead on the original
+        returnToOriginal();
+        discardRender();
+        if (stoppingTask != null) {
+            // Starts once the superseded sessions are gone
+            parkEffectsRequest(enable8D, enableBass, speed8D, bassBoost);
+            return;
+        }
+
+        // Hashing the source and reading the cache entry are file I/O, keep
+        // them off the main thread
+        final int request = effectsRequest;
+        final String params = FFmpegCommandBuilder.describe8D(RENDER_ROTATION_SPEED, SegmentedRender.PROFILE);
+        new Thread(() -> {
+            String cacheKey = RenderCache.keyFor(this, sourceUri, params);
+            SegmentedRender cached = cacheKey != null
+                    ? renderCache.load(cacheKey, sourceUri, playbackSpeed) : null;
 
-        if (currentSourcePath == null) {
-            Log.e(TAG, "Input path is null");
+            handler.post(() -> {
+                // A newer request or song has taken over and handles the state
+                if (request != effectsRequest || !sourceUri.equals(currentSourceUri)) return;
+                startRender(sourceUri, cacheKey, cached, playbackSpeed,
+                        enable8D, enableBass, speed8D, bassBoost);
+            });
+        }, "RenderCacheLookup").start();
+    }
+
+    /**
+     * Second half of {@link #applyEffects}, with the cache lookup done:
+     * plays the cached render, or starts FFmpeg on the song.
+     */
+    private void startRender(Uri sourceUri, String cacheKey, SegmentedRender cached, float playbackSpeed,
+                             boolean enable8D, boolean enableBass, float speed8D, int bassBoost) {
+        if (cacheKey == null) {
             finishProcessing(false);
             return;
         }
 
-        File outputFile = new File(getCacheDir(),
-                "8d_audio_" + System.currentTimeMillis() + ".m4a");
-        String outputPath = outputFile.getAbsolutePath();
+        if (cached != null) {
+            Log.d(TAG, "8D render found in cache, skipping FFmpeg");
+            currentRender = cached;
+            hasProcessed8D = true;
+            last8DSpeed = playbackSpeed;
+            lastProcessedSourceUri = sourceUri;
+            startSegmentedPlayer(cached, getPlaybackPosition(), isPlaying(), playbackSpeed);
+            finishProcessing(true);
+            return;
+        }
 
-        String command = FFmpegCommandBuilder.build8D(currentSourcePath, outputPath, 1.0f);
-        Log.d(TAG, "FFmpeg command: " + command);
+        if (preRenderer.yield(this::onPreRenderStopped)) {
+            // Starts once the pre-render session has stopped
+            parkEffectsRequest(enable8D, enableBass, speed8D, bassBoost);
+            return;
+        }
 
         final int songDuration = mediaPlayer.getDuration();
-        final float userSpeed = speed8D;
-
-        FFmpegKit.executeAsync(
-                command,
-                session -> {
-                    ReturnCode returnCode = session.getReturnCode();
-                    Log.d(TAG, "FFmpeg completed with code: " + returnCode);
-
-                    if (ReturnCode.isSuccess(returnCode)) {
-                        currentProcessedFilePath = outputPath;
-                        hasProcessed8D = true;
-                        last8DSpeed = userSpeed;
-                        lastProcessedSourcePath = currentSourcePath;
-
-                        handler.post(() -> {
-                            try {
-                                boolean stillPlaying = mediaPlayer.isPlaying();
-                                int currentPos = stillPlaying ? mediaPlayer.getCurrentPosition() : savedPos;
-
-                                if (stillPlaying) {
-                                    mediaPlayer.pause();
-                                }
-
-                                mediaPlayer.reset();
-                                mediaPlayer.setDataSource(outputPath);
-                                currentlyLoadedPath = outputPath;
-
-                                mediaPlayer.setOnPreparedListener(mp -> {
-                                    Log.d(TAG, "8D audio prepared, duration: " + mp.getDuration());
-
-                                    initializeAudioEffects();
-                                    setBassEnabled(enableBass);
-                                    setBassBoost(bassBoost);
-                                    setPlaybackSpeed(userSpeed);
-
-                                    finishProcessing(true);
-
-                                    // 🔥 ONLY resume if was playing
-                                    if (wasPlaying || stillPlaying) {
-                                        mp.seekTo(currentPos);
-                                        play();
-                                    }
-
-                                    setupMediaPlayerListeners();
-                                });
-
-                                mediaPlayer.prepareAsync();
-
-                            } catch (IOException e) {
-                                Log.e(TAG, "Error loading 8D audio: " + e.getMessage(), e);
-                                hasProcessed8D = false;
-                                finishProcessing(false);
-                            }
-                        });
-                    } else {
-                        Log.e(TAG, "FFmpeg FAILED: " + returnCode);
-                        hasProcessed8D = false;
-                        handler.post(() -> finishProcessing(false));
+        final int startPos = getPlaybackPosition();
+
+        SegmentedRender render = renderCache.begin(cacheKey, sourceUri, playbackSpeed);
+        currentRender = render;
+        renderPlaybackSpeed = playbackSpeed;
+
+        // The playhead shard renders first so 8D starts within seconds; with
+        // sharding on, the rest of the track renders on the other cores
+        int sessions = isShardedRenderPreferred() ? RenderTask.defaultSessions() : 1;
+        List<RenderTask.Shard> shards = RenderTask.plan(songDuration, startPos,
+                RENDER_ROTATION_SPEED, sessions);
+
+        currentTask = new RenderTask(this, render, shards, sessions, songDuration,
+                RENDER_ROTATION_SPEED, new RenderTask.Listener() {
+                    @Override
+                    public void onSegmentsReady(List<SegmentedRender.Segment> added) {
+                        AudioPlaybackService.this.onSegmentsReady(render, added);
                     }
-                },
-                log -> Log.d(TAG, "FFmpeg: " + log.getMessage()),
-                statistics -> {
-                    if (statistics != null) {
-                        double timeInMillis = statistics.getTime();
-                        if (timeInMillis > 0 && songDuration > 0) {
-                            double progress = Math.min((timeInMillis * 100) / songDuration, 99);
-                            if (viewModel != null) {
-                                handler.post(() ->
-                                        viewModel.setProcessingProgress((int) progress));
-                            }
+
+                    @Override
+                    public void onProgress(int percent) {
+                        if (viewModel != null && render == currentRender) {
+                            viewModel.setProcessingProgress(percent);
                         }
                     }
-                }
-        );
+
+                    @Override
+                    public void onComplete() {
+                        onRenderComplete(render);
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        onRenderFailed(render);
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        onRenderStopped(render);
+                    }
+                });
+        currentTask.start();
     }
 
-    private boolean isCurrentlyPlayingProcessedFile() {
-        if (mediaPlayer == null || currentProcessedFilePath == null) {
-            return false;
+    private void parkEffectsRequest(boolean enable8D, boolean enableBass, float speed8D, int bassBoost) {
+        Log.d(TAG, "Previous render still stopping, request queued");
+        pendingEffectsRequest = () -> applyEffects(enable8D, enableBass, speed8D, bassBoost);
+    }
+
+    private void runPendingEffectsRequest() {
+        Runnable request = pendingEffectsRequest;
+        pendingEffectsRequest = null;
+        if (request != null) {
+            request.run();
         }
-        return currentlyLoadedPath != null &&
-                currentlyLoadedPath.equals(currentProcessedFilePath);
     }
 
-    private void loadProcessedAudio(float speed) {
-        if (currentProcessedFilePath == null || !new File(currentProcessedFilePath).exists()) {
-            Log.e(TAG, "Processed file not found");
-            return;
+    /**
+     * The pre-render session we yielded to has ended: runs the parked
+     * request, and lets pre-rendering go on if it started no render.
+     */
+    private void onPreRenderStopped() {
+        runPendingEffectsRequest();
+        if (!isProcessing) {
+            preRenderer.resume();
         }
+    }
 
-        boolean wasPlaying = mediaPlayer.isPlaying();
-        int position = mediaPlayer.getCurrentPosition();
+    // ===== SPECULATIVE PRE-RENDER =====
 
-        if (wasPlaying) {
-            mediaPlayer.pause();
+    /**
+     * Songs to play after the current one, e.g. the ones after the last pick
+     * in the song list. The first few are also pre-rendered in 8D.
+     */
+    public void setUpcomingSongs(List<Uri> songs) {
+        queue.setUpNext(songs);
+        updatePreRenderCandidates();
+        prepareNextTrack();
+    }
+
+    private boolean isPreRenderPreferred() {
+        return getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(SettingsFragment.KEY_PRERENDER, true);
+    }
+
+    /**
+     * @return the render cache quota from the settings, in bytes
+     */
+    private long getRenderCacheQuota() {
+        int gb = getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getInt(SettingsFragment.KEY_RENDER_CACHE_GB, 0);
+        return gb > 0 ? gb * 1024L * 1024 * 1024 : RenderCache.AUTO_MAX_BYTES;
+    }
+
+    private void updatePreRenderCandidates() {
+        List<Uri> candidates = new ArrayList<>();
+        if (is8DEnabled && !isRealtime8DPreferred() && isPreRenderPreferred()) {
+            // Upcoming songs first, then the recently played ones
+            candidates.addAll(queue.getUpNext());
+            candidates.addAll(getRecentSongs());
+            candidates.removeAll(Collections.singletonList(currentSourceUri));
         }
+        preRenderer.setCandidates(candidates);
+    }
 
+    private List<Uri> getRecentSongs() {
+        String stored = getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_RECENT_SONGS, "");
+        List<Uri> songs = new ArrayList<>();
+        for (String line : stored.split("\n")) {
+            if (!line.isEmpty()) songs.add(Uri.parse(line));
+        }
+        return songs;
+    }
+
+    private void addRecentSong(Uri uri) {
+        List<Uri> songs = getRecentSongs();
+        songs.remove(uri);
+        songs.add(0, uri);
+
+        StringBuilder stored = new StringBuilder();
+        for (int i = 0; i < songs.size() && i < MAX_RECENT_SONGS; i++) {
+            if (i > 0) stored.append('\n');
+            stored.append(songs.get(i));
+        }
+        getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putString(KEY_RECENT_SONGS, stored.toString()).apply();
+    }
+
+    /**
+     * Plays a freshly loaded song in 8D right away if it was pre-rendered or
+     * rendered in an earlier session.
+     */
+    private void restoreCachedRender(Uri uri) {
+        String params = FFmpegCommandBuilder.describe8D(RENDER_ROTATION_SPEED, SegmentedRender.PROFILE);
+        new Thread(() -> {
+            String cacheKey = RenderCache.keyFor(this, uri, params);
+            if (cacheKey == null || !renderCache.isCached(cacheKey)) return;
+
+            handler.post(() -> {
+                if (!uri.equals(currentSourceUri) || !is8DEnabled || currentRender != null) return;
+
+                // Same speed source as applyEffects
+                float speed = effectsState.get().playbackSpeed;
+                SegmentedRender cached = renderCache.load(cacheKey, uri, speed);
+                if (cached == null) return;
+
+                Log.d(TAG, "Song was pre-rendered, switching to 8D");
+                currentRender = cached;
+                hasProcessed8D = true;
+                last8DSpeed = speed;
+                lastProcessedSourceUri = uri;
+                startSegmentedPlayer(cached, getPlaybackPosition(), isPlaying(), speed);
+                updateNotification(isPlaying());
+            });
+        }, "RenderCacheLookup").start();
+    }
+
+    // ===== GAPLESS QUEUE =====
+
+    /**
+     * Gets the next queued song ready to take over without a gap. The
+     * streaming engine opens it next to the current decoder; otherwise it is
+     * prepared on a second MediaPlayer on the same audio session, so the
+     * effects attached to the session carry over. 8D segments play from
+     * renders and load the next song when they end.
+     */
+    private void prepareNextTrack() {
+        final Uri next = queue.peekNext();
+        if (streamingEngine != null) {
+            releaseNextPlayer();
+            final StreamingAudioEngine engine = streamingEngine;
+            nextTrackExecutor.execute(() -> engine.prepareNext(this, next));
+            return;
+        }
+        if (next == null || segmentedPlayer != null) {
+            releaseNextPlayer();
+            return;
+        }
+        if (next.equals(nextPlayerUri)) {
+            linkNextPlayer();
+            return;
+        }
+
+        releaseNextPlayer();
+        MediaPlayer player = new MediaPlayer();
+        nextPlayer = player;
+        nextPlayerUri = next;
         try {
-            mediaPlayer.reset();
-            mediaPlayer.setDataSource(currentProcessedFilePath);
-            currentlyLoadedPath = currentProcessedFilePath;
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            player.setAudioSessionId(mediaPlayer.getAudioSessionId());
+            player.setDataSource(this, next);
+            player.setOnPreparedListener(mp -> {
+                if (mp != nextPlayer) return;
+                nextPlayerPrepared = true;
+                linkNextPlayer();
+            });
+            player.setOnErrorListener((mp, what, extra) -> {
+                Log.w(TAG, "Next player error: what=" + what + ", extra=" + extra);
+                if (mp == nextPlayer) releaseNextPlayer();
+                return true;
+            });
+            player.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Cannot prepare next song: " + e.getMessage(), e);
+            releaseNextPlayer();
+        }
+    }
 
-            mediaPlayer.setOnPreparedListener(mp -> {
-                initializeAudioEffects();
-                setPlaybackSpeed(speed);
+    /**
+     * Chains the prepared next player once the main one has a song.
+     */
+    private void linkNextPlayer() {
+        if (nextPlayer == null || !nextPlayerPrepared || !mediaPlayerPrepared || nextPlayerLinked
+                || streamingEngine != null || segmentedPlayer != null) {
+            return;
+        }
+        try {
+            mediaPlayer.setNextMediaPlayer(nextPlayer);
+            nextPlayerLinked = true;
+            Log.d(TAG, "Next song prepared and chained: " + nextPlayerUri);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Cannot chain next player: " + e.getMessage());
+        }
+    }
 
-                // 🔥 ONLY resume if was playing
-                if (wasPlaying) {
-                    mp.seekTo(position);
-                    play();
-                }
+    private void releaseNextPlayer() {
+        if (nextPlayer != null) {
+            if (nextPlayerLinked && mediaPlayer != null) {
+                try {
+                    mediaPlayer.setNextMediaPlayer(null);
+                } catch (IllegalStateException ignored) { }
+            }
+            nextPlayer.release();
+            nextPlayer = null;
+        }
+        nextPlayerUri = null;
+        nextPlayerPrepared = false;
+        nextPlayerLinked = false;
+    }
+
+    /**
+     * Back to idle; also drops the chained next player, which the
+     * platform forgets on reset.
+     */
+    private void resetMediaPlayer() {
+        mediaPlayer.reset();
+        mediaPlayerSpeed = 1.0f;
+        mediaPlayerPrepared = false;
+        nextPlayerLinked = false;
+    }
+
+    /**
+     * The next queued song took over without a reload: moves the queue to
+     * it, tells the UI and gets the song after it ready.
+     */
+    private void onNextTrackStarted(Uri uri, int durationMs) {
+        Log.d(TAG, "Gapless handover to " + uri);
+        currentSourceUri = uri;
+        queue.select(uri);
+        addRecentSong(uri);
+        hasProcessed8D = false;
+        last8DSpeed = -1f;
+        lastProcessedSourceUri = null;
+
+        if (viewModel != null) {
+            viewModel.postCurrentSong(uri);
+            viewModel.setDuration(durationMs);
+        }
+        updateMediaMetadata();
+        updatePlaybackState(PlaybackStateCompat.STATE_PLAYING, 0);
+        updatePreRenderCandidates();
+        prepareNextTrack();
+    }
+
+    /**
+     * Moves the MediaPlayer parked under the streaming engine to the song
+     * the engine now plays, for its duration and for when the engine is
+     * left. Its audio session, and so the effects, stay the same.
+     */
+    private void reloadParkedPlayer(Uri uri) {
+        try {
+            resetMediaPlayer();
+            mediaPlayer.setDataSource(this, uri);
+            mediaPlayer.setOnPreparedListener(mp -> {
+                mediaPlayerPrepared = true;
+                updateMediaMetadata();
                 setupMediaPlayerListeners();
             });
             mediaPlayer.prepareAsync();
-
-            Log.d(TAG, "Processed audio loading...");
         } catch (IOException | IllegalStateException e) {
-            Log.e(TAG, "Error loading processed audio: " + e.getMessage(), e);
+            Log.e(TAG, "Cannot move parked player: " + e.getMessage(), e);
         }
     }
 
-    private void loadOriginalAudio() {
-        if (currentSourceUri == null) return;
+    // ===== PROGRESSIVE 8D RENDER =====
+
+    private boolean isShardedRenderPreferred() {
+        return getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(SettingsFragment.KEY_SHARDED_RENDER, true);
+    }
+
+    private void onSegmentsReady(SegmentedRender render, List<SegmentedRender.Segment> added) {
+        if (render != currentRender) return;
+
+        if (segmentedPlayer != null) {
+            for (SegmentedRender.Segment segment : added) {
+                segmentedPlayer.addSegment(segment);
+            }
+            return;
+        }
+
+        // Keep the original playing until the encoder has overtaken the playhead
+        int position = getPlaybackPosition();
+        for (SegmentedRender.Segment segment : render.getSegments()) {
+            if (segment.startMs <= position && position < segment.endMs) {
+                startSegmentedPlayer(render, position, isPlaying(), renderPlaybackSpeed);
+                return;
+            }
+        }
+    }
+
+    private void onRenderComplete(SegmentedRender render) {
+        render.markComplete();
+        new Thread(() -> renderCache.commit(render), "RenderCacheCommit").start();
+
+        if (render != currentRender) {
+            // Superseded after its last session had already finished; nothing
+            // to hand over, but the output is complete and stays cached
+            return;
+        }
+
+        currentTask = null;
+        hasProcessed8D = true;
+        last8DSpeed = renderPlaybackSpeed;
+        lastProcessedSourceUri = render.getSource();
+
+        if (segmentedPlayer == null) {
+            startSegmentedPlayer(render, getPlaybackPosition(), isPlaying(), renderPlaybackSpeed);
+        }
+        if (segmentedPlayer != null) {
+            segmentedPlayer.setRenderComplete();
+        }
+        finishProcessing(true);
+    }
+
+    private void onRenderFailed(SegmentedRender render) {
+        if (render != currentRender) return;
+
+        hasProcessed8D = false;
+        returnToOriginal();
+        // Also stops the shards still running
+        discardRender();
+        finishProcessing(false);
+    }
+
+    /**
+     * A cancelled render's sessions have all ended, its partial output can
+     * go. Runs the request that was waiting for it, if any.
+     */
+    private void onRenderStopped(SegmentedRender render) {
+        renderCache.abandon(render);
+        if (stoppingTask != null && stoppingTask.getRender() == render) {
+            stoppingTask = null;
+            handler.removeCallbacks(stopTimeout);
+            runPendingEffectsRequest();
+        }
+    }
+
+    /**
+     * Moves playback from the segment chain back to the original, which is
+     * still prepared underneath, at the same position. While playing, the
+     * original fades in over the segments instead of restarting after them.
+     */
+    private void returnToOriginal() {
+        if (segmentedPlayer == null) return;
+
+        finishSwap();
+        SegmentedPlayer outgoing = segmentedPlayer;
+        segmentedPlayer = null;
+        boolean wasPlaying = outgoing.isPlaying();
+
+        if (wasPlaying && mediaPlayerPrepared) {
+            activeSwap = new SourceSwap(segmentedSide(outgoing), originalSide(),
+                    -FFmpegCommandBuilder.HAAS_DELAY_MS / 2, () -> {
+                        activeSwap = null;
+                        outgoing.release();
+                        Log.d(TAG, "Segmented player released after swap");
+                    });
+            activeSwap.start();
+        } else {
+            int position = (int) outgoing.getPositionMs();
+            outgoing.release();
+            try {
+                mediaPlayer.seekTo(position);
+                if (wasPlaying) {
+                    mediaPlayer.start();
+                }
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Cannot resume original: " + e.getMessage(), e);
+            }
+        }
+        refreshPlaybackState();
+        prepareNextTrack();
+    }
+
+    /**
+     * Hands playback from MediaPlayer to the segment chain. Like the streaming
+     * engine, the MediaPlayer stays prepared (paused) on the original so its
+     * audio session keeps the effects alive.
+     */
+    private void startSegmentedPlayer(SegmentedRender render, int positionMs,
+                                      boolean autoPlay, float speed) {
+        SegmentedPlayer player = new SegmentedPlayer(
+                mediaPlayer.getAudioSessionId(),
+                new SegmentedPlayer.Listener() {
+                    @Override
+                    public void onCompletion() {
+                        onPlaybackCompleted();
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        Log.e(TAG, "Segmented playback error: " + message);
+                        if (viewModel != null) {
+                            viewModel.postIsPlaying(false);
+                        }
+                        updatePlaybackState(PlaybackStateCompat.STATE_ERROR);
+                    }
 
-        boolean wasPlaying = mediaPlayer.isPlaying();
-        int position = mediaPlayer.getCurrentPosition();
+                    @Override
+                    public void onBufferingChanged(boolean buffering) {
+                        refreshPlaybackState();
+                    }
+                });
+
+        for (SegmentedRender.Segment segment : render.getSegments()) {
+            player.addSegment(segment);
+        }
+        if (render.isComplete()) {
+            player.setRenderComplete();
+        }
 
-        if (wasPlaying) {
+        finishSwap();
+        // A playing original keeps playing until the segments fade in over it
+        boolean swap = autoPlay && mediaPlayer.isPlaying();
+        if (mediaPlayer.isPlaying() && !swap) {
             mediaPlayer.pause();
         }
 
+        segmentedPlayer = player;
+        // The parked MediaPlayer must not run into a chained next song
+        releaseNextPlayer();
+        EffectsState state = effectsState.get();
+        player.setVolume(state.getLeftVolume(), state.getRightVolume());
+        player.setPlaybackSpeed(speed);
+        if (swap) {
+            activeSwap = new SourceSwap(originalSide(), segmentedSide(player),
+                    FFmpegCommandBuilder.HAAS_DELAY_MS / 2, () -> {
+                        activeSwap = null;
+                        parkOriginal();
+                    });
+            activeSwap.start();
+        } else {
+            player.start(positionMs, autoPlay);
+        }
+        refreshPlaybackState();
+        Log.d(TAG, "Playback handed to 8D segments at " + positionMs + " ms");
+    }
+
+    private void releaseSegmentedPlayer() {
+        finishSwap();
+        if (segmentedPlayer != null) {
+            segmentedPlayer.release();
+            segmentedPlayer = null;
+            Log.d(TAG, "Segmented player released");
+        }
+    }
+
+    /**
+     * Drops the current render. Finished renders stay in the cache, an
+     * unfinished one has its FFmpeg sessions cancelled and is deleted once
+     * they have stopped.
+     */
+    private void discardRender() {
+        releaseSegmentedPlayer();
+        if (currentTask != null) {
+            if (currentTask.cancel()) {
+                stoppingTask = currentTask;
+                handler.removeCallbacks(stopTimeout);
+                handler.postDelayed(stopTimeout, RENDER_STOP_TIMEOUT_MS);
+            }
+            // Otherwise it has just finished and onRenderComplete caches it
+            currentTask = null;
+        } else if (currentRender != null && !currentRender.isComplete()) {
+            renderCache.abandon(currentRender);
+        }
+        currentRender = null;
+    }
+
+    // ===== SOURCE SWAP =====
+
+    /**
+     * The original in the parked MediaPlayer, for a {@link SourceSwap}.
+     */
+    private SourceSwap.Side originalSide() {
+        return new SourceSwap.Side() {
+            @Override
+            public long getPositionMs() {
+                return mediaPlayer.getCurrentPosition();
+            }
+
+            @Override
+            public void seekTo(long positionMs, Runnable onLanded) {
+                onOriginalSeekLanded = onLanded;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    mediaPlayer.seekTo(positionMs, MediaPlayer.SEEK_CLOSEST);
+                } else {
+                    mediaPlayer.seekTo((int) positionMs);
+                }
+            }
+
+            @Override
+            public void start() {
+                mediaPlayer.start();
+            }
+
+            @Override
+            public void setFadeGain(float gain) {
+                originalFadeGain = gain;
+                applyBalance(effectsState.get());
+            }
+        };
+    }
+
+    private static SourceSwap.Side segmentedSide(SegmentedPlayer player) {
+        return new SourceSwap.Side() {
+            @Override
+            public long getPositionMs() {
+                return player.getPositionMs();
+            }
+
+            @Override
+            public void seekTo(long positionMs, Runnable onLanded) {
+                player.seekTo(positionMs, onLanded);
+            }
+
+            @Override
+            public void start() {
+                player.play();
+            }
+
+            @Override
+            public void setFadeGain(float gain) {
+                player.setFadeGain(gain);
+            }
+        };
+    }
+
+    /**
+     * Ends a running swap at once, before anything else touches the players.
+     */
+    private void finishSwap() {
+        SourceSwap swap = activeSwap;
+        activeSwap = null;
+        if (swap != null) swap.finish();
+    }
+
+    /**
+     * The segments took over: the original pauses underneath, back at full
+     * volume for the next swap.
+     */
+    private void parkOriginal() {
         try {
-            String originalPath = AudioFileManager.getRealPathFromURI(this, currentSourceUri);
-            if (originalPath != null) {
-                mediaPlayer.reset();
-                mediaPlayer.setDataSource(originalPath);
-                currentlyLoadedPath = originalPath;
-
-                mediaPlayer.setOnPreparedListener(mp -> {
-                    initializeAudioEffects();
-
-                    // 🔥 ONLY resume if was playing
-                    if (wasPlaying) {
-                        mp.seekTo(position);
-                        play();
+            if (mediaPlayer.isPlaying()) {
+                mediaPlayer.pause();
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Cannot park original: " + e.getMessage(), e);
+        }
+        originalFadeGain = 1f;
+        applyBalance(effectsState.get());
+    }
+
+    // ===== REAL-TIME 8D ENGINE =====
+
+    private boolean isRealtime8DPreferred() {
+        return getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(SettingsFragment.KEY_REALTIME_8D, false);
+    }
+
+    private int getCrossfadeMs() {
+        return getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                .getInt(SettingsFragment.KEY_CROSSFADE_SECONDS, 0) * 1000;
+    }
+
+    private void applyEffectsRealtime(boolean enable8D, boolean enableBass, float speed8D, int bassBoost) {
+        is8DEnabled = enable8D;
+        setBassEnabled(enableBass);
+        setBassBoost(bassBoost);
+        set8DRotationSpeed(speed8D);
+        updatePreRenderCandidates();
+
+        if (streamingEngine != null) {
+            streamingEngine.getProcessor().setEnabled(enable8D);
+        } else if (enable8D) {
+            boolean wasPlaying = mediaPlayer.isPlaying();
+            int position = 0;
+            try {
+                position = mediaPlayer.getCurrentPosition();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Cannot get position before engine handover");
+            }
+            startStreamingEngine(position, wasPlaying);
+        }
+        updateNotification(isPlaying());
+    }
+
+    /**
+     * Hands playback from MediaPlayer to the streaming engine. The MediaPlayer
+     * stays prepared (paused) so its audio session keeps the effects alive.
+     */
+    private void startStreamingEngine(int positionMs, boolean autoPlay) {
+        if (currentSourceUri == null) return;
+
+        StreamingAudioEngine engine = new StreamingAudioEngine(
+                mediaPlayer.getAudioSessionId(), effectsState,
+                new StreamingAudioEngine.Listener() {
+                    @Override
+                    public void onCompletion() {
+                        onPlaybackCompleted();
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        Log.e(TAG, "Streaming engine error: " + message);
+                        if (viewModel != null) {
+                            viewModel.postIsPlaying(false);
+                        }
+                        updatePlaybackState(PlaybackStateCompat.STATE_ERROR);
+                    }
+
+                    @Override
+                    public void onNextStarted(Uri uri) {
+                        if (streamingEngine == null) return;
+                        onNextTrackStarted(uri, (int) streamingEngine.getDurationMs());
+                        reloadParkedPlayer(uri);
                     }
-                    setupMediaPlayerListeners();
                 });
-                mediaPlayer.prepareAsync();
 
-                Log.d(TAG, "Original audio loading...");
-            }
+        if (!engine.open(this, currentSourceUri, rotationSpeed8D)) {
+            Log.e(TAG, "Streaming engine unavailable, staying on MediaPlayer");
+            return;
+        }
+
+        if (mediaPlayer.isPlaying()) {
+            mediaPlayer.pause();
+        }
+
+        engine.getProcessor().setEnabled(is8DEnabled);
+        engine.setCrossfadeMs(getCrossfadeMs());
+        engine.seekTo(positionMs);
+        streamingEngine = engine;
+        // Hands the EQ over from the platform effect to the engine
+        streamingActive = true;
+        scheduleEffectsSync(0);
+        Log.d(TAG, "Playback handed to streaming engine at " + positionMs + " ms");
+        prepareNextTrack();
+
+        if (autoPlay) {
+            play();
+        } else {
+            refreshPlaybackState();
+        }
+    }
+
+    private void releaseStreamingEngine() {
+        if (streamingEngine != null) {
+            streamingEngine.release();
+            streamingEngine = null;
+            streamingActive = false;
+            scheduleEffectsSync(0);
+            Log.d(TAG, "Streaming engine released");
+        }
+    }
+
+    private int getPlaybackPosition() {
+        if (activeSwap != null) {
+            return (int) activeSwap.getPositionMs();
+        }
+        if (streamingEngine != null) {
+            return (int) streamingEngine.getPositionMs();
+        }
+        if (segmentedPlayer != null) {
+            return (int) segmentedPlayer.getPositionMs();
+        }
+        return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
+    }
+
+    private boolean isCurrentlyPlayingProcessedFile() {
+        return segmentedPlayer != null;
+    }
+
+    private void loadProcessedAudio(float speed) {
+        if (currentRender == null || !currentRender.getDir().exists()) {
+            Log.e(TAG, "Processed segments not found");
+            return;
+        }
+
+        startSegmentedPlayer(currentRender, getPlaybackPosition(), isPlaying(), speed);
+        Log.d(TAG, "Processed audio loading...");
+    }
+
+    private void loadOriginalAudio() {
+        if (currentSourceUri == null) return;
+
+        if (mediaPlayerPrepared && streamingEngine == null) {
+            // Still prepared on the original under the segments, no reload
+            returnToOriginal();
+            return;
+        }
+
+        boolean wasPlaying = isPlaying();
+        int position = getPlaybackPosition();
+
+        releaseSegmentedPlayer();
+        if (mediaPlayer.isPlaying()) {
+            mediaPlayer.pause();
+        }
+
+        try {
+            resetMediaPlayer();
+            mediaPlayer.setDataSource(this, currentSourceUri);
+
+            mediaPlayer.setOnPreparedListener(mp -> {
+                mediaPlayerPrepared = true;
+                initializeAudioEffects();
+
+                // 🔥 ONLY resume if was playing
+                if (wasPlaying) {
+                    mp.seekTo(position);
+                    play();
+                } else {
+                    refreshPlaybackState();
+                }
+                setupMediaPlayerListeners();
+                prepareNextTrack();
+            });
+            mediaPlayer.prepareAsync();
+
+            Log.d(TAG, "Original audio loading...");
         } catch (IOException | IllegalStateException e) {
             Log.e(TAG, "Error loading original: " + e.getMessage(), e);
         }
@@ -761,11 +1664,12 @@ public class AudioPlaybackService extends Service {
 
     private void finishProcessing(boolean success) {
         isProcessing = false;
+        preRenderer.resume();
         if (viewModel != null) {
             viewModel.postIsProcessing(false);
             handler.post(() -> viewModel.setProcessingProgress(success ? 100 : 0));
         }
-        updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+        updateNotification(isPlaying());
         Log.d(TAG, "Processing finished: " + (success ? "SUCCESS" : "FAILED"));
     }
 
@@ -780,19 +1684,34 @@ public class AudioPlaybackService extends Service {
     }
 
     public boolean isPlaying() {
+        if (activeSwap != null) {
+            // Only started while playing, one side is always audible
+            return true;
+        }
+        if (streamingEngine != null) {
+            return streamingEngine.isPlaying();
+        }
+        if (segmentedPlayer != null) {
+            return segmentedPlayer.isPlaying();
+        }
         return mediaPlayer != null && mediaPlayer.isPlaying();
     }
 
     // ===== PLAYBACK CONTROLS =====
 
     public void play() {
-        if (mediaPlayer != null && !mediaPlayer.isPlaying()) {
+        if (mediaPlayer != null && !isPlaying()) {
             try {
-                mediaPlayer.start();
+                if (streamingEngine != null) {
+                    streamingEngine.play();
+                } else if (segmentedPlayer != null) {
+                    segmentedPlayer.play();
+                } else {
+                    mediaPlayer.start();
+                }
                 if (viewModel != null) {
                     viewModel.postIsPlaying(true);
                 }
-                handler.post(progressRunnable);
                 updatePlaybackState(PlaybackStateCompat.STATE_PLAYING);
                 updateNotification(true);
                 Log.d(TAG, "Playback started");
@@ -803,13 +1722,19 @@ public class AudioPlaybackService extends Service {
     }
 
     public void pause() {
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
+        finishSwap();
+        if (mediaPlayer != null && isPlaying()) {
             try {
-                mediaPlayer.pause();
+                if (streamingEngine != null) {
+                    streamingEngine.pause();
+                } else if (segmentedPlayer != null) {
+                    segmentedPlayer.pause();
+                } else {
+                    mediaPlayer.pause();
+                }
                 if (viewModel != null) {
                     viewModel.postIsPlaying(false);
                 }
-                stopProgressTracking();
                 updatePlaybackState(PlaybackStateCompat.STATE_PAUSED);
                 updateNotification(false);
                 Log.d(TAG, "Playback paused");
@@ -820,30 +1745,49 @@ public class AudioPlaybackService extends Service {
     }
 
     public void stop() {
+        finishSwap();
         if (mediaPlayer != null) {
             try {
+                if (streamingEngine != null) {
+                    streamingEngine.pause();
+                    streamingEngine.seekTo(0);
+                }
+                if (segmentedPlayer != null) {
+                    segmentedPlayer.pause();
+                    segmentedPlayer.seekTo(0);
+                }
                 if (mediaPlayer.isPlaying()) {
                     mediaPlayer.stop();
                 }
 
                 if (viewModel != null) {
                     viewModel.postIsPlaying(false);
-                    viewModel.setCurrentPosition(0);
                 }
 
-                stopProgressTracking();
-                updatePlaybackState(PlaybackStateCompat.STATE_STOPPED);
+                updatePlaybackState(PlaybackStateCompat.STATE_STOPPED, 0);
                 stopForeground(true);
+                notification.invalidate();
+
+                if (streamingEngine != null) {
+                    Log.d(TAG, "Playback stopped (streaming engine rewound)");
+                    return;
+                }
+                if (segmentedPlayer != null) {
+                    Log.d(TAG, "Playback stopped (8D segments rewound)");
+                    return;
+                }
 
                 // 🔥 Reset to prepared state WITHOUT auto-playing
-                mediaPlayer.reset();
-                if (currentOriginalFilePath != null) {
-                    mediaPlayer.setDataSource(currentOriginalFilePath);
+                resetMediaPlayer();
+                if (currentSourceUri != null) {
+                    mediaPlayer.setDataSource(this, currentSourceUri);
 
                     mediaPlayer.setOnPreparedListener(mp -> {
                         Log.d(TAG, "Media reset and prepared after stop - ready for user action");
+                        mediaPlayerPrepared = true;
                         setupMediaPlayerListeners();
-                        updatePlaybackState(PlaybackStateCompat.STATE_STOPPED);
+                        linkNextPlayer();
+                        updatePlaybackState(PlaybackStateCompat.STATE_STOPPED, 0);
                         // 🔥 DO NOT call play() here
                     });
                     mediaPlayer.prepareAsync();
@@ -857,11 +1801,17 @@ public class AudioPlaybackService extends Service {
     }
 
     public void seekTo(int position) {
+        finishSwap();
         if (mediaPlayer != null) {
             try {
-                mediaPlayer.seekTo(position);
-                updatePlaybackState(mediaPlayer.isPlaying() ?
-                        PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
+                if (streamingEngine != null) {
+                    streamingEngine.seekTo(position);
+                } else if (segmentedPlayer != null) {
+                    segmentedPlayer.seekTo(position);
+                } else {
+                    mediaPlayer.seekTo(position);
+                }
+                refreshPlaybackState();
                 Log.d(TAG, "Seeked to: " + position);
             } catch (IllegalStateException e) {
                 Log.e(TAG, "Cannot seek: " + e.getMessage(), e);
@@ -869,19 +1819,11 @@ public class AudioPlaybackService extends Service {
         }
     }
 
-    private void stopProgressTracking() {
-        if (handler != null && progressRunnable != null) {
-            handler.removeCallbacks(progressRunnable);
-        }
-    }
-
     // ===== FOREGROUND SERVICE ENTRY POINT =====
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Notification notification = createNotification(
-                mediaPlayer != null && mediaPlayer.isPlaying()
-        );
+        Notification notification = createNotification(isPlaying());
         startForeground(NOTIFICATION_ID, notification);
 
         MediaButtonReceiver.handleIntent(mediaSession, intent);
@@ -909,15 +1851,25 @@ public class AudioPlaybackService extends Service {
         super.onDestroy();
         Log.d(TAG, "Service destroyed");
 
+        finishSwap();
+        releaseStreamingEngine();
+        releaseNextPlayer();
+        nextTrackExecutor.shutdownNow();
         releaseAudioEffects();
+        effectsThread.quitSafely();
+        discardRender();
+        pendingEffectsRequest = null;
+        preRenderer.release();
 
         if (mediaPlayer != null) {
             mediaPlayer.release();
             mediaPlayer = null;
         }
+        if (notification != null) {
+            notification.release();
+        }
         if (mediaSession != null) {
             mediaSession.release();
         }
-        stopProgressTracking();
     }
 }
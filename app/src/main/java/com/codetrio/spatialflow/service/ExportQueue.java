@@ -0,0 +1,459 @@
+package com.codetrio.spatialflow.service;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKit;
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.codetrio.spatialflow.util.AudioFileManager;
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persistent queue of 8D exports. Jobs are written to a file in
+ * {@code filesDir} on every state change, so whatever was still pending or
+ * running when the process died is picked up again by
+ * {@link ExportQueueService}. Each job is one async FFmpeg session encoding
+ * straight into its own pending Downloads entry through the entry's file
+ * descriptor (a file in Downloads before Android 10); at most
+ * {@link #maxConcurrent()} sessions run at once.
+ *
+ * Listener callbacks run on the main thread.
+ */
+public class ExportQueue {
+
+    private static final String TAG = "ExportQueue";
+    private static final String FILE_NAME = "export_queue.json";
+
+    // Same rotation the single-song export in PlayerFragment uses
+    private static final float EXPORT_ROTATION_SPEED = 0.2f;
+
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+
+    public interface Listener {
+        void onQueueChanged(Progress progress);
+    }
+
+    public static class Job {
+        final String id;
+        final Uri source;
+        final String name;
+        int state = STATE_PENDING;
+        // Where the output is being written, so a killed job can be cleaned up:
+        // the pending Downloads entry (Android 10+) or the file
+        Uri outputUri;
+        String outputPath;
+        long durationMs;
+        long renderedMs;
+        long sessionId = -1;
+
+        Job(String id, Uri source, String name) {
+            this.id = id;
+            this.source = source;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public int getPercent() {
+            if (state == STATE_DONE) return 100;
+            if (durationMs <= 0) return 0;
+            return (int) Math.min(renderedMs * 100 / durationMs, 99);
+        }
+    }
+
+    /**
+     * Point-in-time view of the queue.
+     */
+    public static class Progress {
+        public final int total;
+        public final int done;
+        public final int failed;
+        public final int percent;
+        public final List<Job> running;
+
+        Progress(int total, int done, int failed, int percent, List<Job> running) {
+            this.total = total;
+            this.done = done;
+            this.failed = failed;
+            this.percent = percent;
+            this.running = running;
+        }
+
+        public boolean isIdle() {
+            return running.isEmpty() && done + failed == total;
+        }
+    }
+
+    private static ExportQueue instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Job> jobs = new ArrayList<>();
+    private Listener listener;
+    private boolean cancelling = false;
+
+    public static synchronized ExportQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new ExportQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ExportQueue(Context context) {
+        this.context = context;
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        load();
+    }
+
+    /**
+     * @return FFmpeg sessions run in parallel; half the cores, so playback
+     * and the UI stay responsive while a batch is exporting
+     */
+    public static int maxConcurrent() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds songs to the queue. Call {@link ExportQueueService#start} afterwards
+     * so the jobs actually run.
+     */
+    public synchronized void enqueue(List<Uri> sources, List<String> names) {
+        for (int i = 0; i < sources.size(); i++) {
+            jobs.add(new Job(UUID.randomUUID().toString(), sources.get(i), names.get(i)));
+        }
+        Log.d(TAG, "Enqueued " + sources.size() + " exports, " + jobs.size() + " in queue");
+        save();
+        dispatch();
+    }
+
+    public synchronized boolean hasUnfinished() {
+        for (Job job : jobs) {
+            if (job.state == STATE_PENDING || job.state == STATE_RUNNING) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts pending jobs until the concurrency limit is reached.
+     */
+    public void pump() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (cancelling || countRunning() >= maxConcurrent()) return;
+                job = nextPending();
+                if (job == null) return;
+                job.state = STATE_RUNNING;
+                save();
+            }
+            // Creating the MediaStore entry and probing the source is IO
+            final Job started = job;
+            new Thread(() -> runJob(started), "Export-" + job.name).start();
+        }
+    }
+
+    /**
+     * Drops pending jobs and cancels the running FFmpeg sessions. Their
+     * partial outputs are deleted.
+     */
+    public void cancelAll() {
+        List<Long> sessions = new ArrayList<>();
+        synchronized (this) {
+            cancelling = true;
+            List<Job> kept = new ArrayList<>();
+            for (Job job : jobs) {
+                if (job.state == STATE_RUNNING) {
+                    kept.add(job);
+                    if (job.sessionId >= 0) sessions.add(job.sessionId);
+                } else if (job.state != STATE_PENDING) {
+                    kept.add(job);
+                }
+            }
+            jobs.clear();
+            jobs.addAll(kept);
+            if (countRunning() == 0) {
+                cancelling = false;
+                jobs.clear();
+            }
+            save();
+            dispatch();
+        }
+        for (long id : sessions) {
+            FFmpegKit.cancel(id);
+        }
+        Log.d(TAG, "Cancelled queue, " + sessions.size() + " sessions stopped");
+    }
+
+    public synchronized Progress getProgress() {
+        int done = 0, failed = 0;
+        long percentSum = 0;
+        List<Job> running = new ArrayList<>();
+        for (Job job : jobs) {
+            if (job.state == STATE_DONE) done++;
+            else if (job.state == STATE_FAILED) failed++;
+            else if (job.state == STATE_RUNNING) running.add(job);
+
+            percentSum += job.state == STATE_FAILED ? 100 : job.getPercent();
+        }
+        int percent = jobs.isEmpty() ? 100 : (int) (percentSum / jobs.size());
+        return new Progress(jobs.size(), done, failed, percent, running);
+    }
+
+    // ===== JOB EXECUTION =====
+
+    private void runJob(Job job) {
+        String input = AudioFileManager.getFFmpegInput(context, job.source);
+        if (input == null) {
+            Log.e(TAG, "Could not access " + job.source);
+            finishJob(job, false);
+            return;
+        }
+
+        long durationMs = AudioFileManager.readDuration(context, job.source);
+        File outputFile = AudioFileManager.createOutputFile(context, "Spatial_" + job.name);
+
+        String outputPath;
+        FFmpegCommandBuilder.Profile profile;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Each job gets its own entry, MediaStore makes equal names unique
+            Uri pendingUri = AudioFileManager.createPendingDownload(context, outputFile.getName());
+            if (pendingUri == null) {
+                finishJob(job, false);
+                return;
+            }
+            synchronized (this) {
+                job.outputUri = pendingUri;
+                job.durationMs = durationMs;
+                save();
+            }
+            outputPath = FFmpegKitConfig.getSafParameterForWrite(context, pendingUri);
+            profile = FFmpegCommandBuilder.Profile.EXPORT_DIRECT;
+        } else {
+            synchronized (this) {
+                job.outputPath = outputFile.getAbsolutePath();
+                job.durationMs = durationMs;
+                save();
+            }
+            outputPath = outputFile.getAbsolutePath();
+            profile = FFmpegCommandBuilder.Profile.EXPORT;
+        }
+
+        boolean cancelledEarly;
+        synchronized (this) {
+            cancelledEarly = cancelling;
+        }
+        // Outside the lock: finishJob deletes files and starts the next job
+        if (cancelledEarly) {
+            finishJob(job, false);
+            return;
+        }
+
+        String command = FFmpegCommandBuilder.build8D(
+                input, outputPath, EXPORT_ROTATION_SPEED, profile);
+        Log.d(TAG, "Exporting " + job.name + ": " + command);
+
+        FFmpegSession session = FFmpegKit.executeAsync(
+                command,
+                s -> {
+                    boolean success = ReturnCode.isSuccess(s.getReturnCode());
+                    if (success) {
+                        long bytes = job.outputUri != null
+                                ? AudioFileManager.getSize(context, job.outputUri)
+                                : new File(job.outputPath).length();
+                        FFmpegCommandBuilder.logRenderStats(profile,
+                                maxConcurrent(), s.getDuration(), job.durationMs, bytes);
+                    } else {
+                        Log.e(TAG, "Export of " + job.name + " failed: " + s.getReturnCode());
+                    }
+                    finishJob(job, success);
+                },
+                log -> { },
+                statistics -> {
+                    if (statistics == null || statistics.getTime() <= 0) return;
+                    synchronized (this) {
+                        job.renderedMs = (long) statistics.getTime();
+                        dispatch();
+                    }
+                }
+        );
+
+        boolean cancelled;
+        synchronized (this) {
+            job.sessionId = session.getSessionId();
+            cancelled = cancelling;
+        }
+        // cancelAll() ran before the session id was known
+        if (cancelled) FFmpegKit.cancel(session.getSessionId());
+    }
+
+    private void finishJob(Job job, boolean success) {
+        boolean cancelled;
+        synchronized (this) {
+            cancelled = cancelling;
+        }
+
+        if (success && !cancelled) {
+            if (job.outputUri != null) {
+                AudioFileManager.publishPendingDownload(context, job.outputUri);
+            } else if (job.outputPath != null) {
+                AudioFileManager.scanFile(context, new File(job.outputPath));
+            }
+        } else {
+            discardOutput(job);
+        }
+
+        synchronized (this) {
+            if (cancelled) {
+                jobs.remove(job);
+            } else {
+                job.state = success ? STATE_DONE : STATE_FAILED;
+                job.sessionId = -1;
+            }
+            if (countRunning() == 0) {
+                cancelling = false;
+            }
+            save();
+            dispatch();
+            if (!hasUnfinished()) {
+                // Batch is over, the next one starts counting from zero
+                jobs.clear();
+                save();
+            }
+        }
+        pump();
+    }
+
+    private void discardOutput(Job job) {
+        if (job.outputUri != null) {
+            AudioFileManager.discardPendingDownload(context, job.outputUri);
+        }
+        if (job.outputPath != null) {
+            new File(job.outputPath).delete();
+        }
+        job.outputUri = null;
+        job.outputPath = null;
+    }
+
+    private int countRunning() {
+        int running = 0;
+        for (Job job : jobs) {
+            if (job.state == STATE_RUNNING) running++;
+        }
+        return running;
+    }
+
+    private Job nextPending() {
+        for (Job job : jobs) {
+            if (job.state == STATE_PENDING) return job;
+        }
+        return null;
+    }
+
+    private void dispatch() {
+        final Listener target = listener;
+        if (target == null) return;
+        final Progress progress = getProgress();
+        mainHandler.post(() -> target.onQueueChanged(progress));
+    }
+
+    // ===== PERSISTENCE =====
+
+    private void load() {
+        if (!file.getBaseFile().exists()) return;
+
+        try (FileInputStream in = file.openRead()) {
+            byte[] bytes = new byte[in.available()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+
+            JSONArray array = new JSONArray(new String(bytes, 0, read, StandardCharsets.UTF_8));
+            int resumed = 0;
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject obj = array.getJSONObject(i);
+                Job job = new Job(obj.getString("id"),
+                        Uri.parse(obj.getString("source")), obj.getString("name"));
+                job.state = obj.getInt("state");
+                job.durationMs = obj.optLong("durationMs", 0);
+                if (obj.has("outputUri")) job.outputUri = Uri.parse(obj.getString("outputUri"));
+                if (obj.has("outputPath")) job.outputPath = obj.getString("outputPath");
+
+                if (job.state == STATE_RUNNING) {
+                    // Killed mid-encode: the partial output is useless, start over
+                    discardOutput(job);
+                    job.state = STATE_PENDING;
+                    resumed++;
+                }
+                jobs.add(job);
+            }
+            if (!hasUnfinished()) jobs.clear();
+            Log.d(TAG, "Loaded " + jobs.size() + " jobs, " + resumed + " interrupted");
+
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Cannot read export queue: " + e.getMessage(), e);
+            jobs.clear();
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            JSONArray array = new JSONArray();
+            for (Job job : jobs) {
+                JSONObject obj = new JSONObject();
+                obj.put("id", job.id);
+                obj.put("source", job.source.toString());
+                obj.put("name", job.name);
+                obj.put("state", job.state);
+                obj.put("durationMs", job.durationMs);
+                if (job.outputUri != null) obj.put("outputUri", job.outputUri.toString());
+                if (job.outputPath != null) obj.put("outputPath", job.outputPath);
+                array.put(obj);
+            }
+
+            out = file.startWrite();
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Cannot save export queue: " + e.getMessage(), e);
+            if (out != null) file.failWrite(out);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.codetrio.spatialflow.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.codetrio.spatialflow.MainActivity;
+import com.codetrio.spatialflow.R;
+
+/**
+ * Foreground host for {@link ExportQueue}. Keeps the process alive while
+ * exports run, shows per-song and whole-queue progress in its notification
+ * and stops itself once the queue has drained. Sticky, so a batch that was
+ * interrupted by the system is resumed when the service is recreated.
+ */
+public class ExportQueueService extends Service implements ExportQueue.Listener {
+
+    private static final String TAG = "ExportQueueService";
+    private static final String CHANNEL_ID = "export_queue_channel";
+    private static final int NOTIFICATION_ID = 1002;
+    private static final int SUMMARY_NOTIFICATION_ID = 1003;
+
+    public static final String ACTION_CANCEL = "com.codetrio.spatialflow.EXPORT_CANCEL";
+
+    // FFmpeg reports statistics several times a second per session
+    private static final long NOTIFICATION_INTERVAL_MS = 1000;
+
+    private ExportQueue queue;
+    private long lastNotifiedAt = 0;
+    private int lastDone = -1;
+
+    /**
+     * Starts (or pokes) the service so queued jobs run.
+     */
+    public static void start(Context context) {
+        try {
+            ContextCompat.startForegroundService(context,
+                    new Intent(context, ExportQueueService.class));
+        } catch (IllegalStateException e) {
+            // Background start restrictions; the queue is resumed on next launch
+            Log.e(TAG, "Cannot start export service: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createNotificationChannel();
+        queue = ExportQueue.getInstance(this);
+        queue.setListener(this);
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "8D Exports",
+                    NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("Shows the progress of queued 8D exports");
+            channel.setShowBadge(false);
+            channel.setSound(null, null);
+
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.createNotificationChannel(channel);
+            }
+        }
+    }
+
+    // ===== FOREGROUND SERVICE ENTRY POINT =====
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(NOTIFICATION_ID, createNotification(queue.getProgress()));
+
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            queue.cancelAll();
+        } else {
+            queue.pump();
+        }
+
+        if (!queue.hasUnfinished()) {
+            finish(queue.getProgress());
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public void onQueueChanged(ExportQueue.Progress progress) {
+        if (progress.isIdle()) {
+            // A new batch may have been queued since this was posted
+            if (!queue.hasUnfinished()) finish(progress);
+            return;
+        }
+
+        // Throttle progress ticks, but always show a job finishing
+        long now = SystemClock.elapsedRealtime();
+        if (progress.done == lastDone && now - lastNotifiedAt < NOTIFICATION_INTERVAL_MS) return;
+        lastNotifiedAt = now;
+        lastDone = progress.done;
+
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(NOTIFICATION_ID, createNotification(progress));
+        }
+    }
+
+    private void finish(ExportQueue.Progress progress) {
+        Log.d(TAG, "Queue drained: " + progress.done + " exported, " + progress.failed + " failed");
+        stopForeground(true);
+
+        if (progress.total > 0) {
+            String text = progress.failed > 0
+                    ? progress.done + " saved, " + progress.failed + " failed"
+                    : progress.done + " saved to Downloads/SpatialFlow";
+            Notification summary = new NotificationCompat.Builder(this, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_save)
+                    .setContentTitle("8D export finished")
+                    .setContentText(text)
+                    .setContentIntent(createContentIntent())
+                    .setAutoCancel(true)
+                    .build();
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.notify(SUMMARY_NOTIFICATION_ID, summary);
+            }
+        }
+        stopSelf();
+    }
+
+    private Notification createNotification(ExportQueue.Progress progress) {
+        Intent cancelIntent = new Intent(this, ExportQueueService.class).setAction(ACTION_CANCEL);
+        PendingIntent cancelPendingIntent = PendingIntent.getService(
+                this, 0, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        // One line per song in flight, e.g. "Song A · 42%"
+        StringBuilder current = new StringBuilder();
+        for (ExportQueue.Job job : progress.running) {
+            if (current.length() > 0) current.append('\n');
+            current.append(job.getName()).append(" · ").append(job.getPercent()).append('%');
+        }
+
+        int finished = progress.done + progress.failed;
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_save)
+                .setContentTitle("Exporting 8D audio (" + finished + "/" + progress.total + ")")
+                .setContentText(current.length() > 0 ? current.toString() : "Preparing...")
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(current))
+                .setProgress(100, progress.percent, progress.total == 0)
+                .setContentIntent(createContentIntent())
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setShowWhen(false)
+                .setCategory(NotificationCompat.CATEGORY_PROGRESS)
+                .addAction(R.drawable.ic_stop, "Cancel all", cancelPendingIntent)
+                .build();
+    }
+
+    private PendingIntent createContentIntent() {
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(
+                this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    @Override
+    public void onDestroy() {
+        queue.setListener(null);
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
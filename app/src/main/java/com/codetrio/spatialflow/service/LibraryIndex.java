@@ -0,0 +1,403 @@
+package com.codetrio.spatialflow.service;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.codetrio.spatialflow.model.SongTable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent index of the MediaStore audio library. The index file in
+ * {@code filesDir} is read in one go at startup, then kept current in the
+ * background: a sync only fetches rows added or modified since the last one
+ * (by DATE_ADDED / DATE_MODIFIED) and drops rows whose ID has gone. A
+ * {@link ContentObserver} schedules a sync whenever MediaStore changes, and
+ * a MediaStore version change rebuilds the index from scratch.
+ *
+ * The library is held as a {@link SongTable}, never as one object per song;
+ * a sync that changes anything builds the next table from the current one
+ * plus the changed rows. {@link #getSongs()} never touches the disk or
+ * MediaStore. Listener callbacks run on the main thread.
+ */
+public class LibraryIndex {
+
+    private static final String TAG = "LibraryIndex";
+    private static final String FILE_NAME = "library_index.bin";
+    private static final int FORMAT = 2;
+
+    // MediaStore fires several changes per scanned file, sync once they settle
+    private static final long SYNC_DELAY_MS = 1000;
+    // Stays below SQLite's bound parameter limit
+    private static final int ID_CHUNK = 500;
+
+    private static final Uri CONTENT_URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM_ID,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.DATE_ADDED,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+
+    public interface Listener {
+        void onLibraryChanged(SongTable songs);
+    }
+
+    private static LibraryIndex instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(runnable, "LibraryIndex"));
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // Written by the index thread only, immutable once published
+    private volatile SongTable songs = SongTable.EMPTY;
+
+    // Index thread only
+    // Rows whose file is missing, rechecked once per process
+    private final Set<Long> skippedIds = new HashSet<>();
+    private String mediaStoreVersion = "";
+    private long maxDateAdded = 0;
+    private long maxDateModified = 0;
+    private boolean syncQueued = false;
+
+    private final Runnable queueSync = this::queueSync;
+
+    public static synchronized LibraryIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LibraryIndex(Context context) {
+        this.context = context;
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+
+        executor.execute(() -> {
+            load();
+            publish();
+            syncNow();
+        });
+
+        context.getContentResolver().registerContentObserver(CONTENT_URI, true,
+                new ContentObserver(mainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        sync();
+                    }
+                });
+    }
+
+    /**
+     * @return every indexed song by title; empty until the index file has
+     * been read
+     */
+    public SongTable getSongs() {
+        return songs;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Schedules an incremental sync, e.g. after the audio permission has
+     * been granted. Repeated calls within {@link #SYNC_DELAY_MS} coalesce.
+     */
+    public void sync() {
+        mainHandler.removeCallbacks(queueSync);
+        mainHandler.postDelayed(queueSync, SYNC_DELAY_MS);
+    }
+
+    private synchronized void queueSync() {
+        if (syncQueued) return;
+        syncQueued = true;
+        executor.execute(() -> {
+            synchronized (this) {
+                syncQueued = false;
+            }
+            syncNow();
+        });
+    }
+
+    // ===== SYNC =====
+
+    private void syncNow() {
+        long start = System.currentTimeMillis();
+        try {
+            String version = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? MediaStore.getVersion(context) : "";
+            boolean rebuild = songs.size() == 0 || !version.equals(mediaStoreVersion);
+            if (rebuild) {
+                skippedIds.clear();
+                maxDateAdded = 0;
+                maxDateModified = 0;
+            }
+            mediaStoreVersion = version;
+
+            Changes changes = new Changes(rebuild ? SongTable.EMPTY : songs);
+            if (rebuild) {
+                fetch(changes, null, null);
+            } else {
+                removeDeletedAndFetchUnknown(changes);
+                fetch(changes, MediaStore.Audio.Media.DATE_ADDED + " >= ? OR "
+                                + MediaStore.Audio.Media.DATE_MODIFIED + " >= ?",
+                        new String[]{String.valueOf(maxDateAdded), String.valueOf(maxDateModified)});
+            }
+
+            if (rebuild || !changes.isEmpty()) {
+                songs = changes.apply();
+                save();
+                publish();
+            }
+            Log.d(TAG, (rebuild ? "Rebuilt" : "Synced") + " " + songs.size() + " songs in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (SecurityException e) {
+            Log.w(TAG, "No permission to read the audio library yet");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Library sync failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compares the IDs in MediaStore with the index: drops the ones that are
+     * gone and fetches the ones never seen (e.g. restored with old dates).
+     */
+    private void removeDeletedAndFetchUnknown(Changes changes) {
+        long[] present = new long[256];
+        int count = 0;
+        try (Cursor cursor = context.getContentResolver().query(CONTENT_URI,
+                new String[]{MediaStore.Audio.Media._ID}, null, null, null)) {
+            if (cursor == null) return;
+            while (cursor.moveToNext()) {
+                if (count == present.length) present = Arrays.copyOf(present, count * 2);
+                present[count++] = cursor.getLong(0);
+            }
+        }
+        Arrays.sort(present, 0, count);
+        final long[] ids = present;
+        final int idCount = count;
+
+        SongTable base = changes.base;
+        for (int row = 0; row < base.size(); row++) {
+            if (Arrays.binarySearch(ids, 0, idCount, base.id(row)) < 0) changes.remove(base.id(row));
+        }
+        skippedIds.removeIf(id -> Arrays.binarySearch(ids, 0, idCount, id) < 0);
+
+        List<Long> unknown = new ArrayList<>();
+        for (int k = 0; k < idCount; k++) {
+            if (base.rowOf(ids[k]) < 0 && !skippedIds.contains(ids[k])) unknown.add(ids[k]);
+        }
+        for (int i = 0; i < unknown.size(); i += ID_CHUNK) {
+            List<Long> chunk = unknown.subList(i, Math.min(i + ID_CHUNK, unknown.size()));
+            StringBuilder selection = new StringBuilder(MediaStore.Audio.Media._ID + " IN (");
+            String[] args = new String[chunk.size()];
+            for (int j = 0; j < chunk.size(); j++) {
+                selection.append(j == 0 ? "?" : ",?");
+                args[j] = String.valueOf(chunk.get(j));
+            }
+            selection.append(')');
+            fetch(changes, selection.toString(), args);
+        }
+    }
+
+    /**
+     * Records the matching rows that are new or differ from the index.
+     */
+    private void fetch(Changes changes, String selection, String[] args) {
+        try (Cursor cursor = context.getContentResolver().query(CONTENT_URI, PROJECTION,
+                selection, args, null)) {
+            if (cursor == null) return;
+
+            int idIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            int titleIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+            int artistIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+            int albumIdIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+            int dataIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+            int addedIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
+            int modifiedIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(idIdx);
+                long dateAdded = cursor.getLong(addedIdx);
+                maxDateAdded = Math.max(maxDateAdded, dateAdded);
+                maxDateModified = Math.max(maxDateModified, cursor.getLong(modifiedIdx));
+
+                String path = cursor.getString(dataIdx);
+                if (path == null || !new File(path).exists()) {
+                    skippedIds.add(id);
+                    changes.remove(id);
+                    continue;
+                }
+                skippedIds.remove(id);
+
+                String title = cursor.getString(titleIdx);
+                String artist = cursor.getString(artistIdx);
+                long albumId = cursor.getLong(albumIdIdx);
+                int row = changes.base.rowOf(id);
+                if (row >= 0 && changes.base.sameAs(row, title, artist, albumId, path, dateAdded)) continue;
+                changes.put(id, title, artist, albumId, path, dateAdded);
+            }
+        }
+    }
+
+    private void publish() {
+        final SongTable snapshot = songs;
+        mainHandler.post(() -> {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onLibraryChanged(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Rows added, replaced or removed by one sync, applied to the table it
+     * started from in one pass.
+     */
+    private static final class Changes {
+        final SongTable base;
+        private final boolean[] dropped;
+        private int droppedCount = 0;
+        private final SongTable.Builder added = new SongTable.Builder();
+        // Queries of one sync can overlap, e.g. unknown IDs that are also new
+        private final Set<Long> addedIds = new HashSet<>();
+
+        Changes(SongTable base) {
+            this.base = base;
+            this.dropped = new boolean[base.size()];
+        }
+
+        boolean isEmpty() {
+            return droppedCount == 0 && added.size() == 0;
+        }
+
+        void remove(long id) {
+            int row = base.rowOf(id);
+            if (row >= 0 && !dropped[row]) {
+                dropped[row] = true;
+                droppedCount++;
+            }
+        }
+
+        void put(long id, String title, String artist, long albumId, String path, long dateAdded) {
+            remove(id);
+            if (addedIds.add(id)) added.add(id, title, artist, albumId, path, dateAdded);
+        }
+
+        SongTable apply() {
+            if (base.size() == 0) return added.build();
+            SongTable.Builder merged = new SongTable.Builder();
+            for (int row = 0; row < base.size(); row++) {
+                if (!dropped[row]) merged.addRow(base, row);
+            }
+            SongTable fresh = added.build();
+            for (int row = 0; row < fresh.size(); row++) merged.addRow(fresh, row);
+            return merged.build();
+        }
+    }
+
+    // ===== PERSISTENCE =====
+
+    private void load() {
+        if (!file.getBaseFile().exists()) return;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            if (in.readInt() != FORMAT) {
+                Log.d(TAG, "Index format changed, rebuilding");
+                return;
+            }
+            String version = in.readUTF();
+            long dateAdded = in.readLong();
+            long dateModified = in.readLong();
+            String[] titles = readStrings(in);
+            String[] artists = readStrings(in);
+            int count = in.readInt();
+            SongTable.Builder builder = new SongTable.Builder();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                int title = in.readInt();
+                int artist = in.readInt();
+                builder.add(id, title != SongTable.NONE ? titles[title] : null,
+                        artist != SongTable.NONE ? artists[artist] : null,
+                        in.readLong(), in.readUTF(), in.readLong());
+            }
+            songs = builder.build();
+            mediaStoreVersion = version;
+            maxDateAdded = dateAdded;
+            maxDateModified = dateModified;
+            Log.d(TAG, "Loaded " + count + " songs");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Cannot read library index: " + e.getMessage(), e);
+        }
+    }
+
+    private void save() {
+        SongTable table = songs;
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(FORMAT);
+            data.writeUTF(mediaStoreVersion);
+            data.writeLong(maxDateAdded);
+            data.writeLong(maxDateModified);
+            // Distinct titles and artists once, rows refer to them by index
+            data.writeInt(table.titleRefCount());
+            for (int ref = 0; ref < table.titleRefCount(); ref++) data.writeUTF(table.titleOfRef(ref));
+            data.writeInt(table.artistRefCount());
+            for (int ref = 0; ref < table.artistRefCount(); ref++) data.writeUTF(table.artistOfRef(ref));
+            data.writeInt(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                data.writeLong(table.id(row));
+                data.writeInt(table.titleRef(row));
+                data.writeInt(table.artistRef(row));
+                data.writeLong(table.albumId(row));
+                data.writeUTF(table.path(row));
+                data.writeLong(table.dateAdded(row));
+            }
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot save library index: " + e.getMessage(), e);
+            if (out != null) file.failWrite(out);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readUTF();
+        return values;
+    }
+}
@@ -0,0 +1,190 @@
+package com.codetrio.spatialflow.service;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import com.codetrio.spatialflow.MainActivity;
+import com.codetrio.spatialflow.R;
+
+import java.util.Objects;
+
+/**
+ * Builds and posts the playback notification. Pending intents, the builder
+ * and the media style are created once; {@link #update} only posts when the
+ * {@link Content} differs from what is showing, at most once per
+ * {@link #MIN_POST_INTERVAL_MS} with the latest content winning.
+ *
+ * {@link #update} may be called from any thread, the rest from the main
+ * thread only.
+ */
+public class PlaybackNotification {
+
+    private static final String TAG = "PlaybackNotification";
+
+    // NotificationManager drops updates beyond a few per second anyway
+    private static final long MIN_POST_INTERVAL_MS = 250;
+
+    /**
+     * Everything the notification shows. Art is compared by identity, a new
+     * bitmap means new art.
+     */
+    public static final class Content {
+        public final String title;
+        public final Bitmap art;
+        public final boolean playing;
+        public final boolean is8DEnabled;
+
+        public Content(String title, Bitmap art, boolean playing, boolean is8DEnabled) {
+            this.title = title;
+            this.art = art;
+            this.playing = playing;
+            this.is8DEnabled = is8DEnabled;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Content)) return false;
+            Content other = (Content) o;
+            return playing == other.playing && is8DEnabled == other.is8DEnabled
+                    && art == other.art && Objects.equals(title, other.title);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, System.identityHashCode(art), playing, is8DEnabled);
+        }
+    }
+
+    private final NotificationManager manager;
+    private final int notificationId;
+    private final NotificationCompat.Builder builder;
+    private final PendingIntent playIntent;
+    private final PendingIntent pauseIntent;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable postPending = this::postPending;
+
+    private Content shown;
+    private Content pending;
+    private long lastPostMs = -MIN_POST_INTERVAL_MS;
+
+    public PlaybackNotification(Context context, String channelId, int notificationId,
+                                MediaSessionCompat.Token sessionToken,
+                                String playAction, String pauseAction) {
+        this.manager = context.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        notificationIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        notificationIntent.putExtra(MainActivity.EXTRA_OPEN_PLAYER, true);
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                context, 0, notificationIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        playIntent = PendingIntent.getService(
+                context, 0, new Intent(context, AudioPlaybackService.class).setAction(playAction),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        pauseIntent = PendingIntent.getService(
+                context, 0, new Intent(context, AudioPlaybackService.class).setAction(pauseAction),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        builder = new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(R.drawable.ic_music_note)
+                .setSubText("SpatialFlow")
+                .setContentIntent(contentIntent)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setCategory(NotificationCompat.CATEGORY_TRANSPORT)
+                .setAutoCancel(false)
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(sessionToken)
+                        .setShowActionsInCompactView(0));
+    }
+
+    /**
+     * Builds the notification for {@code content} and records it as shown,
+     * for callers that post it themselves (startForeground).
+     */
+    public Notification build(Content content) {
+        handler.removeCallbacks(postPending);
+        pending = null;
+        shown = content;
+        lastPostMs = SystemClock.elapsedRealtime();
+        return render(content);
+    }
+
+    /**
+     * Posts {@code content} if it differs from the notification showing.
+     */
+    public void update(Content content) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            handler.post(() -> update(content));
+            return;
+        }
+        if (pending == null && content.equals(shown)) return;
+
+        pending = content;
+        long wait = lastPostMs + MIN_POST_INTERVAL_MS - SystemClock.elapsedRealtime();
+        handler.removeCallbacks(postPending);
+        if (wait > 0) {
+            handler.postDelayed(postPending, wait);
+        } else {
+            postPending();
+        }
+    }
+
+    /**
+     * The notification was removed (stopForeground), the next update posts
+     * whatever it carries.
+     */
+    public void invalidate() {
+        handler.removeCallbacks(postPending);
+        pending = null;
+        shown = null;
+    }
+
+    public void release() {
+        invalidate();
+    }
+
+    private void postPending() {
+        Content content = pending;
+        pending = null;
+        if (content == null || content.equals(shown) || manager == null) return;
+
+        manager.notify(notificationId, render(content));
+        shown = content;
+        lastPostMs = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Notification posted (playing=" + content.playing + ")");
+    }
+
+    private Notification render(Content content) {
+        builder.setContentTitle(content.title)
+                .setContentText(content.is8DEnabled ? "🎧 8D Audio" : "Normal Playback")
+                .setLargeIcon(content.art)
+                .setOngoing(content.playing)
+                .clearActions()
+                .addAction(
+                        content.playing ? R.drawable.ic_pause : R.drawable.ic_play,
+                        content.playing ? "Pause" : "Play",
+                        content.playing ? pauseIntent : playIntent
+                );
+        return builder.build();
+    }
+}
@@ -0,0 +1,130 @@
+package com.codetrio.spatialflow.service;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Songs to play one after another: the current one and what comes up next.
+ * Written to a file in {@code filesDir} on every change, so the queue
+ * survives the process. Owned by {@link AudioPlaybackService}, main thread
+ * only.
+ */
+public class PlaybackQueue {
+
+    private static final String TAG = "PlaybackQueue";
+    private static final String FILE_NAME = "playback_queue.json";
+
+    private final AtomicFile file;
+    private final List<Uri> items = new ArrayList<>();
+    private int index = -1;
+
+    public PlaybackQueue(Context context) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        load();
+    }
+
+    public Uri getCurrent() {
+        return index >= 0 ? items.get(index) : null;
+    }
+
+    /**
+     * @return the song after the current one, or null at the end
+     */
+    public Uri peekNext() {
+        return index >= 0 && index + 1 < items.size() ? items.get(index + 1) : null;
+    }
+
+    public List<Uri> getUpNext() {
+        return index >= 0 ? new ArrayList<>(items.subList(index + 1, items.size())) : new ArrayList<>();
+    }
+
+    /**
+     * Makes {@code uri} the current song: jumps to it if it is queued,
+     * otherwise starts a new queue with it.
+     */
+    public void select(Uri uri) {
+        int at = items.indexOf(uri);
+        if (at < 0) {
+            items.clear();
+            items.add(uri);
+            at = 0;
+        }
+        index = at;
+        save();
+    }
+
+    /**
+     * Replaces everything after the current song.
+     */
+    public void setUpNext(List<Uri> songs) {
+        if (index < 0) return;
+        items.subList(index + 1, items.size()).clear();
+        items.addAll(songs);
+        save();
+    }
+
+    /**
+     * Moves to the next song.
+     *
+     * @return the new current song, or null if the queue has ended
+     */
+    public Uri advance() {
+        Uri next = peekNext();
+        if (next != null) {
+            index++;
+            save();
+        }
+        return next;
+    }
+
+    // ===== PERSISTENCE =====
+
+    private void load() {
+        if (!file.getBaseFile().exists()) return;
+
+        try {
+            JSONObject obj = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+            JSONArray array = obj.getJSONArray("items");
+            for (int i = 0; i < array.length(); i++) {
+                items.add(Uri.parse(array.getString(i)));
+            }
+            index = Math.min(obj.getInt("index"), items.size() - 1);
+            Log.d(TAG, "Loaded " + items.size() + " queued songs");
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Cannot read playback queue: " + e.getMessage(), e);
+            items.clear();
+            index = -1;
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            JSONArray array = new JSONArray();
+            for (Uri uri : items) array.put(uri.toString());
+            JSONObject obj = new JSONObject();
+            obj.put("index", index);
+            obj.put("items", array);
+
+            out = file.startWrite();
+            out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Cannot save playback queue: " + e.getMessage(), e);
+            if (out != null) file.failWrite(out);
+        }
+    }
+}
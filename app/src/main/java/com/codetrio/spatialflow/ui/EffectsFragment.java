@@ -15,7 +15,6 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.codetrio.spatialflow.databinding.FragmentEffectsBinding;
-import com.codetrio.spatialflow.service.AudioPlaybackService;
 import com.codetrio.spatialflow.viewmodel.PlayerSharedViewModel;
 
 import com.google.android.material.slider.Slider;
@@ -28,7 +27,6 @@ public class EffectsFragment extends Fragment {
 
     private FragmentEffectsBinding binding;
     private PlayerSharedViewModel viewModel;
-    private AudioPlaybackService service;
 
     // Guard to ignore programmatic switch updates
     private boolean ignoreSwitchEvents = false;
@@ -54,16 +52,6 @@ public class EffectsFragment extends Fragment {
     }
 
     private void setupObservers() {
-        // Service connection
-        viewModel.getAudioService().observe(getViewLifecycleOwner(), audioService -> {
-            this.service = audioService;
-            Log.d(TAG, "Service connected: " + (audioService != null));
-
-            if (service != null) {
-                applyAllEffectsToService();
-            }
-        });
-
         // 8D Audio
         viewModel.getIs8DEnabled().observe(getViewLifecycleOwner(), enabled -> {
             if (enabled != null) {
@@ -71,9 +59,6 @@ public class EffectsFragment extends Fragment {
                 if (binding != null) binding.switch8D.setChecked(enabled);
                 ignoreSwitchEvents = false;
 
-                if (service != null) {
-                    service.set8DEnabled(enabled);
-                }
                 Log.d(TAG, "8D state: " + enabled);
             }
         });
@@ -83,9 +68,6 @@ public class EffectsFragment extends Fragment {
             if (enabled != null && binding != null) {
                 binding.switchBass.setChecked(enabled);
                 binding.sliderBassBoost.setEnabled(enabled);
-                if (service != null) {
-                    service.setBassEnabled(enabled);
-                }
             }
         });
 
@@ -93,9 +75,6 @@ public class EffectsFragment extends Fragment {
             if (boost != null && binding != null) {
                 binding.sliderBassBoost.setValue(boost);
                 binding.tvBassBoostValue.setText(String.format(Locale.getDefault(), "%+d dB", boost));
-                if (service != null && Boolean.TRUE.equals(viewModel.getIsBassEnabled().getValue())) {
-                    service.setBassBoost(boost);
-                }
             }
         });
 
@@ -104,9 +83,6 @@ public class EffectsFragment extends Fragment {
             if (enabled != null && binding != null) {
                 binding.switchEqualizer.setChecked(enabled);
                 enableEqualizerSliders(enabled);
-                if (service != null) {
-                    service.setEqualizerEnabled(enabled);
-                }
             }
         });
 
@@ -122,9 +98,6 @@ public class EffectsFragment extends Fragment {
             if (enabled != null && binding != null) {
                 binding.switchLoudness.setChecked(enabled);
                 binding.sliderLoudness.setEnabled(enabled);
-                if (service != null) {
-                    service.setLoudnessEnabled(enabled);
-                }
             }
         });
 
@@ -132,9 +105,6 @@ public class EffectsFragment extends Fragment {
             if (gain != null && binding != null) {
                 binding.sliderLoudness.setValue(gain);
                 binding.tvLoudnessValue.setText(String.format(Locale.getDefault(), "+%d dB", gain));
-                if (service != null && Boolean.TRUE.equals(viewModel.getIsLoudnessEnabled().getValue())) {
-                    service.setLoudnessGain(gain);
-                }
             }
         });
 
@@ -143,9 +113,6 @@ public class EffectsFragment extends Fragment {
             if (balance != null && binding != null) {
                 binding.sliderBalance.setValue(balance);
                 updateBalanceLabel(balance);
-                if (service != null && binding.switchBalance.isChecked()) {
-                    service.setBalance(balance);
-                }
             }
         });
 
@@ -154,9 +121,6 @@ public class EffectsFragment extends Fragment {
             if (speed != null && binding != null) {
                 binding.sliderSpeed.setValue(speed);
                 binding.tvSpeedValue.setText(String.format(Locale.getDefault(), "%.2fx", speed));
-                if (service != null) {
-                    service.setPlaybackSpeed(speed);
-                }
             }
         });
 
@@ -170,7 +134,6 @@ public class EffectsFragment extends Fragment {
                     disableControls();
                 } else {
                     enableControls();
-                    refreshAllEffects();
                 }
 
                 Log.d(TAG, "Processing: " + isProcessing);
@@ -189,7 +152,6 @@ public class EffectsFragment extends Fragment {
                     new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         if (binding != null) {
                             binding.cardProcessing.setVisibility(View.GONE);
-                            refreshAllEffects();
                         }
                     }, 1500);
                 }
@@ -207,9 +169,6 @@ public class EffectsFragment extends Fragment {
             Log.d(TAG, "8D switch toggled (user): " + isChecked);
 
             viewModel.set8DEnabled(isChecked);
-            if (service != null) {
-                service.set8DEnabled(isChecked);
-            }
 
             viewModel.triggerReprocessing();
         });
@@ -218,9 +177,6 @@ public class EffectsFragment extends Fragment {
         binding.switchBass.setOnCheckedChangeListener((buttonView, isChecked) -> {
             viewModel.setBassEnabled(isChecked);
             binding.sliderBassBoost.setEnabled(isChecked);
-            if (service != null) {
-                service.setBassEnabled(isChecked);
-            }
         });
 
         binding.sliderBassBoost.addOnChangeListener((slider, value, fromUser) -> {
@@ -228,9 +184,6 @@ public class EffectsFragment extends Fragment {
                 int dbValue = (int) value;
                 binding.tvBassBoostValue.setText(String.format(Locale.getDefault(), "%+d dB", dbValue));
                 viewModel.setBassBoost(dbValue);
-                if (service != null && binding.switchBass.isChecked()) {
-                    service.setBassBoost(dbValue);
-                }
             }
         });
 
@@ -238,9 +191,6 @@ public class EffectsFragment extends Fragment {
         binding.switchEqualizer.setOnCheckedChangeListener((buttonView, isChecked) -> {
             viewModel.setEqualizerEnabled(isChecked);
             enableEqualizerSliders(isChecked);
-            if (service != null) {
-                service.setEqualizerEnabled(isChecked);
-            }
         });
 
         setupBandSlider(binding.sliderBand1, binding.tvBand1Value, 0);
@@ -253,9 +203,6 @@ public class EffectsFragment extends Fragment {
         binding.switchLoudness.setOnCheckedChangeListener((buttonView, isChecked) -> {
             viewModel.setLoudnessEnabled(isChecked);
             binding.sliderLoudness.setEnabled(isChecked);
-            if (service != null) {
-                service.setLoudnessEnabled(isChecked);
-            }
         });
 
         binding.sliderLoudness.addOnChangeListener((slider, value, fromUser) -> {
@@ -263,9 +210,6 @@ public class EffectsFragment extends Fragment {
                 int gainValue = (int) value;
                 binding.tvLoudnessValue.setText(String.format(Locale.getDefault(), "+%d dB", gainValue));
                 viewModel.setLoudnessGain(gainValue);
-                if (service != null && binding.switchLoudness.isChecked()) {
-                    service.setLoudnessGain(gainValue);
-                }
             }
         });
 
@@ -276,9 +220,6 @@ public class EffectsFragment extends Fragment {
                 binding.sliderBalance.setValue(0);
                 binding.tvBalanceValue.setText("Center");
                 viewModel.setBalance(0);
-                if (service != null) {
-                    service.setBalance(0);
-                }
             }
             Log.d(TAG, "Balance toggle: " + (isChecked ? "ON" : "OFF"));
         });
@@ -288,9 +229,6 @@ public class EffectsFragment extends Fragment {
                 int balanceValue = (int) value;
                 updateBalanceLabel(balanceValue);
                 viewModel.setBalance(balanceValue);
-                if (service != null && binding.switchBalance.isChecked()) {
-                    service.setBalance(balanceValue);
-                }
             }
         });
 
@@ -303,9 +241,6 @@ public class EffectsFragment extends Fragment {
                 binding.sliderSpeed.setValue(1.0f);
                 binding.tvSpeedValue.setText("1.00x");
                 viewModel.setPlaybackSpeed(1.0f);
-                if (service != null) {
-                    service.setPlaybackSpeed(1.0f);
-                }
             }
             Log.d(TAG, "Speed toggle: " + (isChecked ? "ON" : "OFF"));
         });
@@ -314,9 +249,6 @@ public class EffectsFragment extends Fragment {
             if (fromUser) {
                 binding.tvSpeedValue.setText(String.format(Locale.getDefault(), "%.2fx", value));
                 viewModel.setPlaybackSpeed(value);
-                if (service != null && binding.switchSpeed.isChecked()) {
-                    service.setPlaybackSpeed(value);
-                }
             }
         });
     }
@@ -335,10 +267,6 @@ public class EffectsFragment extends Fragment {
                     case 3: viewModel.setEqBand4(dbValue); break;
                     case 4: viewModel.setEqBand5(dbValue); break;
                 }
-
-                if (service != null && binding != null && binding.switchEqualizer.isChecked()) {
-                    service.setEqBandGain(bandIndex, dbValue);
-                }
             }
         });
     }
@@ -348,9 +276,6 @@ public class EffectsFragment extends Fragment {
         if (gain != null) {
             slider.setValue(gain);
             valueText.setText(String.format(Locale.getDefault(), "%+d dB", gain));
-            if (service != null && Boolean.TRUE.equals(viewModel.getIsEqualizerEnabled().getValue())) {
-                service.setEqBandGain(bandIndex, gain);
-            }
         }
     }
 
@@ -412,145 +337,6 @@ public class EffectsFragment extends Fragment {
         binding.sliderSpeed.setEnabled(binding.switchSpeed.isChecked());
     }
 
-    private void refreshAllEffects() {
-        if (service == null || binding == null) return;
-
-        Log.d(TAG, "Refreshing all effects after 8D processing");
-
-        applyAllEffectsToService();
-
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            if (binding == null) return;
-
-            // Refresh Bass
-            Boolean bassEnabled = viewModel.getIsBassEnabled().getValue();
-            if (bassEnabled != null && bassEnabled) {
-                Integer bassBoost = viewModel.getBassBoost().getValue();
-                if (bassBoost != null) {
-                    binding.sliderBassBoost.setValue(bassBoost);
-                    binding.tvBassBoostValue.setText(String.format(Locale.getDefault(), "%+d dB", bassBoost));
-                }
-            }
-
-            // Refresh EQ
-            Boolean eqEnabled = viewModel.getIsEqualizerEnabled().getValue();
-            if (eqEnabled != null && eqEnabled) {
-                Integer band1 = viewModel.getEqBand1().getValue();
-                if (band1 != null) binding.sliderBand1.setValue(band1);
-
-                Integer band2 = viewModel.getEqBand2().getValue();
-                if (band2 != null) binding.sliderBand2.setValue(band2);
-
-                Integer band3 = viewModel.getEqBand3().getValue();
-                if (band3 != null) binding.sliderBand3.setValue(band3);
-
-                Integer band4 = viewModel.getEqBand4().getValue();
-                if (band4 != null) binding.sliderBand4.setValue(band4);
-
-                Integer band5 = viewModel.getEqBand5().getValue();
-                if (band5 != null) binding.sliderBand5.setValue(band5);
-            }
-
-            // Refresh Loudness
-            Boolean loudnessEnabled = viewModel.getIsLoudnessEnabled().getValue();
-            if (loudnessEnabled != null && loudnessEnabled) {
-                Integer loudnessGain = viewModel.getLoudnessGain().getValue();
-                if (loudnessGain != null) {
-                    binding.sliderLoudness.setValue(loudnessGain);
-                    binding.tvLoudnessValue.setText(String.format(Locale.getDefault(), "+%d dB", loudnessGain));
-                }
-            }
-
-            // Refresh Balance
-            if (binding.switchBalance.isChecked()) {
-                Integer balance = viewModel.getBalance().getValue();
-                if (balance != null) {
-                    binding.sliderBalance.setValue(balance);
-                    updateBalanceLabel(balance);
-                }
-            }
-
-            // Refresh Speed
-            if (binding.switchSpeed.isChecked()) {
-                Float speed = viewModel.getPlaybackSpeed().getValue();
-                if (speed != null) {
-                    binding.sliderSpeed.setValue(speed);
-                    binding.tvSpeedValue.setText(String.format(Locale.getDefault(), "%.2fx", speed));
-                }
-            }
-
-            Log.d(TAG, "All UI controls refreshed");
-        }, 200);
-    }
-
-    private void applyAllEffectsToService() {
-        if (service == null) return;
-
-        Boolean is8D = viewModel.getIs8DEnabled().getValue();
-        if (is8D != null) {
-            service.set8DEnabled(is8D);
-        }
-
-        Boolean bassEnabled = viewModel.getIsBassEnabled().getValue();
-        if (bassEnabled != null) {
-            service.setBassEnabled(bassEnabled);
-            if (bassEnabled) {
-                Integer bassBoost = viewModel.getBassBoost().getValue();
-                if (bassBoost != null) {
-                    service.setBassBoost(bassBoost);
-                }
-            }
-        }
-
-        Boolean eqEnabled = viewModel.getIsEqualizerEnabled().getValue();
-        if (eqEnabled != null) {
-            service.setEqualizerEnabled(eqEnabled);
-            if (eqEnabled) {
-                Integer band1 = viewModel.getEqBand1().getValue();
-                if (band1 != null) service.setEqBandGain(0, band1);
-
-                Integer band2 = viewModel.getEqBand2().getValue();
-                if (band2 != null) service.setEqBandGain(1, band2);
-
-                Integer band3 = viewModel.getEqBand3().getValue();
-                if (band3 != null) service.setEqBandGain(2, band3);
-
-                Integer band4 = viewModel.getEqBand4().getValue();
-                if (band4 != null) service.setEqBandGain(3, band4);
-
-                Integer band5 = viewModel.getEqBand5().getValue();
-                if (band5 != null) service.setEqBandGain(4, band5);
-            }
-        }
-
-        Boolean loudnessEnabled = viewModel.getIsLoudnessEnabled().getValue();
-        if (loudnessEnabled != null) {
-            service.setLoudnessEnabled(loudnessEnabled);
-            if (loudnessEnabled) {
-                Integer loudnessGain = viewModel.getLoudnessGain().getValue();
-                if (loudnessGain != null) {
-                    service.setLoudnessGain(loudnessGain);
-                }
-            }
-        }
-
-        if (binding != null && binding.switchBalance.isChecked()) {
-            Integer balance = viewModel.getBalance().getValue();
-            if (balance != null) {
-                service.setBalance(balance);
-            }
-        }
-
-        if (binding != null && binding.switchSpeed.isChecked()) {
-            Float speed = viewModel.getPlaybackSpeed().getValue();
-            if (speed != null) {
-                service.setPlaybackSpeed(speed);
-            }
-        }
-
-        Log.d(TAG, "All effects applied to service");
-    }
-
     @Override
     public void onDestroyView() {
         super.onDestroyView();
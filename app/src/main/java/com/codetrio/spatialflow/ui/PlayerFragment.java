@@ -6,12 +6,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.database.Cursor;
 import android.util.Log;
@@ -27,7 +29,9 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.codetrio.spatialflow.R;
+import com.codetrio.spatialflow.model.PlaybackClock;
 import com.codetrio.spatialflow.service.AudioPlaybackService;
+import com.codetrio.spatialflow.util.AlbumArtCache;
 import com.codetrio.spatialflow.util.AudioFileManager;
 import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
 import com.codetrio.spatialflow.viewmodel.PlayerSharedViewModel;
@@ -37,8 +41,13 @@ import com.google.android.material.slider.Slider;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textview.MaterialTextView;
 import com.arthenica.ffmpegkit.FFmpegKit;
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.ReturnCode;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PlayerFragment extends Fragment {
 
@@ -60,6 +69,11 @@ public class PlayerFragment extends Fragment {
     private MaterialButton btnChangeSong;
     private MaterialButton btnSavePreset;
 
+    // Extrapolates the playback clock while this screen is visible
+    private final Handler tickHandler = new Handler(Looper.getMainLooper());
+    private final Runnable positionTicker = this::renderPosition;
+    private PlaybackClock playbackClock = PlaybackClock.STOPPED;
+
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
@@ -124,10 +138,10 @@ public class PlayerFragment extends Fragment {
             }
         });
 
-        viewModel.getCurrentPosition().observe(getViewLifecycleOwner(), position -> {
-            if (position != null) {
-                seekBar.setValue(position);
-                tvCurrentTime.setText(formatTime(position));
+        viewModel.getPlaybackClock().observe(getViewLifecycleOwner(), clock -> {
+            if (clock != null) {
+                playbackClock = clock;
+                renderPosition();
             }
         });
 
@@ -180,12 +194,26 @@ public class PlayerFragment extends Fragment {
             Uri uri = Uri.fromFile(new File(path));
             viewModel.setSongUri(uri);
         });
+        sheet.setOnUpcomingSongsListener(paths -> {
+            List<Uri> uris = new ArrayList<>();
+            for (String path : paths) {
+                uris.add(Uri.fromFile(new File(path)));
+            }
+            viewModel.setUpcomingSongs(uris);
+        });
         sheet.show(getParentFragmentManager(), "song_picker");
     }
 
 
 
     private void loadSongMetadata(Uri uri) {
+        // Rotations and re-observes hit the cache, no second decode
+        AlbumArtCache.Entry cached = AlbumArtCache.get(uri);
+        if (cached != null) {
+            showSongMetadata(cached);
+            return;
+        }
+
         new Thread(() -> {
             try {
                 MediaMetadataRetriever retriever = new MediaMetadataRetriever();
@@ -195,12 +223,7 @@ public class PlayerFragment extends Fragment {
 
                 String title = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
                 String artist = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
-
-                byte[] art = retriever.getEmbeddedPicture();
-                Bitmap albumArt = null;
-                if (art != null) {
-                    albumArt = BitmapFactory.decodeByteArray(art, 0, art.length);
-                }
+                Bitmap albumArt = AlbumArtCache.decode(retriever.getEmbeddedPicture());
 
                 retriever.release();
 
@@ -215,19 +238,10 @@ public class PlayerFragment extends Fragment {
                     displayName = getFileNameFromUri(uri);
                 }
 
-                final String finalDisplayName = displayName;
-                final Bitmap finalAlbumArt = albumArt;
+                final AlbumArtCache.Entry entry = AlbumArtCache.put(uri, displayName, albumArt);
 
                 if (getActivity() != null) {
-                    getActivity().runOnUiThread(() -> {
-                        tvSongName.setText(finalDisplayName);
-                        if (finalAlbumArt != null) {
-                            ivAlbumArt.setImageBitmap(finalAlbumArt);
-                        } else {
-                            ivAlbumArt.setImageResource(R.drawable.default_album_art);
-                        }
-                        viewModel.updateSongMetadata(finalDisplayName, finalAlbumArt);
-                    });
+                    getActivity().runOnUiThread(() -> showSongMetadata(entry));
                 }
 
             } catch (Exception e) {
@@ -236,6 +250,37 @@ public class PlayerFragment extends Fragment {
         }).start();
     }
 
+    private void showSongMetadata(AlbumArtCache.Entry entry) {
+        if (tvSongName == null) return;
+        tvSongName.setText(entry.displayName);
+        if (entry.art != null) {
+            ivAlbumArt.setImageBitmap(entry.art);
+        } else {
+            ivAlbumArt.setImageResource(R.drawable.default_album_art);
+        }
+        viewModel.updateSongMetadata(entry.displayName, entry.art);
+    }
+
+    /**
+     * Shows the extrapolated position and, while playing and resumed,
+     * schedules itself for the next whole second of playback.
+     */
+    private void renderPosition() {
+        tickHandler.removeCallbacks(positionTicker);
+        if (seekBar == null) return;
+
+        long position = playbackClock.getPositionMs();
+        position = Math.max(0, Math.min(position, (long) seekBar.getValueTo()));
+        seekBar.setValue(position);
+        tvCurrentTime.setText(formatTime((int) position));
+
+        if (playbackClock.running && playbackClock.speed > 0 && isResumed()) {
+            long untilNextSecond = 1000 - position % 1000;
+            tickHandler.postDelayed(positionTicker,
+                    Math.max(16, (long) (untilNextSecond / playbackClock.speed)));
+        }
+    }
+
     private String formatTime(int milliseconds) {
         int seconds = (milliseconds / 1000) % 60;
         int minutes = (milliseconds / (1000 * 60)) % 60;
@@ -300,7 +345,7 @@ public class PlayerFragment extends Fragment {
 
         new Thread(() -> {
             try {
-                String inputPath = AudioFileManager.getRealPathFromURI(getContext(), currentUri);
+                String inputPath = AudioFileManager.getFFmpegInput(getContext(), currentUri);
                 if (inputPath == null) {
                     dismissSnackbarAndShow(processingSnackbar, "Could not access audio file", Snackbar.LENGTH_SHORT);
                     return;
@@ -308,7 +353,24 @@ public class PlayerFragment extends Fragment {
 
                 String fileName = "Spatial_" + getFileNameFromUri(currentUri);
                 File outputFile = AudioFileManager.createOutputFile(getContext(), fileName);
-                String outputPath = outputFile.getAbsolutePath();
+
+                // Android 10+: encode straight into the pending Downloads entry,
+                // no intermediate file in cache and no second copy
+                Uri pendingUri = null;
+                String outputPath;
+                FFmpegCommandBuilder.Profile profile;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    pendingUri = AudioFileManager.createPendingDownload(getContext(), outputFile.getName());
+                    if (pendingUri == null) {
+                        dismissSnackbarAndShow(processingSnackbar, "Failed to save audio", Snackbar.LENGTH_SHORT);
+                        return;
+                    }
+                    outputPath = FFmpegKitConfig.getSafParameterForWrite(getContext(), pendingUri);
+                    profile = FFmpegCommandBuilder.Profile.EXPORT_DIRECT;
+                } else {
+                    outputPath = outputFile.getAbsolutePath();
+                    profile = FFmpegCommandBuilder.Profile.EXPORT;
+                }
 
                 boolean enable8D = is8D != null && is8D;
                 boolean enableBass = isBass != null && isBass;
@@ -321,16 +383,38 @@ public class PlayerFragment extends Fragment {
                 String command = FFmpegCommandBuilder.build8D(
                         inputPath,
                         outputPath,
-                        0.2f
+                        0.2f,
+                        profile
                 );
 
                 Log.d(TAG, "Executing save command: " + command);
 
-                FFmpegKit.execute(command);
+                FFmpegSession session = FFmpegKit.execute(command);
+
+                boolean saved;
+                if (pendingUri != null) {
+                    saved = ReturnCode.isSuccess(session.getReturnCode());
+                    if (saved) {
+                        AudioFileManager.publishPendingDownload(getContext(), pendingUri);
+                    } else {
+                        AudioFileManager.discardPendingDownload(getContext(), pendingUri);
+                    }
+                } else {
+                    saved = outputFile.exists() && outputFile.length() > 0;
+                    if (saved) {
+                        AudioFileManager.scanFile(getContext(), outputFile);
+                    }
+                }
 
-                if (outputFile.exists() && outputFile.length() > 0) {
-                    Log.d(TAG, "File saved successfully: " + outputPath);
-                    AudioFileManager.scanFile(getContext(), outputFile);
+                if (saved) {
+                    Log.d(TAG, "File saved successfully: " + outputFile.getAbsolutePath());
+
+                    Integer songDuration = viewModel.getDuration().getValue();
+                    long bytes = pendingUri != null
+                            ? AudioFileManager.getSize(getContext(), pendingUri)
+                            : outputFile.length();
+                    FFmpegCommandBuilder.logRenderStats(profile, 1,
+                            session.getDuration(), songDuration != null ? songDuration : 0, bytes);
 
                     dismissSnackbarAndShowWithAction(
                             processingSnackbar,
@@ -339,7 +423,7 @@ public class PlayerFragment extends Fragment {
                             outputFile
                     );
                 } else {
-                    Log.e(TAG, "Output file was not created or is empty");
+                    Log.e(TAG, "Export failed: " + session.getReturnCode());
                     dismissSnackbarAndShow(processingSnackbar, "Failed to save audio", Snackbar.LENGTH_SHORT);
                 }
 
@@ -479,9 +563,24 @@ public class PlayerFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Re-anchors the clock, which also restarts the ticker
+        viewModel.refreshPlaybackClock();
+        renderPosition();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        tickHandler.removeCallbacks(positionTicker);
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        tickHandler.removeCallbacks(positionTicker);
         if (serviceBound) {
             requireContext().unbindService(serviceConnection);
             serviceBound = false;
@@ -22,13 +22,20 @@ import com.codetrio.spatialflow.update.UpdateManager;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.materialswitch.MaterialSwitch;
+import com.google.android.material.slider.Slider;
 import com.google.android.material.textview.MaterialTextView;
 
 public class SettingsFragment extends Fragment {
 
     private UpdateManager updateManager;
-    private static final String PREFS_NAME = "AppSettings";
+    public static final String PREFS_NAME = "AppSettings";
     private static final String KEY_DARK_MODE = "dark_mode";
+    public static final String KEY_REALTIME_8D = "realtime_8d";
+    public static final String KEY_SHARDED_RENDER = "sharded_render";
+    public static final String KEY_PRERENDER = "prerender_8d";
+    public static final String KEY_CROSSFADE_SECONDS = "crossfade_seconds";
+    // 8D render cache quota in GB, 0 = picked from free space
+    public static final String KEY_RENDER_CACHE_GB = "render_cache_gb";
 
     @Nullable
     @Override
@@ -55,6 +62,56 @@ public class SettingsFragment extends Fragment {
             );
         });
 
+        // ---------------------------
+        // REAL-TIME 8D ENGINE SWITCH
+        // ---------------------------
+        MaterialSwitch switchRealtime8D = view.findViewById(R.id.switchRealtime8D);
+        switchRealtime8D.setChecked(prefs.getBoolean(KEY_REALTIME_8D, false));
+        switchRealtime8D.setOnCheckedChangeListener((buttonView, isChecked) ->
+                prefs.edit().putBoolean(KEY_REALTIME_8D, isChecked).apply());
+
+        // ---------------------------
+        // CROSSFADE SLIDER
+        // ---------------------------
+        MaterialTextView tvCrossfadeValue = view.findViewById(R.id.tvCrossfadeValue);
+        Slider sliderCrossfade = view.findViewById(R.id.sliderCrossfade);
+        int crossfadeSeconds = prefs.getInt(KEY_CROSSFADE_SECONDS, 0);
+        sliderCrossfade.setValue(crossfadeSeconds);
+        tvCrossfadeValue.setText(formatCrossfade(crossfadeSeconds));
+        sliderCrossfade.addOnChangeListener((slider, value, fromUser) -> {
+            tvCrossfadeValue.setText(formatCrossfade((int) value));
+            if (fromUser) prefs.edit().putInt(KEY_CROSSFADE_SECONDS, (int) value).apply();
+        });
+
+        // ---------------------------
+        // MULTI-CORE RENDER SWITCH
+        // ---------------------------
+        MaterialSwitch switchShardedRender = view.findViewById(R.id.switchShardedRender);
+        switchShardedRender.setChecked(prefs.getBoolean(KEY_SHARDED_RENDER, true));
+        switchShardedRender.setOnCheckedChangeListener((buttonView, isChecked) ->
+                prefs.edit().putBoolean(KEY_SHARDED_RENDER, isChecked).apply());
+
+        // ---------------------------
+        // PRE-RENDER SWITCH
+        // ---------------------------
+        MaterialSwitch switchPreRender = view.findViewById(R.id.switchPreRender);
+        switchPreRender.setChecked(prefs.getBoolean(KEY_PRERENDER, true));
+        switchPreRender.setOnCheckedChangeListener((buttonView, isChecked) ->
+                prefs.edit().putBoolean(KEY_PRERENDER, isChecked).apply());
+
+        // ---------------------------
+        // RENDER CACHE SIZE SLIDER
+        // ---------------------------
+        MaterialTextView tvRenderCacheValue = view.findViewById(R.id.tvRenderCacheValue);
+        Slider sliderRenderCache = view.findViewById(R.id.sliderRenderCache);
+        int renderCacheGb = prefs.getInt(KEY_RENDER_CACHE_GB, 0);
+        sliderRenderCache.setValue(renderCacheGb);
+        tvRenderCacheValue.setText(formatRenderCache(renderCacheGb));
+        sliderRenderCache.addOnChangeListener((slider, value, fromUser) -> {
+            tvRenderCacheValue.setText(formatRenderCache((int) value));
+            if (fromUser) prefs.edit().putInt(KEY_RENDER_CACHE_GB, (int) value).apply();
+        });
+
         // ---------------------------
         // VERSION TEXT
         // ---------------------------
@@ -105,6 +162,22 @@ public class SettingsFragment extends Fragment {
         startActivity(intent);
     }
 
+    // ---------------------------
+    // CROSSFADE LABEL
+    // ---------------------------
+    private String formatCrossfade(int seconds) {
+        return seconds > 0 ? getString(R.string.setting_crossfade_seconds, seconds)
+                : getString(R.string.setting_crossfade_off);
+    }
+
+    // ---------------------------
+    // RENDER CACHE LABEL
+    // ---------------------------
+    private String formatRenderCache(int gb) {
+        return gb > 0 ? getString(R.string.setting_render_cache_gb, gb)
+                : getString(R.string.setting_render_cache_auto);
+    }
+
     // ---------------------------
     // WHAT'S NEW DIALOG
     // FIXED + FULL HTML SUPPORT
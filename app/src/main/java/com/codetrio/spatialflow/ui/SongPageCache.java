@@ -0,0 +1,161 @@
+package com.codetrio.spatialflow.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.codetrio.spatialflow.model.Song;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Window of materialized rows for the song picker. The list itself is only
+ * primitive arrays (a display order and the ranks in it that match the
+ * search); songs are materialized a page at a time on a background
+ * executor and at most {@link #MAX_PAGES} pages are kept, so memory stays
+ * flat however large the library is. Pages ahead in the scroll direction
+ * are fetched before they become visible.
+ *
+ * Must be used from the main thread, except {@link #loadPage}.
+ */
+public class SongPageCache {
+
+    public static final int PAGE_SIZE = 64;
+    // Visible rows plus a page of lookahead on both sides, with room to spare
+    private static final int MAX_PAGES = 8;
+
+    /**
+     * Materializes the song at a library position. Called on the executor.
+     */
+    public interface Source {
+        Song load(int position);
+    }
+
+    public interface Listener {
+        void onRowsLoaded(int firstRow, int count);
+    }
+
+    /** One generation of rows: what to show, in which order. */
+    public static final class Rows {
+        public final Source source;
+        public final int[] order;
+        public final int[] ranks;
+
+        public Rows(Source source, int[] order, int[] ranks) {
+            this.source = source;
+            this.order = order;
+            this.ranks = ranks;
+        }
+
+        public int size() {
+            return ranks.length;
+        }
+
+        public int positionOf(int row) {
+            return order[ranks[row]];
+        }
+    }
+
+    private final Executor executor;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<Integer, Song[]> pages = new LinkedHashMap<Integer, Song[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Song[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+    private Rows rows;
+
+    public SongPageCache(Executor executor, Listener listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Switches to new rows. Pages built for them in the background (e.g. the
+     * visible ones) can be handed in so nothing flashes empty.
+     */
+    public void setRows(Rows rows, Map<Integer, Song[]> preloaded) {
+        this.rows = rows;
+        pages.clear();
+        loading.clear();
+        if (preloaded != null) pages.putAll(preloaded);
+    }
+
+    public int size() {
+        return rows != null ? rows.size() : 0;
+    }
+
+    /**
+     * @return the song at {@code row}, or null while its page is loading
+     */
+    public Song get(int row) {
+        int page = row / PAGE_SIZE;
+        Song[] songs = pages.get(page);
+        if (songs == null) {
+            request(page);
+            return null;
+        }
+        return songs[row % PAGE_SIZE];
+    }
+
+    /**
+     * Materializes one row now, for the few rows needed outside binding.
+     */
+    public Song getNow(int row) {
+        Song song = get(row);
+        return song != null ? song : rows.source.load(rows.positionOf(row));
+    }
+
+    /**
+     * Makes sure the visible pages are loaded and fetches one page ahead in
+     * the scroll direction.
+     *
+     * @param direction Positive when scrolling down, negative when up
+     */
+    public void onVisibleRange(int firstRow, int lastRow, int direction) {
+        if (rows == null || firstRow < 0) return;
+        int firstPage = firstRow / PAGE_SIZE;
+        int lastPage = lastRow / PAGE_SIZE;
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (!pages.containsKey(page)) request(page);
+        }
+        int ahead = direction > 0 ? lastPage + 1 : direction < 0 ? firstPage - 1 : -1;
+        if (ahead >= 0 && ahead * PAGE_SIZE < rows.size() && !pages.containsKey(ahead)) {
+            request(ahead);
+        }
+    }
+
+    private void request(int page) {
+        if (rows == null || !loading.add(page)) return;
+        final Rows requested = rows;
+        executor.execute(() -> {
+            final Song[] songs = loadPage(requested, page);
+            mainHandler.post(() -> {
+                if (requested != rows) return;
+                loading.remove(page);
+                pages.put(page, songs);
+                listener.onRowsLoaded(page * PAGE_SIZE, songs.length);
+            });
+        });
+    }
+
+    /**
+     * Materializes one page of {@code rows}. Any thread.
+     */
+    public static Song[] loadPage(Rows rows, int page) {
+        int first = page * PAGE_SIZE;
+        int count = Math.max(0, Math.min(PAGE_SIZE, rows.size() - first));
+        Song[] songs = new Song[count];
+        for (int i = 0; i < count; i++) {
+            songs[i] = rows.source.load(rows.positionOf(first + i));
+        }
+        return songs;
+    }
+}
@@ -2,10 +2,10 @@ package com.codetrio.spatialflow.ui;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -21,15 +21,30 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.codetrio.spatialflow.R;
+import com.codetrio.spatialflow.model.Song;
+import com.codetrio.spatialflow.model.SongTable;
+import com.codetrio.spatialflow.service.ExportQueue;
+import com.codetrio.spatialflow.service.ExportQueueService;
+import com.codetrio.spatialflow.service.LibraryIndex;
+import com.codetrio.spatialflow.util.SongOrders;
+import com.codetrio.spatialflow.util.SongSearchIndex;
+import com.google.android.material.button.MaterialButton;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
+import com.google.android.material.checkbox.MaterialCheckBox;
 import com.google.android.material.chip.ChipGroup;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textview.MaterialTextView;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SongPickerBottomSheet extends BottomSheetDialogFragment {
 
@@ -37,14 +52,29 @@ public class SongPickerBottomSheet extends BottomSheetDialogFragment {
         void onSongSelected(String title, String artist, String path);
     }
 
+    public interface OnUpcomingSongsListener {
+        void onUpcomingSongs(List<String> paths);
+    }
+
+    // Songs after the picked one in the list, queued to play next
+    private static final int UPCOMING_SONGS = 50;
+
     private OnSongSelectedListener listener;
+    private OnUpcomingSongsListener upcomingListener;
     private SongsAdapter adapter;
-    private List<SongItem> allSongs;
+    private LibraryIndex libraryIndex;
+    private final LibraryIndex.Listener libraryListener = songs -> {
+        if (adapter != null) adapter.setSongs(songs);
+    };
 
     public void setOnSongSelectedListener(OnSongSelectedListener listener) {
         this.listener = listener;
     }
 
+    public void setOnUpcomingSongsListener(OnUpcomingSongsListener listener) {
+        this.upcomingListener = listener;
+    }
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -61,15 +91,34 @@ public class SongPickerBottomSheet extends BottomSheetDialogFragment {
         TextInputEditText etSearch = view.findViewById(R.id.etSearch);
         ChipGroup chipGroupSort = view.findViewById(R.id.chipGroupSort);
         View btnClose = view.findViewById(R.id.btnCancel);
+        MaterialButton btnExportSelected = view.findViewById(R.id.btnExportSelected);
 
         rvSongs.setLayoutManager(new LinearLayoutManager(getContext()));
 
-        allSongs = loadSongs(requireContext());
-        adapter = new SongsAdapter(allSongs, (title, artist, path) -> {
+        // Served from memory, the index keeps itself in sync in the background
+        libraryIndex = LibraryIndex.getInstance(requireContext());
+        adapter = new SongsAdapter(libraryIndex.getSongs(), (title, artist, path, row) -> {
             if (listener != null) listener.onSongSelected(title, artist, path);
+            if (upcomingListener != null) {
+                upcomingListener.onUpcomingSongs(adapter.getPathsAfter(row, UPCOMING_SONGS));
+            }
             dismiss();
         });
+        adapter.setOnSelectionChangedListener(count -> {
+            btnExportSelected.setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+            btnExportSelected.setText("Export " + count + " in 8D");
+        });
         rvSongs.setAdapter(adapter);
+        libraryIndex.addListener(libraryListener);
+        rvSongs.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager == null) return;
+                adapter.onVisibleRange(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition(), dy);
+            }
+        });
 
         // --- Search Logic ---
         etSearch.addTextChangedListener(new TextWatcher() {
@@ -95,111 +144,275 @@ public class SongPickerBottomSheet extends BottomSheetDialogFragment {
         });
 
         btnClose.setOnClickListener(v -> dismiss());
+        btnExportSelected.setOnClickListener(v -> exportSelected());
 
         return view;
     }
 
-    private List<SongItem> loadSongs(Context context) {
-        List<SongItem> result = new ArrayList<>();
-        Uri contentUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-        String[] projection = {
-                MediaStore.Audio.Media._ID,
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST,
-                MediaStore.Audio.Media.ALBUM_ID,
-                MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.Media.DATE_ADDED
-        };
-
-        try (Cursor cursor = context.getContentResolver().query(contentUri, projection, null, null, MediaStore.Audio.Media.TITLE + " ASC")) {
-            if (cursor != null) {
-                int idIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                int titleIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                int artistIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                int albumIdIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-                int dataIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                int dateIdx = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
-
-                while (cursor.moveToNext()) {
-                    String path = cursor.getString(dataIdx);
-                    if (path == null || !(new File(path).exists())) continue;
-
-                    result.add(new SongItem(
-                            cursor.getLong(idIdx),
-                            cursor.getString(titleIdx),
-                            cursor.getString(artistIdx),
-                            cursor.getLong(albumIdIdx),
-                            path,
-                            cursor.getLong(dateIdx)
-                    ));
-                }
-            }
-        }
-        return result;
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (libraryIndex != null) libraryIndex.removeListener(libraryListener);
+        if (adapter != null) adapter.release();
     }
 
-    // --- Static Model ---
-    private static class SongItem {
-        final long id, albumId, dateAdded;
-        final String title, artist, path;
-
-        SongItem(long id, String title, String artist, long albumId, String path, long dateAdded) {
-            this.id = id;
-            this.title = title;
-            this.artist = artist;
-            this.albumId = albumId;
-            this.path = path;
-            this.dateAdded = dateAdded;
+    // --- Batch Export ---
+    private void exportSelected() {
+        List<Uri> sources = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Song item : adapter.getSelected()) {
+            File file = new File(item.path);
+            sources.add(Uri.fromFile(file));
+            names.add(file.getName());
         }
+        if (sources.isEmpty()) return;
+
+        Context context = requireContext().getApplicationContext();
+        ExportQueue.getInstance(context).enqueue(sources, names);
+        ExportQueueService.start(context);
+        dismiss();
     }
 
     // --- Optimized Adapter ---
     private static class SongsAdapter extends RecyclerView.Adapter<SongsAdapter.VH> {
-        interface OnClick { void onClick(String title, String artist, String path); }
-
-        private final List<SongItem> originalList;
-        private final List<SongItem> filteredList;
+        interface OnClick { void onClick(String title, String artist, String path, int row); }
+        interface OnSelectionChanged { void onSelectionChanged(int count); }
+
+        private static final long SEARCH_DEBOUNCE_MS = 120;
+
+        private SongTable library;
+        private String query = "";
+        private int sortMode = SongOrders.LIBRARY;
+
+        // What is shown: library, sort order and the ranks in that order that match.
+        // Only these arrays cover every row, songs are materialized a page at a time.
+        private final SongPageCache pages;
+        private SongPageCache.Rows shownRows;
+        private SongTable shownLibrary;
+        private int shownSortMode = SongOrders.LIBRARY;
+        // Newest request, older results arriving late are dropped
+        private volatile int requestId = 0;
+        // Last visible rows, so a new result arrives with those pages loaded
+        private volatile int visibleFirst = 0;
+        private volatile int visibleLast = 0;
+
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        private final Runnable submitSearch = this::submitSearch;
+        private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable ->
+                new Thread(runnable, "SongSearch"));
+        // Separate from the search thread, so scrolling never waits on an index rebuild
+        private final ExecutorService pageExecutor = Executors.newSingleThreadExecutor(runnable ->
+                new Thread(runnable, "SongPages"));
+
+        // Search thread only, rebuilt once per library version
+        private SongTable workerLibrary;
+        private SongSearchIndex workerIndex;
+        private SongOrders workerOrders;
         private final OnClick click;
+        // Long-press starts multi-select for batch export
+        private final Set<Long> selectedIds = new HashSet<>();
+        private OnSelectionChanged selectionChanged;
 
-        SongsAdapter(List<SongItem> songs, OnClick click) {
-            this.originalList = songs;
-            this.filteredList = new ArrayList<>(songs);
+        SongsAdapter(SongTable songs, OnClick click) {
+            this.library = songs;
+            this.shownLibrary = songs;
             this.click = click;
+            int[] all = allPositions(songs.size());
+            this.shownRows = new SongPageCache.Rows(songs::get, all, all);
+            this.pages = new SongPageCache(pageExecutor, this::notifyItemRangeChanged);
+            pages.setRows(shownRows, null);
+            rebuildIndex();
         }
 
-        @SuppressLint("NotifyDataSetChanged")
-        void filter(String query) {
-            filteredList.clear();
-            if (query.isEmpty()) {
-                filteredList.addAll(originalList);
+        void setOnSelectionChangedListener(OnSelectionChanged listener) {
+            this.selectionChanged = listener;
+        }
+
+        List<String> getPathsAfter(int row, int count) {
+            List<String> paths = new ArrayList<>();
+            for (int next = row + 1; next < pages.size() && paths.size() < count; next++) {
+                paths.add(pages.getNow(next).path);
+            }
+            return paths;
+        }
+
+        List<Song> getSelected() {
+            int[] rows = new int[selectedIds.size()];
+            int count = 0;
+            for (long id : selectedIds) {
+                int row = library.rowOf(id);
+                if (row >= 0) rows[count++] = row;
+            }
+            // In library order
+            Arrays.sort(rows, 0, count);
+            List<Song> selected = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) selected.add(library.get(rows[i]));
+            return selected;
+        }
+
+        private void toggleSelection(Song item, int position) {
+            if (!selectedIds.remove(item.id)) selectedIds.add(item.id);
+            if (selectedIds.size() <= 1) {
+                // Entering or leaving selection mode shows/hides every checkbox
+                notifyItemRangeChanged(0, getItemCount());
             } else {
-                String lowerQuery = query.toLowerCase().trim();
-                for (SongItem item : originalList) {
-                    if ((item.title != null && item.title.toLowerCase().contains(lowerQuery)) ||
-                            (item.artist != null && item.artist.toLowerCase().contains(lowerQuery))) {
-                        filteredList.add(item);
-                    }
-                }
+                notifyItemChanged(position);
             }
-            notifyDataSetChanged();
+            if (selectionChanged != null) selectionChanged.onSelectionChanged(selectedIds.size());
+        }
+
+        /**
+         * Loads the pages on screen and the next one in the scroll direction.
+         */
+        void onVisibleRange(int first, int last, int direction) {
+            if (first < 0) return;
+            visibleFirst = first;
+            visibleLast = last;
+            pages.onVisibleRange(first, last, direction);
+        }
+
+        /**
+         * Searches off the main thread once typing pauses for
+         * {@link #SEARCH_DEBOUNCE_MS}.
+         */
+        void filter(String query) {
+            this.query = query;
+            mainHandler.removeCallbacks(submitSearch);
+            mainHandler.postDelayed(submitSearch, SEARCH_DEBOUNCE_MS);
+        }
+
+        /**
+         * The library changed while the picker is open; keeps the search.
+         */
+        void setSongs(SongTable songs) {
+            library = songs;
+            selectedIds.removeIf(id -> songs.rowOf(id) < 0);
+            rebuildIndex();
+            if (selectionChanged != null) selectionChanged.onSelectionChanged(selectedIds.size());
         }
 
-        @SuppressLint("NotifyDataSetChanged")
         void sortByName() {
-            Collections.sort(filteredList, (a, b) -> a.title.compareToIgnoreCase(b.title));
-            notifyDataSetChanged();
+            sortMode = SongOrders.NAME;
+            submitSearch();
         }
 
-        @SuppressLint("NotifyDataSetChanged")
         void sortByArtist() {
-            Collections.sort(filteredList, (a, b) -> a.artist.compareToIgnoreCase(b.artist));
-            notifyDataSetChanged();
+            sortMode = SongOrders.ARTIST;
+            submitSearch();
         }
 
-        @SuppressLint("NotifyDataSetChanged")
         void sortByDate() {
-            Collections.sort(filteredList, (a, b) -> Long.compare(b.dateAdded, a.dateAdded));
-            notifyDataSetChanged();
+            sortMode = SongOrders.DATE;
+            submitSearch();
+        }
+
+        void release() {
+            mainHandler.removeCallbacks(submitSearch);
+            searchExecutor.shutdownNow();
+            pageExecutor.shutdownNow();
+        }
+
+        // --- Background search ---
+
+        /**
+         * Indexes a new library version and precomputes its sort orders,
+         * so searching and sorting later only walk arrays.
+         */
+        private void rebuildIndex() {
+            final int id = ++requestId;
+            final SongTable songs = library;
+            final String q = query;
+            final int mode = sortMode;
+            searchExecutor.execute(() -> {
+                workerLibrary = songs;
+                workerIndex = new SongSearchIndex(songs);
+                workerOrders = new SongOrders(songs);
+                runSearch(id, q, mode);
+            });
+        }
+
+        private void submitSearch() {
+            mainHandler.removeCallbacks(submitSearch);
+            final int id = ++requestId;
+            final String q = query;
+            final int mode = sortMode;
+            searchExecutor.execute(() -> runSearch(id, q, mode));
+        }
+
+        // Search thread
+        private void runSearch(int id, String q, int mode) {
+            if (workerIndex == null || id != requestId) return;
+            final SongTable songs = workerLibrary;
+            final int[] order = workerOrders.get(mode);
+            final SongPageCache.Rows rows = new SongPageCache.Rows(songs::get, order,
+                    workerIndex.search(q, order));
+
+            // Rows on screen are ready with the result instead of flashing empty
+            final Map<Integer, Song[]> visible = new HashMap<>();
+            int lastPage = Math.min(visibleLast, rows.size() - 1) / SongPageCache.PAGE_SIZE;
+            for (int page = visibleFirst / SongPageCache.PAGE_SIZE; page <= lastPage; page++) {
+                visible.put(page, SongPageCache.loadPage(rows, page));
+            }
+            mainHandler.post(() -> {
+                if (id == requestId) publish(songs, mode, rows, visible);
+            });
+        }
+
+        @SuppressLint("NotifyDataSetChanged")
+        private void publish(SongTable songs, int mode, SongPageCache.Rows rows,
+                             Map<Integer, Song[]> visible) {
+            int[] old = shownRows.ranks;
+            boolean sameOrder = songs == shownLibrary && mode == shownSortMode;
+            shownLibrary = songs;
+            shownSortMode = mode;
+            shownRows = rows;
+            pages.setRows(rows, visible);
+            if (sameOrder) {
+                dispatchDiff(old, rows.ranks);
+            } else {
+                // Reordered or new library, nothing to diff against
+                notifyDataSetChanged();
+            }
+        }
+
+        /**
+         * Both arrays are ascending ranks in the same order of the same
+         * library, so one merge pass yields the exact removals and insertions.
+         */
+        private void dispatchDiff(int[] oldPositions, int[] newPositions) {
+            int i = 0;
+            int j = 0;
+            int adapterPosition = 0;
+            while (i < oldPositions.length || j < newPositions.length) {
+                if (i < oldPositions.length && j < newPositions.length
+                        && oldPositions[i] == newPositions[j]) {
+                    i++;
+                    j++;
+                    adapterPosition++;
+                } else if (j >= newPositions.length
+                        || (i < oldPositions.length && oldPositions[i] < newPositions[j])) {
+                    int start = i;
+                    while (i < oldPositions.length
+                            && (j >= newPositions.length || oldPositions[i] < newPositions[j])) {
+                        i++;
+                    }
+                    notifyItemRangeRemoved(adapterPosition, i - start);
+                } else {
+                    int start = j;
+                    while (j < newPositions.length
+                            && (i >= oldPositions.length || newPositions[j] < oldPositions[i])) {
+                        j++;
+                    }
+                    notifyItemRangeInserted(adapterPosition, j - start);
+                    adapterPosition += j - start;
+                }
+            }
+        }
+
+        private static int[] allPositions(int count) {
+            int[] positions = new int[count];
+            for (int i = 0; i < count; i++) positions[i] = i;
+            return positions;
         }
 
         @NonNull
@@ -210,7 +423,22 @@ public class SongPickerBottomSheet extends BottomSheetDialogFragment {
 
         @Override
         public void onBindViewHolder(@NonNull VH holder, int position) {
-            SongItem s = filteredList.get(position);
+            boolean selecting = !selectedIds.isEmpty();
+            holder.cbSelected.setVisibility(selecting ? View.VISIBLE : View.GONE);
+
+            Song s = pages.get(position);
+            if (s == null) {
+                // Page still loading, rebound once it arrives
+                holder.tvTitle.setText("");
+                holder.tvArtist.setText("");
+                Glide.with(holder.ivAlbumArt.getContext()).clear(holder.ivAlbumArt);
+                holder.ivAlbumArt.setImageResource(R.drawable.default_album_art);
+                holder.cbSelected.setChecked(false);
+                holder.itemView.setOnClickListener(null);
+                holder.itemView.setOnLongClickListener(null);
+                return;
+            }
+
             holder.tvTitle.setText(s.title != null ? s.title : "Unknown Title");
             holder.tvArtist.setText(s.artist != null ? s.artist : "Unknown Artist");
 
@@ -225,21 +453,35 @@ public class SongPickerBottomSheet extends BottomSheetDialogFragment {
                     .centerCrop()
                     .into(holder.ivAlbumArt);
 
-            holder.itemView.setOnClickListener(v -> click.onClick(s.title, s.artist, s.path));
+            holder.cbSelected.setChecked(selectedIds.contains(s.id));
+
+            holder.itemView.setOnClickListener(v -> {
+                if (selectedIds.isEmpty()) {
+                    click.onClick(s.title, s.artist, s.path, holder.getBindingAdapterPosition());
+                } else {
+                    toggleSelection(s, holder.getBindingAdapterPosition());
+                }
+            });
+            holder.itemView.setOnLongClickListener(v -> {
+                toggleSelection(s, holder.getBindingAdapterPosition());
+                return true;
+            });
         }
 
         @Override
-        public int getItemCount() { return filteredList.size(); }
+        public int getItemCount() { return pages.size(); }
 
         static class VH extends RecyclerView.ViewHolder {
             ImageView ivAlbumArt;
             MaterialTextView tvTitle, tvArtist;
+            MaterialCheckBox cbSelected;
 
             VH(@NonNull View itemView) {
                 super(itemView);
                 ivAlbumArt = itemView.findViewById(R.id.ivAlbumArt);
                 tvTitle = itemView.findViewById(R.id.tvTitle);
                 tvArtist = itemView.findViewById(R.id.tvArtist);
+                cbSelected = itemView.findViewById(R.id.cbSelected);
             }
         }
     }
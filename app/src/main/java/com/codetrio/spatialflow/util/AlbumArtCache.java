@@ -0,0 +1,108 @@
+package com.codetrio.spatialflow.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Decoded album art, one instance per track, shared by the player screen,
+ * the notification and the media session. Embedded pictures are decoded
+ * once, straight down to {@link #ART_SIZE_PX} square, instead of at full
+ * resolution (a 3000x3000 cover is ~36 MB as ARGB).
+ */
+public final class AlbumArtCache {
+
+    private static final String TAG = "AlbumArtCache";
+
+    /** Edge of the square art handed out; enough for the player view and the lock screen. */
+    public static final int ART_SIZE_PX = 512;
+
+    // In KB; a 512x512 ARGB cover is 1 MB
+    private static final int MAX_KB = (int) Math.min(
+            Runtime.getRuntime().maxMemory() / 1024 / 16, 16 * 1024);
+
+    public static final class Entry {
+        public final String displayName;
+        public final Bitmap art;   // null if the track has none
+
+        Entry(String displayName, Bitmap art) {
+            this.displayName = displayName;
+            this.art = art;
+        }
+    }
+
+    private static final LruCache<Uri, Entry> cache = new LruCache<Uri, Entry>(MAX_KB) {
+        @Override
+        protected int sizeOf(Uri key, Entry entry) {
+            return entry.art != null ? Math.max(1, entry.art.getAllocationByteCount() / 1024) : 1;
+        }
+    };
+
+    private AlbumArtCache() { }
+
+    public static Entry get(Uri uri) {
+        return uri != null ? cache.get(uri) : null;
+    }
+
+    public static Entry put(Uri uri, String displayName, Bitmap art) {
+        Entry entry = new Entry(displayName, art);
+        cache.put(uri, entry);
+        return entry;
+    }
+
+    /**
+     * Decodes an embedded picture to an {@link #ART_SIZE_PX} square,
+     * center-cropped. The bounds are read first so the full-size image is
+     * never allocated. Call off the main thread.
+     *
+     * @return null if {@code picture} is null or not an image
+     */
+    public static Bitmap decode(byte[] picture) {
+        if (picture == null) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Embedded picture is not a decodable image");
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, ART_SIZE_PX);
+        Bitmap sampled = BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        if (sampled == null) return null;
+
+        return toSquare(sampled, ART_SIZE_PX);
+    }
+
+    /**
+     * Center-crops {@code bitmap} to a square and scales it to at most
+     * {@code size}; returns it unchanged if it already fits.
+     */
+    public static Bitmap toSquare(Bitmap bitmap, int size) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int edge = Math.min(width, height);
+        if (width == height && edge <= size) return bitmap;
+
+        Bitmap squared = Bitmap.createBitmap(bitmap, (width - edge) / 2, (height - edge) / 2, edge, edge);
+        if (edge <= size) return squared;
+        return Bitmap.createScaledBitmap(squared, size, size, true);
+    }
+
+    /**
+     * Largest power of two that keeps the shorter side at or above
+     * {@code target}.
+     */
+    static int sampleSizeFor(int width, int height, int target) {
+        int shorter = Math.min(width, height);
+        int sample = 1;
+        while (shorter / (sample * 2) >= target) {
+            sample *= 2;
+        }
+        return sample;
+    }
+}
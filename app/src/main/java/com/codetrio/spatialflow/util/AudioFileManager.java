@@ -4,69 +4,110 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
-import android.provider.OpenableColumns;
 import android.util.Log;
 
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AudioFileManager {
 
     private static final String TAG = "AudioFileManager";
 
-    public static String getRealPathFromURI(Context context, Uri uri) {
-        if (uri == null) return null;
-
-        try {
-            String fileName = getFileName(context, uri);
-            File tempFile = new File(context.getCacheDir(),
-                    "temp_" + System.currentTimeMillis() + "_" + fileName);
+    // Direct paths resolved so far, per URI; "" means there is none
+    private static final Map<Uri, String> directPaths = new ConcurrentHashMap<>();
 
-            try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                 FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+    /**
+     * Returns a readable file path behind {@code uri} without copying
+     * anything, or null if there is none (e.g. a SAF document). Resolved
+     * once per URI for the lifetime of the process.
+     */
+    public static String getDirectPath(Context context, Uri uri) {
+        if (uri == null) return null;
 
-                if (inputStream == null) {
-                    Log.e(TAG, "Cannot open input stream from URI");
-                    return null;
-                }
+        String cached = directPaths.get(uri);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
 
-                byte[] buffer = new byte[8192];
-                int read;
-                while ((read = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, read);
+        String path = null;
+        if ("file".equals(uri.getScheme())) {
+            path = uri.getPath();
+        } else if ("content".equals(uri.getScheme())) {
+            try (Cursor cursor = context.getContentResolver().query(uri,
+                    new String[]{MediaStore.MediaColumns.DATA}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int dataIndex = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
+                    if (dataIndex >= 0) path = cursor.getString(dataIndex);
                 }
+            } catch (Exception e) {
+                Log.w(TAG, "No data column for " + uri + ": " + e.getMessage());
             }
+        }
 
-            return tempFile.getAbsolutePath();
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error extracting file from URI: " + e.getMessage(), e);
-            return null;
+        if (path != null && !new File(path).canRead()) {
+            path = null;
         }
+
+        directPaths.put(uri, path != null ? path : "");
+        Log.d(TAG, "Resolved " + uri + " -> " + (path != null ? path : "file descriptor"));
+        return path;
     }
 
-    public static File createOutputFile(Context context, String fileName) {
-        if (!fileName.toLowerCase().endsWith(".m4a")) {
-            fileName = fileName + ".m4a";
+    /**
+     * Returns an FFmpeg input for {@code uri}: the direct path if there is
+     * one, otherwise an FFmpegKit SAF parameter backed by a file descriptor.
+     * SAF parameters are closed after their session, so call this once per
+     * FFmpeg execution.
+     */
+    public static String getFFmpegInput(Context context, Uri uri) {
+        String path = getDirectPath(context, uri);
+        if (path != null) return path;
+        if (uri == null) return null;
+        return FFmpegKitConfig.getSafParameterForRead(context, uri);
+    }
+
+    /**
+     * @return duration of {@code uri} in milliseconds, or 0 if unknown
+     */
+    public static long readDuration(Context context, Uri uri) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration != null ? Long.parseLong(duration) : 0;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot read duration of " + uri + ": " + e.getMessage());
+            return 0;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException | RuntimeException ignored) {
+            }
         }
+    }
 
-        String cleanName = fileName.replaceAll("[^a-zA-Z0-9._-]", "_");
+    public static File createOutputFile(Context context, String fileName) {
+        String cleanName = cleanOutputName(fileName);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            // Android 10+ - Create temp file in cache for FFmpeg processing
-            File tempDir = new File(context.getCacheDir(), "SpatialFlow_output");
-            if (!tempDir.exists()) tempDir.mkdirs();
-
-            File tempFile = new File(tempDir, cleanName);
-            Log.d(TAG, "Temp output file for processing: " + tempFile.getAbsolutePath());
-            return tempFile;
+            // Android 10+ - Output is encoded into a pending MediaStore entry
+            // through its descriptor (see createPendingDownload), this is
+            // only where it will show up
+            File downloadsDir = new File(Environment.getExternalStoragePublicDirectory(
+                    Environment.DIRECTORY_DOWNLOADS), "SpatialFlow");
+            return new File(downloadsDir, cleanName);
         } else {
             // Android 9 and below - Direct file access to Downloads/SpatialFlow
             File downloadsDir = new File(Environment.getExternalStoragePublicDirectory(
@@ -79,6 +120,72 @@ public class AudioFileManager {
         }
     }
 
+    private static String cleanOutputName(String fileName) {
+        if (!fileName.toLowerCase().endsWith(".m4a")) {
+            fileName = fileName + ".m4a";
+        }
+        return fileName.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+    /**
+     * Android 10+: inserts a pending Downloads/SpatialFlow entry that FFmpeg
+     * encodes into directly through its file descriptor, with the
+     * {@link FFmpegCommandBuilder.Profile#EXPORT_DIRECT} profile.
+     *
+     * @return item Uri, or null if MediaStore refused the insert
+     */
+    public static Uri createPendingDownload(Context context, String fileName) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return null;
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Downloads.DISPLAY_NAME, cleanOutputName(fileName));
+        values.put(MediaStore.Downloads.MIME_TYPE, "audio/mp4");
+        values.put(MediaStore.Downloads.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS + "/SpatialFlow");
+        values.put(MediaStore.Downloads.IS_PENDING, 1);
+
+        Uri collection = MediaStore.Downloads.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        Uri itemUri = context.getContentResolver().insert(collection, values);
+        if (itemUri == null) {
+            Log.e(TAG, "Failed to create MediaStore entry");
+        }
+        return itemUri;
+    }
+
+    /**
+     * Clears IS_PENDING so the finished export becomes visible.
+     */
+    public static void publishPendingDownload(Context context, Uri itemUri) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Downloads.IS_PENDING, 0);
+        context.getContentResolver().update(itemUri, values, null, null);
+        Log.d(TAG, "Published " + itemUri);
+    }
+
+    /**
+     * @return size of the content behind {@code uri}, or -1 if unknown
+     */
+    public static long getSize(Context context, Uri uri) {
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r")) {
+            return pfd != null ? pfd.getStatSize() : -1;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot stat " + uri + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Removes a pending entry whose export failed.
+     */
+    public static void discardPendingDownload(Context context, Uri itemUri) {
+        try {
+            context.getContentResolver().delete(itemUri, null, null);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to delete pending entry: " + e.getMessage());
+        }
+    }
+
     public static void scanFile(Context context, File file) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             // Copy to MediaStore Downloads for Android 10+
@@ -102,75 +209,49 @@ public class AudioFileManager {
             return;
         }
 
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Downloads.DISPLAY_NAME, sourceFile.getName());
-        values.put(MediaStore.Downloads.MIME_TYPE, "audio/mp4");
-
-        // FIXED: Use Downloads collection with SpatialFlow subfolder
-        values.put(MediaStore.Downloads.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS + "/SpatialFlow");
-
-        values.put(MediaStore.Downloads.IS_PENDING, 1);
-
-        ContentResolver resolver = context.getContentResolver();
-
-        // FIXED: Use Downloads collection instead of Audio
-        Uri collection;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            collection = MediaStore.Downloads.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
-        } else {
-            collection = MediaStore.Downloads.EXTERNAL_CONTENT_URI;
-        }
-
-        Uri itemUri = resolver.insert(collection, values);
-
+        Uri itemUri = createPendingDownload(context, sourceFile.getName());
         if (itemUri == null) {
-            Log.e(TAG, "Failed to create MediaStore entry");
             return;
         }
 
-        try (InputStream in = new java.io.FileInputStream(sourceFile);
-             OutputStream out = resolver.openOutputStream(itemUri)) {
-
-            if (out == null) {
-                Log.e(TAG, "Failed to open output stream");
-                return;
-            }
-
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-            }
-
-            values.clear();
-            values.put(MediaStore.Downloads.IS_PENDING, 0);
-            resolver.update(itemUri, values, null, null);
-
+        if (copyToPendingDownload(context, sourceFile, itemUri)) {
+            publishPendingDownload(context, itemUri);
             Log.d(TAG, "File copied to MediaStore successfully: Downloads/SpatialFlow/" + sourceFile.getName());
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error copying to MediaStore: " + e.getMessage(), e);
+        } else {
+            discardPendingDownload(context, itemUri);
         }
     }
 
-    private static String getFileName(Context context, Uri uri) {
-        String name = null;
+    /**
+     * Copies a finished file into a pending Downloads entry. Does not
+     * publish or discard the entry.
+     *
+     * @return true if all bytes were copied
+     */
+    private static boolean copyToPendingDownload(Context context, File sourceFile, Uri itemUri) {
+        ContentResolver resolver = context.getContentResolver();
 
-        if ("content".equals(uri.getScheme())) {
-            try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int nameIndex = cursor.getColumnIndexOrThrow(OpenableColumns.DISPLAY_NAME);
-                    name = cursor.getString(nameIndex);
+        // Channel to channel: the kernel moves the bytes, no heap buffer loop
+        try (FileChannel in = new FileInputStream(sourceFile).getChannel()) {
+
+            ParcelFileDescriptor pfd = resolver.openFileDescriptor(itemUri, "w");
+            if (pfd == null) {
+                Log.e(TAG, "Failed to open output descriptor");
+                return false;
+            }
+
+            try (FileChannel out = new ParcelFileDescriptor.AutoCloseOutputStream(pfd).getChannel()) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting filename: " + e.getMessage());
             }
-        }
+            return true;
 
-        if (name == null) {
-            name = uri.getLastPathSegment();
+        } catch (IOException e) {
+            Log.e(TAG, "Error copying to MediaStore: " + e.getMessage(), e);
+            return false;
         }
-
-        return name != null ? name : "audio.m4a";
     }
 }
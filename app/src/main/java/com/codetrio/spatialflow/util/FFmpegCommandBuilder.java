@@ -2,6 +2,8 @@ package com.codetrio.spatialflow.util;
 
 import android.util.Log;
 
+import java.util.Locale;
+
 public class FFmpegCommandBuilder {
 
     private static final String TAG = "FFmpegCommandBuilder";
@@ -11,6 +13,45 @@ public class FFmpegCommandBuilder {
     private static final float MAX_ROTATION_SPEED = 0.25f;
     private static final float DEFAULT_ROTATION_SPEED = 0.08f;
 
+    // Bump whenever the filter graph or output encoding changes, so cached
+    // renders made by an older chain are not reused
+    public static final int CHAIN_VERSION = 2;
+
+    // adelay on the right channel; the left channel stays on the source timeline
+    public static final int HAAS_DELAY_MS = 10;
+
+    /**
+     * Output encodings.
+     *  PREVIEW – playback renders: 16-bit PCM in WAV at the source rate, no
+     *            resampling and no faststart rewrite, gapless across segments
+     *  EXPORT  – files users keep: ALAC 48 kHz with faststart and metadata
+     *  EXPORT_DIRECT – EXPORT encoded into a MediaStore descriptor: faststart
+     *            reopens the output for a second pass, which a descriptor
+     *            cannot do, so the moov atom stays at the end (local players
+     *            do not care, only progressive streaming would)
+     */
+    public enum Profile {
+        PREVIEW("wav", "wav", " -c:a pcm_s16le -ac 2", ""),
+        EXPORT("m4a", "mp4", " -c:a alac -ar 48000 -ac 2", " -movflags +faststart -map_metadata 0"),
+        EXPORT_DIRECT("m4a", "mp4", " -c:a alac -ar 48000 -ac 2", " -map_metadata 0");
+
+        private final String extension;
+        private final String muxer;
+        private final String codecArgs;
+        private final String containerArgs;
+
+        Profile(String extension, String muxer, String codecArgs, String containerArgs) {
+            this.extension = extension;
+            this.muxer = muxer;
+            this.codecArgs = codecArgs;
+            this.containerArgs = containerArgs;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
     /**
      * Builds optimized professional 8D audio effect with musical reverb.
      * Chain:
@@ -25,6 +66,15 @@ public class FFmpegCommandBuilder {
      * @return Complete FFmpeg command string
      */
     public static String build8D(String inputPath, String outputPath, float rotationSpeed) {
+        return build8D(inputPath, outputPath, rotationSpeed, Profile.EXPORT);
+    }
+
+    /**
+     * Same chain as {@link #build8D(String, String, float)} with the given
+     * output profile.
+     */
+    public static String build8D(String inputPath, String outputPath, float rotationSpeed,
+                                 Profile profile) {
 
         // Validate and clamp rotation speed
         rotationSpeed = clampRotationSpeed(rotationSpeed);
@@ -42,6 +92,136 @@ public class FFmpegCommandBuilder {
                 .append(" -map 0:a");
 
         // ===== OPTIMIZED 8D + SMOOTH REVERB FILTER CHAIN =====
+        append8DFilter(command, rotationSpeed, 0);
+
+        // ===== AUDIO ENCODING (per profile) =====
+        command.append(profile.codecArgs)
+                .append(profile.containerArgs);
+
+        // Output file
+        command.append(" \"").append(outputPath).append("\"");
+
+        String finalCommand = command.toString();
+        Log.d(TAG, "8D Command: " + finalCommand);
+        return finalCommand;
+    }
+
+    /**
+     * Builds the 8D chain as a progressive render: one FFmpeg session whose
+     * output is split by the segment muxer, so the filter state (pulsator
+     * phase, echo tail) stays continuous across segment boundaries. Each
+     * finished segment is appended to a CSV list as soon as it is closed.
+     *
+     * A render that does not start at 0 can be given a pre-roll: decoding
+     * starts {@code prerollMs} earlier and that much output is trimmed off,
+     * so the echo/delay lines are already filled at {@code startMs}. With
+     * start and pre-roll on multiples of {@link #getLfoPeriodMs} the pulsator
+     * phase also matches a render from 0, and renders join seamlessly.
+     *
+     * @param inputPath      Input audio file path
+     * @param startMs        Position in the input where this render starts
+     * @param lengthMs       Length to render, or a value <= 0 for "to the end"
+     * @param prerollMs      Warm-up rendered before startMs and discarded
+     * @param segmentPattern Output pattern, e.g. {@code /dir/p0_%03d.m4a}
+     * @param listPath       CSV segment list written by the muxer
+     * @param segmentTimes   Comma separated split points in seconds
+     * @param rotationSpeed  8D rotation speed in Hz
+     * @param profile        Output profile, segments use its codec only
+     * @return Complete FFmpeg command string
+     */
+    public static String build8DSegmented(String inputPath, long startMs, long lengthMs,
+                                          long prerollMs, String segmentPattern, String listPath,
+                                          String segmentTimes, float rotationSpeed,
+                                          Profile profile) {
+        rotationSpeed = clampRotationSpeed(rotationSpeed);
+
+        StringBuilder command = new StringBuilder(480);
+
+        command.append("-y")
+                .append(" -loglevel warning");
+
+        prerollMs = Math.max(0, Math.min(prerollMs, startMs));
+
+        // Input seek: decoding starts at the playhead (minus pre-roll), not at 0
+        if (startMs - prerollMs > 0) {
+            command.append(" -ss ").append(formatSeconds(startMs - prerollMs));
+        }
+        command.append(" -i \"").append(inputPath).append("\"");
+
+        if (lengthMs > 0) {
+            command.append(" -t ").append(formatSeconds(lengthMs + prerollMs));
+        }
+
+        command.append(" -vn")
+                .append(" -map 0:a");
+
+        append8DFilter(command, rotationSpeed, prerollMs);
+
+        command.append(profile.codecArgs);
+
+        // Segment muxer – no faststart, segments are played locally
+        command.append(" -f segment")
+                .append(" -segment_times ").append(segmentTimes)
+                .append(" -segment_format ").append(profile.muxer)
+                .append(" -reset_timestamps 1")
+                .append(" -segment_list_type csv")
+                .append(" -segment_list \"").append(listPath).append("\"");
+
+        command.append(" \"").append(segmentPattern).append("\"");
+
+        String finalCommand = command.toString();
+        Log.d(TAG, "8D Segmented Command: " + finalCommand);
+        return finalCommand;
+    }
+
+    /**
+     * Logs how long a render took and how big its output is, so profiles
+     * can be compared on a device.
+     *
+     * @param profile   Profile the render used
+     * @param sessions  Number of FFmpeg sessions that ran in parallel
+     * @param elapsedMs Wall clock time of the render
+     * @param audioMs   Length of audio rendered
+     * @param bytes     Size of the output
+     */
+    public static void logRenderStats(Profile profile, int sessions, long elapsedMs,
+                                      long audioMs, long bytes) {
+        double speed = elapsedMs > 0 ? audioMs / (double) elapsedMs : 0;
+        double mbPerMinute = audioMs > 0 ? bytes / 1048576.0 / (audioMs / 60000.0) : 0;
+        Log.i(TAG, String.format(Locale.US,
+                "Render %s x%d: %d ms for %d ms of audio (%.1fx realtime), %d bytes (%.2f MB/min)",
+                profile, sessions, elapsedMs, audioMs, speed, bytes, mbPerMinute));
+    }
+
+    /**
+     * Describes everything besides the input that determines the rendered
+     * 8D audio. Used as part of render cache keys.
+     *
+     * @param rotationSpeed 8D rotation speed in Hz
+     * @param profile       Output profile
+     * @return Stable parameter string, e.g. {@code 8d;v2;hz=0.25;PREVIEW}
+     */
+    public static String describe8D(float rotationSpeed, Profile profile) {
+        return String.format(Locale.US, "8d;v%d;hz=%.2f;%s",
+                CHAIN_VERSION, clampRotationSpeed(rotationSpeed), profile);
+    }
+
+    /**
+     * Length of one apulsator cycle. Renders that start on a multiple of
+     * this have the same LFO phase as a render from 0.
+     *
+     * @param rotationSpeed 8D rotation speed in Hz
+     * @return Period in milliseconds
+     */
+    public static long getLfoPeriodMs(float rotationSpeed) {
+        return Math.round(1000.0 / clampRotationSpeed(rotationSpeed));
+    }
+
+    /**
+     * Appends the shared 8D {@code -af} filter graph, optionally dropping
+     * the first {@code trimMs} of output (pre-roll).
+     */
+    private static void append8DFilter(StringBuilder command, float rotationSpeed, long trimMs) {
         command.append(" -af \"");
 
         // 1) 8D Auto‑panner – slightly slower, less aggressive width
@@ -53,26 +233,21 @@ public class FFmpegCommandBuilder {
         command.append(",extrastereo=m=1.3:c=false");
 
         // 3) Very small Haas delay
-        command.append(",adelay=delays=0|10:all=0");
+        command.append(",adelay=delays=0|").append(HAAS_DELAY_MS).append(":all=0");
 
         // 4) Shorter, subtler reverb
         command.append(",aecho=0.9:0.9:40|80:0.20|0.15");
 
-        command.append("\"");
-
-        // ===== OPTIMIZED AUDIO ENCODING =====
-        command.append(" -c:a alac")
-                .append(" -ar 48000")
-                .append(" -ac 2")
-                .append(" -movflags +faststart")
-                .append(" -map_metadata 0");
+        if (trimMs > 0) {
+            command.append(",atrim=start=").append(formatSeconds(trimMs))
+                    .append(",asetpts=PTS-STARTPTS");
+        }
 
-        // Output file
-        command.append(" \"").append(outputPath).append("\"");
+        command.append("\"");
+    }
 
-        String finalCommand = command.toString();
-        Log.d(TAG, "8D Command: " + finalCommand);
-        return finalCommand;
+    private static String formatSeconds(long millis) {
+        return String.format(Locale.US, "%.3f", millis / 1000.0);
     }
 
     /**
@@ -81,7 +256,7 @@ public class FFmpegCommandBuilder {
      * @param speed Desired rotation speed in Hz
      * @return Clamped speed between MIN and MAX
      */
-    private static float clampRotationSpeed(float speed) {
+    public static float clampRotationSpeed(float speed) {
         if (speed < MIN_ROTATION_SPEED) {
             Log.w(TAG, "Speed too low (" + speed + " Hz), using default: " + DEFAULT_ROTATION_SPEED + " Hz");
             return DEFAULT_ROTATION_SPEED;
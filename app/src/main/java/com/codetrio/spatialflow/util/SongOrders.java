@@ -0,0 +1,128 @@
+package com.codetrio.spatialflow.util;
+
+import com.codetrio.spatialflow.model.SongTable;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The song picker's sort orders for one library version, computed once as
+ * permutations: {@code get(mode)[rank]} is the position in the library of
+ * the song shown at {@code rank}. Showing a result in any order is then a
+ * walk over the permutation, with no comparisons at interaction time.
+ *
+ * Names compare with collation keys, so case and accents do not split the
+ * alphabet; songs without a title or artist sort last. Only the distinct
+ * strings of the {@link SongTable} are collated, rows are then ranked
+ * through their references. Kept free of Android classes.
+ */
+public class SongOrders {
+
+    public static final int LIBRARY = 0;
+    public static final int NAME = 1;
+    public static final int ARTIST = 2;
+    public static final int DATE = 3;
+
+    private final int[][] orders = new int[4][];
+
+    public SongOrders(SongTable songs) {
+        int size = songs.size();
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+
+        String[] titles = new String[songs.titleRefCount()];
+        for (int ref = 0; ref < titles.length; ref++) titles[ref] = songs.titleOfRef(ref);
+        String[] artists = new String[songs.artistRefCount()];
+        for (int ref = 0; ref < artists.length; ref++) artists[ref] = songs.artistOfRef(ref);
+        int[] titleRankOfRef = collationRanks(titles, collator);
+        int[] artistRankOfRef = collationRanks(artists, collator);
+
+        int[] titleRanks = new int[size];
+        int[] artistRanks = new int[size];
+        int[] identity = new int[size];
+        for (int i = 0; i < size; i++) {
+            int title = songs.titleRef(i);
+            titleRanks[i] = title != SongTable.NONE ? titleRankOfRef[title] : Integer.MAX_VALUE;
+            int artist = songs.artistRef(i);
+            artistRanks[i] = artist != SongTable.NONE ? artistRankOfRef[artist] : Integer.MAX_VALUE;
+            identity[i] = i;
+        }
+        orders[LIBRARY] = identity;
+
+        // Library position breaks ties, so every order is deterministic
+        orders[NAME] = sortByRank(titleRanks, identity);
+
+        // Then by title: the tie-breaker is the position in name order
+        int[] namePositions = new int[size];
+        for (int n = 0; n < size; n++) namePositions[orders[NAME][n]] = n;
+        int[] byArtist = sortByRank(artistRanks, namePositions);
+        for (int n = 0; n < size; n++) byArtist[n] = orders[NAME][byArtist[n]];
+        orders[ARTIST] = byArtist;
+
+        // Newest first, stable: rank the distinct dates in descending order
+        long[] dates = new long[size];
+        for (int i = 0; i < size; i++) dates[i] = songs.dateAdded(i);
+        long[] distinct = dates.clone();
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int k = 0; k < size; k++) {
+            if (k == 0 || distinct[k] != distinct[count - 1]) distinct[count++] = distinct[k];
+        }
+        int[] dateRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            dateRanks[i] = count - 1 - Arrays.binarySearch(distinct, 0, count, dates[i]);
+        }
+        orders[DATE] = sortByRank(dateRanks, identity);
+    }
+
+    /**
+     * @param mode {@link #LIBRARY}, {@link #NAME}, {@link #ARTIST} or {@link #DATE}
+     */
+    public int[] get(int mode) {
+        return orders[mode];
+    }
+
+    /**
+     * Ranks distinct strings by collation; strings equal ignoring case and
+     * accents share a rank.
+     *
+     * @return rank of each string, by index
+     */
+    private static int[] collationRanks(String[] values, Collator collator) {
+        CollationKey[] sorted = new CollationKey[values.length];
+        for (int i = 0; i < values.length; i++) sorted[i] = collator.getCollationKey(values[i]);
+        Arrays.sort(sorted);
+
+        // Index of each string, to map the sorted keys back
+        Map<String, Integer> indexOf = new HashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) indexOf.put(values[i], i);
+
+        int[] ranks = new int[values.length];
+        int rank = 0;
+        for (int k = 0; k < sorted.length; k++) {
+            if (k > 0 && sorted[k].compareTo(sorted[k - 1]) != 0) rank++;
+            ranks[indexOf.get(sorted[k].getSourceString())] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Orders by rank, then by the unique {@code tieBreak}, with a primitive
+     * sort of packed keys.
+     *
+     * @return the {@code tieBreak} values in that order
+     */
+    private static int[] sortByRank(int[] ranks, int[] tieBreak) {
+        long[] packed = new long[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            packed[i] = ((long) ranks[i] << 32) | tieBreak[i];
+        }
+        Arrays.sort(packed);
+        int[] order = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) order[i] = (int) packed[i];
+        return order;
+    }
+}
@@ -0,0 +1,304 @@
+package com.codetrio.spatialflow.util;
+
+import com.codetrio.spatialflow.model.SongTable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token index over titles and artists for the song picker search. Text is
+ * normalized once at build time (case folded, diacritics stripped, split on
+ * anything that is not a letter or digit), so a query only does binary
+ * searches and posting-list merges instead of lowercasing the library.
+ *
+ * Each distinct title and artist is tokenized once, however many songs
+ * share it.
+ *
+ * Every query word must match the start of some word of the song, e.g.
+ * "beat yel" finds "The Beatles - Yellow Submarine". Words of
+ * {@link #FUZZY_MIN_LENGTH} or more letters also match with one typo.
+ * Results are positions in the list the index was built from, ascending.
+ *
+ * Immutable once built and safe to query from any thread. Kept free of
+ * Android classes.
+ */
+public class SongSearchIndex {
+
+    public static final int FUZZY_MIN_LENGTH = 4;
+    // One edit breaks at most three trigrams of a word; from this length
+    // on one always survives, shorter words look up bigrams (at most two
+    // broken)
+    private static final int TRIGRAM_MIN_LENGTH = 6;
+
+    private final int size;
+    private final String[] tokens;          // sorted, unique
+    private final int[][] postings;         // per token, ascending song positions
+    private final Map<String, int[]> bigrams;    // bigram -> token ids
+    private final Map<String, int[]> trigrams;   // trigram -> token ids
+
+    public SongSearchIndex(SongTable songs) {
+        this.size = songs.size();
+
+        String[][] titleWords = new String[songs.titleRefCount()][];
+        for (int ref = 0; ref < titleWords.length; ref++) {
+            titleWords[ref] = tokenize(songs.titleOfRef(ref)).toArray(new String[0]);
+        }
+        String[][] artistWords = new String[songs.artistRefCount()][];
+        for (int ref = 0; ref < artistWords.length; ref++) {
+            artistWords[ref] = tokenize(songs.artistOfRef(ref)).toArray(new String[0]);
+        }
+
+        Map<String, IntList> byToken = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int title = songs.titleRef(i);
+            if (title != SongTable.NONE) addTokens(byToken, titleWords[title], i);
+            int artist = songs.artistRef(i);
+            if (artist != SongTable.NONE) addTokens(byToken, artistWords[artist], i);
+        }
+
+        tokens = byToken.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        postings = new int[tokens.length][];
+        for (int t = 0; t < tokens.length; t++) {
+            postings[t] = byToken.get(tokens[t]).toArray();
+        }
+        bigrams = gramIndex(tokens, 2);
+        trigrams = gramIndex(tokens, 3);
+    }
+
+    /**
+     * @return for every substring of length {@code n} of the tokens, the
+     * ids of the tokens containing it
+     */
+    private static Map<String, int[]> gramIndex(String[] tokens, int n) {
+        Map<String, IntList> tokensByGram = new HashMap<>();
+        for (int t = 0; t < tokens.length; t++) {
+            String token = tokens[t];
+            for (int k = 0; k + n <= token.length(); k++) {
+                String gram = token.substring(k, k + n);
+                IntList ids = tokensByGram.get(gram);
+                if (ids == null) {
+                    ids = new IntList();
+                    tokensByGram.put(gram, ids);
+                }
+                ids.addUnique(t);
+            }
+        }
+
+        Map<String, int[]> index = new HashMap<>(tokensByGram.size() * 2);
+        for (Map.Entry<String, IntList> entry : tokensByGram.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return positions of the matching songs, ascending; all of them for a
+     * query without words
+     */
+    public int[] search(String query) {
+        long[] matches = matchAll(query);
+        if (matches == null) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) all[i] = i;
+            return all;
+        }
+        return toPositions(matches);
+    }
+
+    /**
+     * Same as {@link #search(String)}, but in the display order
+     * {@code order} (see {@link SongOrders}): walks the permutation and
+     * keeps the matching songs, no sorting involved.
+     *
+     * @return ranks in {@code order} of the matching songs, ascending
+     */
+    public int[] search(String query, int[] order) {
+        long[] matches = matchAll(query);
+        if (matches == null) {
+            int[] all = new int[order.length];
+            for (int r = 0; r < order.length; r++) all[r] = r;
+            return all;
+        }
+
+        int[] ranks = new int[order.length];
+        int n = 0;
+        for (int r = 0; r < order.length; r++) {
+            int p = order[r];
+            if ((matches[p >>> 6] & (1L << p)) != 0) ranks[n++] = r;
+        }
+        return Arrays.copyOf(ranks, n);
+    }
+
+    /**
+     * @return bitset of the songs matching every word, null if the query
+     * has no words and so matches everything
+     */
+    private long[] matchAll(String query) {
+        long[] result = null;
+        for (String word : tokenize(query)) {
+            long[] matches = match(word);
+            if (result == null) {
+                result = matches;
+            } else {
+                for (int w = 0; w < result.length; w++) result[w] &= matches[w];
+            }
+        }
+        return result;
+    }
+
+    private long[] match(String word) {
+        long[] bits = new long[(size + 63) >>> 6];
+
+        // Every token starting with the word is one contiguous range
+        int first = lowerBound(word);
+        int end = first;
+        while (end < tokens.length && tokens[end].startsWith(word)) {
+            setAll(bits, postings[end]);
+            end++;
+        }
+
+        if (word.length() >= FUZZY_MIN_LENGTH) {
+            // Any one-edit variant shares at least one n-gram with the word
+            int n = word.length() >= TRIGRAM_MIN_LENGTH ? 3 : 2;
+            Map<String, int[]> grams = n == 3 ? trigrams : bigrams;
+            boolean[] checked = new boolean[tokens.length];
+            for (int k = 0; k + n <= word.length(); k++) {
+                int[] ids = grams.get(word.substring(k, k + n));
+                if (ids == null) continue;
+                for (int t : ids) {
+                    if (checked[t] || (t >= first && t < end)) continue;
+                    checked[t] = true;
+                    if (fuzzyPrefix(word, tokens[t])) setAll(bits, postings[t]);
+                }
+            }
+        }
+        return bits;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = tokens.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int[] toPositions(long[] bits) {
+        int count = 0;
+        for (long word : bits) count += Long.bitCount(word);
+        int[] positions = new int[count];
+        int n = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                positions[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return positions;
+    }
+
+    private static void setAll(long[] bits, int[] positions) {
+        for (int p : positions) bits[p >>> 6] |= 1L << p;
+    }
+
+    /**
+     * @return true if some prefix of {@code token} is at most one insertion,
+     * deletion or substitution away from {@code word}
+     */
+    static boolean fuzzyPrefix(String word, String token) {
+        int m = word.length();
+        int n = Math.min(token.length(), m + 1);
+        if (n < m - 1) return false;
+
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) prev[j] = j;
+        for (int i = 1; i <= m; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= n; j++) {
+                int cost = word.charAt(i - 1) == token.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > 1) return false;
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        for (int j = 0; j <= n; j++) {
+            if (prev[j] <= 1) return true;
+        }
+        return false;
+    }
+
+    // ===== NORMALIZATION =====
+
+    /**
+     * Lowercase words of {@code text} with diacritics removed, e.g.
+     * "Beyoncé - Déjà Vu" gives [beyonce, deja, vu].
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isEmpty()) return words;
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) words.add(word.toString());
+        return words;
+    }
+
+    private static void addTokens(Map<String, IntList> byToken, String[] words, int position) {
+        for (String token : words) {
+            IntList list = byToken.get(token);
+            if (list == null) {
+                list = new IntList();
+                byToken.put(token, list);
+            }
+            // Positions arrive in order, a repeated word only needs the last checked
+            list.addUnique(position);
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int count = 0;
+
+        void addUnique(int value) {
+            if (count > 0 && values[count - 1] == value) return;
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+}
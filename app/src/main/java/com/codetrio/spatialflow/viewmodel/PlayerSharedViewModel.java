@@ -4,45 +4,43 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 import androidx.lifecycle.ViewModel;
+import com.codetrio.spatialflow.model.EffectsState;
+import com.codetrio.spatialflow.model.PlaybackClock;
 import com.codetrio.spatialflow.service.AudioPlaybackService;
 
+import java.util.List;
+
+import kotlin.jvm.functions.Function1;
+
 public class PlayerSharedViewModel extends ViewModel {
 
     private MutableLiveData<Uri> songUri = new MutableLiveData<>();
     private MutableLiveData<Boolean> isPlaying = new MutableLiveData<>(false);
-    private MutableLiveData<Integer> currentPosition = new MutableLiveData<>(0);
+    private MutableLiveData<PlaybackClock> playbackClock = new MutableLiveData<>(PlaybackClock.STOPPED);
     private MutableLiveData<Integer> duration = new MutableLiveData<>(0);
     private MutableLiveData<Boolean> isProcessing = new MutableLiveData<>(false);
     private MutableLiveData<Integer> processingProgress = new MutableLiveData<>(0);
 
-    // Effects settings
-    private MutableLiveData<Boolean> is8DEnabled = new MutableLiveData<>(false);
-    private MutableLiveData<Boolean> isBassEnabled = new MutableLiveData<>(false);
-
-    // 8D speed locked at 0.2 Hz
-    private MutableLiveData<Float> speed8D = new MutableLiveData<>(0.2f);
-
-    // Bass boost (-15 to +15 dB)
-    private MutableLiveData<Integer> bassBoost = new MutableLiveData<>(0);
-
-    // 5-Band Equalizer
-    private MutableLiveData<Boolean> isEqualizerEnabled = new MutableLiveData<>(false);
-    private MutableLiveData<Integer> eqBand1 = new MutableLiveData<>(0); // 60Hz
-    private MutableLiveData<Integer> eqBand2 = new MutableLiveData<>(0); // 230Hz
-    private MutableLiveData<Integer> eqBand3 = new MutableLiveData<>(0); // 910Hz
-    private MutableLiveData<Integer> eqBand4 = new MutableLiveData<>(0); // 3600Hz
-    private MutableLiveData<Integer> eqBand5 = new MutableLiveData<>(0); // 14000Hz
-
-    // Loudness Enhancer
-    private MutableLiveData<Boolean> isLoudnessEnabled = new MutableLiveData<>(false);
-    private MutableLiveData<Integer> loudnessGain = new MutableLiveData<>(0); // 0-12 dB
-
-    // Balance (L/R)
-    private MutableLiveData<Integer> balance = new MutableLiveData<>(0); // -50 to +50, 0 = center
-
-    // Playback Speed
-    private MutableLiveData<Float> playbackSpeed = new MutableLiveData<>(1.0f); // 0.5x to 2.0x
+    // All effect settings as one immutable, versioned value; the per-field
+    // LiveData below are views of it
+    private final MutableLiveData<EffectsState> effectsState = new MutableLiveData<>(EffectsState.DEFAULT);
+
+    private final LiveData<Boolean> is8DEnabled = field(s -> s.is8DEnabled);
+    private final LiveData<Float> speed8D = field(s -> s.speed8D);
+    private final LiveData<Boolean> isBassEnabled = field(s -> s.isBassEnabled);
+    private final LiveData<Integer> bassBoost = field(s -> s.bassBoost);
+    private final LiveData<Boolean> isEqualizerEnabled = field(s -> s.isEqualizerEnabled);
+    private final LiveData<Integer> eqBand1 = field(s -> s.getEqBand(0)); // 60Hz
+    private final LiveData<Integer> eqBand2 = field(s -> s.getEqBand(1)); // 230Hz
+    private final LiveData<Integer> eqBand3 = field(s -> s.getEqBand(2)); // 910Hz
+    private final LiveData<Integer> eqBand4 = field(s -> s.getEqBand(3)); // 3600Hz
+    private final LiveData<Integer> eqBand5 = field(s -> s.getEqBand(4)); // 14000Hz
+    private final LiveData<Boolean> isLoudnessEnabled = field(s -> s.isLoudnessEnabled);
+    private final LiveData<Integer> loudnessGain = field(s -> s.loudnessGain);
+    private final LiveData<Integer> balance = field(s -> s.balance);
+    private final LiveData<Float> playbackSpeed = field(s -> s.playbackSpeed);
 
     // Service reference
     private MutableLiveData<AudioPlaybackService> audioServiceLiveData = new MutableLiveData<>();
@@ -58,6 +56,12 @@ public class PlayerSharedViewModel extends ViewModel {
         this.audioService = service;
         this.audioServiceLiveData.setValue(service);
         service.setViewModel(this);
+
+        // A service that outlived this ViewModel may hold newer settings
+        EffectsState inForce = service.applyEffectsState(getCurrentEffects());
+        if (inForce != getCurrentEffects()) {
+            effectsState.setValue(inForce);
+        }
     }
 
     // ===== SONG URI =====
@@ -73,6 +77,24 @@ public class PlayerSharedViewModel extends ViewModel {
         }
     }
 
+    /**
+     * The service moved on to the next queued song by itself; updates the
+     * UI without reloading it.
+     */
+    public void postCurrentSong(Uri uri) {
+        songUri.postValue(uri);
+    }
+
+    /**
+     * Songs to play after the current one; the first few are pre-rendered
+     * in 8D in the background.
+     */
+    public void setUpcomingSongs(List<Uri> uris) {
+        if (audioService != null) {
+            audioService.setUpcomingSongs(uris);
+        }
+    }
+
     // ===== PLAYBACK CONTROLS =====
 
     public LiveData<Boolean> getIsPlaying() {
@@ -106,12 +128,20 @@ public class PlayerSharedViewModel extends ViewModel {
 
     // ===== POSITION & DURATION =====
 
-    public LiveData<Integer> getCurrentPosition() {
-        return currentPosition;
+    /**
+     * Changes only on transitions; extrapolate with
+     * {@link PlaybackClock#getPositionMs()} for the current position.
+     */
+    public LiveData<PlaybackClock> getPlaybackClock() {
+        return playbackClock;
+    }
+
+    public void postPlaybackClock(PlaybackClock clock) {
+        playbackClock.postValue(clock);
     }
 
-    public void setCurrentPosition(int position) {
-        currentPosition.postValue(position);
+    public void refreshPlaybackClock() {
+        if (audioService != null) audioService.refreshPlaybackState();
     }
 
     public LiveData<Integer> getDuration() {
@@ -144,6 +174,33 @@ public class PlayerSharedViewModel extends ViewModel {
         processingProgress.setValue(progress);
     }
 
+    // ===== EFFECTS STATE =====
+
+    public LiveData<EffectsState> getEffectsState() {
+        return effectsState;
+    }
+
+    public EffectsState getCurrentEffects() {
+        EffectsState state = effectsState.getValue();
+        return state != null ? state : EffectsState.DEFAULT;
+    }
+
+    /**
+     * Publishes {@code next} and hands it to the service, which applies only
+     * the fields that changed.
+     */
+    private void updateEffects(EffectsState next) {
+        if (next == getCurrentEffects()) return;
+        effectsState.setValue(next);
+        if (audioService != null) {
+            audioService.applyEffectsState(next);
+        }
+    }
+
+    private <T> LiveData<T> field(Function1<EffectsState, T> getter) {
+        return Transformations.distinctUntilChanged(Transformations.map(effectsState, getter));
+    }
+
     // ===== 8D AUDIO =====
 
     public LiveData<Boolean> getIs8DEnabled() {
@@ -151,10 +208,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void set8DEnabled(boolean enabled) {
-        is8DEnabled.setValue(enabled);
-        if (audioService != null) {
-            audioService.set8DEnabled(enabled);
-        }
+        updateEffects(getCurrentEffects().with8DEnabled(enabled));
     }
 
     public LiveData<Float> get8DSpeed() {
@@ -162,7 +216,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void set8DSpeed(float speed) {
-        speed8D.setValue(speed);
+        updateEffects(getCurrentEffects().with8DSpeed(speed));
     }
 
     // ===== BASS BOOST =====
@@ -172,10 +226,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setBassEnabled(boolean enabled) {
-        isBassEnabled.setValue(enabled);
-        if (audioService != null) {
-            audioService.setBassEnabled(enabled);
-        }
+        updateEffects(getCurrentEffects().withBassEnabled(enabled));
     }
 
     public LiveData<Integer> getBassBoost() {
@@ -183,10 +234,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setBassBoost(int boost) {
-        bassBoost.setValue(boost);
-        if (audioService != null) {
-            audioService.setBassBoost(boost);
-        }
+        updateEffects(getCurrentEffects().withBassBoost(boost));
     }
 
     // ===== 5-BAND EQUALIZER =====
@@ -196,10 +244,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqualizerEnabled(boolean enabled) {
-        isEqualizerEnabled.setValue(enabled);
-        if (audioService != null) {
-            audioService.setEqualizerEnabled(enabled);
-        }
+        updateEffects(getCurrentEffects().withEqualizerEnabled(enabled));
     }
 
     public LiveData<Integer> getEqBand1() {
@@ -207,10 +252,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqBand1(int gainDb) {
-        eqBand1.setValue(gainDb);
-        if (audioService != null) {
-            audioService.setEqBandGain(0, gainDb);
-        }
+        setEqBandGain(0, gainDb);
     }
 
     public LiveData<Integer> getEqBand2() {
@@ -218,10 +260,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqBand2(int gainDb) {
-        eqBand2.setValue(gainDb);
-        if (audioService != null) {
-            audioService.setEqBandGain(1, gainDb);
-        }
+        setEqBandGain(1, gainDb);
     }
 
     public LiveData<Integer> getEqBand3() {
@@ -229,10 +268,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqBand3(int gainDb) {
-        eqBand3.setValue(gainDb);
-        if (audioService != null) {
-            audioService.setEqBandGain(2, gainDb);
-        }
+        setEqBandGain(2, gainDb);
     }
 
     public LiveData<Integer> getEqBand4() {
@@ -240,10 +276,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqBand4(int gainDb) {
-        eqBand4.setValue(gainDb);
-        if (audioService != null) {
-            audioService.setEqBandGain(3, gainDb);
-        }
+        setEqBandGain(3, gainDb);
     }
 
     public LiveData<Integer> getEqBand5() {
@@ -251,31 +284,12 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setEqBand5(int gainDb) {
-        eqBand5.setValue(gainDb);
-        if (audioService != null) {
-            audioService.setEqBandGain(4, gainDb);
-        }
+        setEqBandGain(4, gainDb);
     }
 
     // Generic setter for any band
     public void setEqBandGain(int bandIndex, int gainDb) {
-        switch (bandIndex) {
-            case 0:
-                setEqBand1(gainDb);
-                break;
-            case 1:
-                setEqBand2(gainDb);
-                break;
-            case 2:
-                setEqBand3(gainDb);
-                break;
-            case 3:
-                setEqBand4(gainDb);
-                break;
-            case 4:
-                setEqBand5(gainDb);
-                break;
-        }
+        updateEffects(getCurrentEffects().withEqBand(bandIndex, gainDb));
     }
 
     // ===== LOUDNESS ENHANCER =====
@@ -285,10 +299,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setLoudnessEnabled(boolean enabled) {
-        isLoudnessEnabled.setValue(enabled);
-        if (audioService != null) {
-            audioService.setLoudnessEnabled(enabled);
-        }
+        updateEffects(getCurrentEffects().withLoudnessEnabled(enabled));
     }
 
     public LiveData<Integer> getLoudnessGain() {
@@ -296,10 +307,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setLoudnessGain(int gain) {
-        loudnessGain.setValue(gain);
-        if (audioService != null) {
-            audioService.setLoudnessGain(gain);
-        }
+        updateEffects(getCurrentEffects().withLoudnessGain(gain));
     }
 
     // ===== BALANCE (L/R) =====
@@ -309,10 +317,7 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setBalance(int balanceValue) {
-        balance.setValue(balanceValue);
-        if (audioService != null) {
-            audioService.setBalance(balanceValue);
-        }
+        updateEffects(getCurrentEffects().withBalance(balanceValue));
     }
 
     // ===== PLAYBACK SPEED =====
@@ -322,24 +327,15 @@ public class PlayerSharedViewModel extends ViewModel {
     }
 
     public void setPlaybackSpeed(float speed) {
-        playbackSpeed.setValue(speed);
-        if (audioService != null) {
-            audioService.setPlaybackSpeed(speed);
-        }
+        updateEffects(getCurrentEffects().withPlaybackSpeed(speed));
     }
 
     // ===== REPROCESSING TRIGGER =====
 
     public void triggerReprocessing() {
         if (audioService != null && songUri.getValue() != null) {
-            boolean enable8D = is8DEnabled.getValue() != null && is8DEnabled.getValue();
-            boolean enableBass = isBassEnabled.getValue() != null && isBassEnabled.getValue();
-
-            // Use current 8D speed and bass boost values
-            float speed = speed8D.getValue() != null ? speed8D.getValue() : 0.2f;
-            int boost = bassBoost.getValue() != null ? bassBoost.getValue() : 0;
-
-            audioService.applyEffects(enable8D, enableBass, speed, boost);
+            EffectsState state = getCurrentEffects();
+            audioService.applyEffects(state.is8DEnabled, state.isBassEnabled, state.speed8D, state.bassBoost);
         }
     }
 
@@ -370,51 +366,14 @@ public class PlayerSharedViewModel extends ViewModel {
 
     // 🔥 NEW: Reset all effects to default
     public void resetAllEffects() {
-        set8DEnabled(false);
-        setBassEnabled(false);
-        setBassBoost(0);
-        setEqualizerEnabled(false);
-        setEqBand1(0);
-        setEqBand2(0);
-        setEqBand3(0);
-        setEqBand4(0);
-        setEqBand5(0);
-        setLoudnessEnabled(false);
-        setLoudnessGain(0);
-        setBalance(0);
-        setPlaybackSpeed(1.0f);
-    }
-
-    // 🔥 NEW: Apply all current effects to service (for reconnection)
-    public void applyAllEffects() {
-        if (audioService == null) return;
-
-        // Apply all current state values to service
-        audioService.set8DEnabled(is8DEnabled.getValue() != null && is8DEnabled.getValue());
-        audioService.setBassEnabled(isBassEnabled.getValue() != null && isBassEnabled.getValue());
-
-        if (isBassEnabled.getValue() != null && isBassEnabled.getValue()) {
-            audioService.setBassBoost(bassBoost.getValue() != null ? bassBoost.getValue() : 0);
-        }
-
-        audioService.setEqualizerEnabled(isEqualizerEnabled.getValue() != null && isEqualizerEnabled.getValue());
-
-        if (isEqualizerEnabled.getValue() != null && isEqualizerEnabled.getValue()) {
-            audioService.setEqBandGain(0, eqBand1.getValue() != null ? eqBand1.getValue() : 0);
-            audioService.setEqBandGain(1, eqBand2.getValue() != null ? eqBand2.getValue() : 0);
-            audioService.setEqBandGain(2, eqBand3.getValue() != null ? eqBand3.getValue() : 0);
-            audioService.setEqBandGain(3, eqBand4.getValue() != null ? eqBand4.getValue() : 0);
-            audioService.setEqBandGain(4, eqBand5.getValue() != null ? eqBand5.getValue() : 0);
-        }
-
-        audioService.setLoudnessEnabled(isLoudnessEnabled.getValue() != null && isLoudnessEnabled.getValue());
+        updateEffects(EffectsState.reset());
+    }
 
-        if (isLoudnessEnabled.getValue() != null && isLoudnessEnabled.getValue()) {
-            audioService.setLoudnessGain(loudnessGain.getValue() != null ? loudnessGain.getValue() : 0);
+    // Re-sends the current state; the service skips it if nothing changed
+    public void applyAllEffects() {
+        if (audioService != null) {
+            audioService.applyEffectsState(getCurrentEffects());
         }
-
-        audioService.setBalance(balance.getValue() != null ? balance.getValue() : 0);
-        audioService.setPlaybackSpeed(playbackSpeed.getValue() != null ? playbackSpeed.getValue() : 1.0f);
     }
 
     // ===== LIFECYCLE =====
@@ -0,0 +1,115 @@
+package com.codetrio.spatialflow.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BiquadEqualizerTest {
+
+    private static final int RATE = 48000;
+    private static final int BLOCK = 512;
+
+    private final BiquadEqualizer eq = new BiquadEqualizer(RATE, BiquadEqualizer.TEN_BAND_HZ);
+    private long frame = 0;
+
+    /** Next block of a stereo sine at 1 kHz, the center of band 5. */
+    private float[] nextSine() {
+        float[] block = new float[BLOCK * 2];
+        for (int f = 0; f < BLOCK; f++, frame++) {
+            float v = (float) (0.1 * Math.sin(2 * Math.PI * 1000 * frame / RATE));
+            block[f * 2] = v;
+            block[f * 2 + 1] = v;
+        }
+        return block;
+    }
+
+    /** Processes {@code blocks} blocks and returns the peak of the last. */
+    private float run(int blocks) {
+        float peak = 0f;
+        for (int b = 0; b < blocks; b++) {
+            float[] out = new float[BLOCK * 2];
+            eq.process(nextSine(), out, BLOCK);
+            peak = 0f;
+            for (float v : out) peak = Math.max(peak, Math.abs(v));
+        }
+        return peak;
+    }
+
+    @Test
+    public void disabled_passesThroughExactly() {
+        eq.setBandGain(5, 12f);
+        float[] in = nextSine();
+        float[] out = new float[in.length];
+        eq.process(in, out, BLOCK);
+        assertArrayEquals(in, out, 0f);
+    }
+
+    @Test
+    public void flat_passesThroughExactly() {
+        eq.setEnabled(true);
+        float[] in = nextSine();
+        float[] out = new float[in.length];
+        eq.process(in, out, BLOCK);
+        assertArrayEquals(in, out, 0f);
+    }
+
+    @Test
+    public void boost_reachesGainAtCenter() {
+        eq.setEnabled(true);
+        eq.setBandGain(5, 12f);
+        float gain = run(40) / 0.1f;
+        assertEquals(Math.pow(10, 12 / 20.0), gain, 0.05);
+    }
+
+    @Test
+    public void boost_isClamped() {
+        eq.setEnabled(true);
+        eq.setBandGain(5, 40f);
+        float gain = run(40) / 0.1f;
+        assertEquals(Math.pow(10, BiquadEqualizer.MAX_GAIN_DB / 20.0), gain, 0.05);
+    }
+
+    @Test
+    public void gainChange_ramps() {
+        eq.setEnabled(true);
+        run(4);
+        eq.setBandGain(5, 12f);
+
+        // A 12 dB step takes about 60 ms, the first block rises ~2 dB
+        float first = run(1) / 0.1f;
+        assertTrue("jumped to " + first, first < 1.4f);
+        float previous = first;
+        for (int b = 0; b < 4; b++) {
+            float peak = run(1) / 0.1f;
+            assertTrue("not rising: " + peak, peak > previous);
+            previous = peak;
+        }
+        assertTrue(previous < 3.9f);
+    }
+
+    @Test
+    public void disable_rampsOutThenBypasses() {
+        eq.setEnabled(true);
+        eq.setBandGain(5, 12f);
+        run(40);
+
+        eq.setEnabled(false);
+        float first = run(1) / 0.1f;
+        assertTrue("dropped to " + first, first > 3f);
+
+        run(20);
+        float[] in = nextSine();
+        float[] out = new float[in.length];
+        eq.process(in, out, BLOCK);
+        assertArrayEquals(in, out, 0f);
+    }
+
+    @Test
+    public void setBandGain_ignoresUnknownBand() {
+        eq.setBandGain(10, 6f);
+        eq.setBandGain(-1, 6f);
+        for (int band = 0; band < eq.getBandCount(); band++) {
+            assertEquals(0f, eq.getBandGain(band), 0f);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.codetrio.spatialflow.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EqualPowerCrossfadeTest {
+
+    private static float[] constant(int frames, float left, float right) {
+        float[] block = new float[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            block[f * 2] = left;
+            block[f * 2 + 1] = right;
+        }
+        return block;
+    }
+
+    @Test
+    public void gains_followCosAndSinAcrossBlocks() {
+        int length = 4410;
+        int block = 256;
+        // Outgoing side only on the left, incoming only on the right
+        float[] from = constant(block, 1f, 0f);
+        float[] to = constant(block, 0f, 1f);
+        float[] out = new float[block * 2];
+
+        for (long position = 0; position < length; position += block) {
+            EqualPowerCrossfade.mix(out, from, to, block, block, position, length);
+            for (int f = 0; f < block; f++) {
+                double angle = Math.min(1.0, (position + f) / (double) length) * Math.PI / 2;
+                assertEquals(Math.cos(angle), out[f * 2], 1e-4);
+                assertEquals(Math.sin(angle), out[f * 2 + 1], 1e-4);
+                double power = out[f * 2] * out[f * 2] + out[f * 2 + 1] * out[f * 2 + 1];
+                assertEquals(1.0, power, 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void start_isOutgoingOnly() {
+        float[] from = constant(4, 0.5f, -0.5f);
+        float[] to = constant(4, 0.25f, 0.25f);
+        float[] out = new float[8];
+        EqualPowerCrossfade.mix(out, from, to, 4, 1, 0, 1000);
+        assertEquals(0.5f, out[0], 0f);
+        assertEquals(-0.5f, out[1], 0f);
+    }
+
+    @Test
+    public void endOfFade_isIncomingOnly() {
+        int frames = 64;
+        float[] from = constant(frames, 1f, 1f);
+        float[] to = constant(frames, 0.25f, -0.25f);
+        float[] out = new float[frames * 2];
+
+        // The block straddles the end: from frame 10 on only the incoming song plays
+        EqualPowerCrossfade.mix(out, from, to, frames, frames, 990, 1000);
+        assertTrue(out[9 * 2] > 0.25f);
+        for (int f = 10; f < frames; f++) {
+            assertEquals(0.25f, out[f * 2], 0f);
+            assertEquals(-0.25f, out[f * 2 + 1], 0f);
+        }
+
+        EqualPowerCrossfade.mix(out, from, to, frames, frames, 5000, 1000);
+        assertArrayEquals(to, out, 0f);
+    }
+
+    @Test
+    public void shortIncoming_isPaddedWithSilence() {
+        int frames = 16;
+        float[] from = constant(frames, 0f, 0f);
+        float[] to = constant(frames, 1f, 1f);
+        float[] out = new float[frames * 2];
+        EqualPowerCrossfade.mix(out, from, to, 8, frames, 2000, 1000);
+        for (int f = 0; f < frames; f++) {
+            assertEquals(f < 8 ? 1f : 0f, out[f * 2], 0f);
+        }
+    }
+
+    @Test
+    public void mixesInPlace() {
+        int frames = 32;
+        float[] from = constant(frames, 1f, 0f);
+        float[] expected = new float[frames * 2];
+        float[] to = constant(frames, 0f, 1f);
+        EqualPowerCrossfade.mix(expected, from.clone(), to, frames, frames, 100, 400);
+        EqualPowerCrossfade.mix(from, from, to, frames, frames, 100, 400);
+        assertArrayEquals(expected, from, 0f);
+    }
+}
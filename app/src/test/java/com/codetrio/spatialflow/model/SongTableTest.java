@@ -0,0 +1,103 @@
+package com.codetrio.spatialflow.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongTableTest {
+
+    private static SongTable sample() {
+        return new SongTable.Builder()
+                .add(30, "beta", "Queen", 7, "/30", 300)
+                .add(10, null, "Queen", 8, "/10", 100)
+                .add(20, "Alpha", null, 9, "/20", 200)
+                .add(40, "ALPHA", "ABBA", 7, "/40", 400)
+                .build();
+    }
+
+    @Test
+    public void build_ordersByTitleIgnoringCaseUntitledLast() {
+        SongTable table = sample();
+        assertEquals(4, table.size());
+        // Equal titles keep the order they were added in
+        assertEquals(20, table.id(0));
+        assertEquals(40, table.id(1));
+        assertEquals(30, table.id(2));
+        assertEquals(10, table.id(3));
+        assertNull(table.title(3));
+    }
+
+    @Test
+    public void build_keepsRowsTogether() {
+        SongTable table = sample();
+        Song song = table.get(2);
+        assertEquals(30, song.id);
+        assertEquals("beta", song.title);
+        assertEquals("Queen", song.artist);
+        assertEquals(7, song.albumId);
+        assertEquals("/30", song.path);
+        assertEquals(300, song.dateAdded);
+        assertTrue(table.sameAs(2, "beta", "Queen", 7, "/30", 300));
+        assertFalse(table.sameAs(2, "beta", "Queen", 7, "/30", 301));
+    }
+
+    @Test
+    public void artists_storedOnce() {
+        SongTable table = sample();
+        assertEquals(2, table.artistRefCount());
+        assertEquals(table.artistRef(2), table.artistRef(3));
+        assertEquals(SongTable.NONE, table.artistRef(0));
+        assertEquals("Queen", table.artistOfRef(table.artistRef(3)));
+    }
+
+    @Test
+    public void rowOf_findsEveryId() {
+        SongTable table = sample();
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals(row, table.rowOf(table.id(row)));
+        }
+        assertEquals(-1, table.rowOf(25));
+        assertEquals(-1, table.rowOf(-1));
+    }
+
+    @Test
+    public void rowOf_idsBeyondInt() {
+        long big = Integer.MAX_VALUE + 10L;
+        SongTable table = new SongTable.Builder()
+                .add(big, "b", null, 0, "/b", 0)
+                .add(-5, "a", null, 0, "/a", 0)
+                .build();
+        assertEquals(1, table.rowOf(big));
+        assertEquals(0, table.rowOf(-5));
+        assertEquals(-1, table.rowOf(0));
+    }
+
+    @Test
+    public void addRow_copiesRow() {
+        SongTable table = sample();
+        SongTable copy = new SongTable.Builder().addRow(table, 3).addRow(table, 0).build();
+        assertEquals(2, copy.size());
+        assertEquals(20, copy.id(0));
+        assertEquals(10, copy.id(1));
+        assertEquals("Queen", copy.artist(1));
+    }
+
+    @Test
+    public void builder_grows() {
+        SongTable.Builder builder = new SongTable.Builder();
+        for (int i = 0; i < 200; i++) builder.add(i, String.format("%03d", 199 - i), "x", 0, "/" + i, i);
+        SongTable table = builder.build();
+        assertEquals(200, table.size());
+        assertEquals(199, table.id(0));
+        assertEquals(0, table.id(199));
+        assertEquals(200, table.titleRefCount());
+        assertEquals(1, table.artistRefCount());
+        assertEquals(199, table.rowOf(0));
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, SongTable.EMPTY.size());
+        assertEquals(-1, SongTable.EMPTY.rowOf(1));
+    }
+}
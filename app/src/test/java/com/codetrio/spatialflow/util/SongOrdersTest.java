@@ -0,0 +1,58 @@
+package com.codetrio.spatialflow.util;
+
+import com.codetrio.spatialflow.model.SongTable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongOrdersTest {
+
+    // Library order is by title ignoring case, untitled last:
+    // apple, hello, Hello, Zebra, Éclair, (untitled)
+    private final SongTable songs = new SongTable.Builder()
+            .add(1, "Zebra", "abba", 0, "/1", 100)
+            .add(2, "Éclair", "Zed", 0, "/2", 300)
+            .add(3, "hello", "Ábba", 0, "/3", 200)
+            .add(4, "Hello", "ABBA", 0, "/4", 300)
+            .add(5, null, "Cher", 0, "/5", 300)
+            .add(6, "apple", null, 0, "/6", 50)
+            .build();
+    private final SongOrders orders = new SongOrders(songs);
+
+    private long[] ids(int mode) {
+        int[] order = orders.get(mode);
+        long[] ids = new long[order.length];
+        for (int r = 0; r < order.length; r++) ids[r] = songs.id(order[r]);
+        return ids;
+    }
+
+    @Test
+    public void library_isIdentity() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, orders.get(SongOrders.LIBRARY));
+    }
+
+    @Test
+    public void name_collatesAccentsAndBreaksTiesByLibrary() {
+        // É sorts with E, not after Z; hello and Hello tie and keep library order
+        assertArrayEquals(new long[]{6, 2, 3, 4, 1, 5}, ids(SongOrders.NAME));
+    }
+
+    @Test
+    public void artist_tiesFallBackToName() {
+        // abba, Ábba and ABBA are one artist, ordered by title
+        assertArrayEquals(new long[]{3, 4, 1, 5, 2, 6}, ids(SongOrders.ARTIST));
+    }
+
+    @Test
+    public void date_newestFirstAndStable() {
+        assertArrayEquals(new long[]{4, 2, 5, 3, 1, 6}, ids(SongOrders.DATE));
+    }
+
+    @Test
+    public void emptyLibrary() {
+        SongOrders empty = new SongOrders(SongTable.EMPTY);
+        assertEquals(0, empty.get(SongOrders.NAME).length);
+        assertEquals(0, empty.get(SongOrders.DATE).length);
+    }
+}
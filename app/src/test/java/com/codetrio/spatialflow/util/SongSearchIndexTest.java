@@ -0,0 +1,83 @@
+package com.codetrio.spatialflow.util;
+
+import com.codetrio.spatialflow.model.SongTable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongSearchIndexTest {
+
+    // Library order is by title: Bohemian Rhapsody, Dancing Queen, Déjà Vu,
+    // Penny Lane, SOS, Yellow Submarine
+    private final SongTable songs = new SongTable.Builder()
+            .add(1, "Yellow Submarine", "The Beatles", 0, "/a", 0)
+            .add(2, "Bohemian Rhapsody", "Queen", 0, "/b", 0)
+            .add(3, "Dancing Queen", "ABBA", 0, "/c", 0)
+            .add(4, "SOS", "ABBA", 0, "/d", 0)
+            .add(5, "Déjà Vu", "Beyoncé", 0, "/e", 0)
+            .add(6, "Penny Lane", "The Beatles", 0, "/f", 0)
+            .build();
+    private final SongSearchIndex index = new SongSearchIndex(songs);
+
+    @Test
+    public void tokenize_foldsCaseAndDiacritics() {
+        assertEquals(java.util.Arrays.asList("beyonce", "deja", "vu"),
+                SongSearchIndex.tokenize("Beyoncé - Déjà Vu"));
+    }
+
+    @Test
+    public void emptyQuery_matchesEverything() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, index.search("  "));
+    }
+
+    @Test
+    public void prefix_matchesStartOfWord() {
+        assertArrayEquals(new int[]{3, 5}, index.search("beat"));
+        assertArrayEquals(new int[0], index.search("tles"));
+    }
+
+    @Test
+    public void everyWordMustMatch() {
+        assertArrayEquals(new int[]{5}, index.search("beat yel"));
+        assertArrayEquals(new int[]{1}, index.search("queen abba"));
+    }
+
+    @Test
+    public void diacritics_ignoredInQuery() {
+        assertArrayEquals(new int[]{2}, index.search("DEJA"));
+        assertArrayEquals(new int[]{2}, index.search("beyoncé"));
+    }
+
+    @Test
+    public void typo_longWord() {
+        assertArrayEquals(new int[]{3, 5}, index.search("beaxles"));
+    }
+
+    @Test
+    public void typo_shortWord() {
+        assertArrayEquals(new int[]{0, 1}, index.search("quxen"));
+        assertArrayEquals(new int[]{1, 4}, index.search("abxa"));
+    }
+
+    @Test
+    public void typo_notBelowMinLength() {
+        assertArrayEquals(new int[0], index.search("sxs"));
+    }
+
+    @Test
+    public void search_inDisplayOrder() {
+        // Reverse library order, matches come back as ranks in it
+        int[] order = {5, 4, 3, 2, 1, 0};
+        assertArrayEquals(new int[]{0, 2}, index.search("beatles", order));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, index.search("", order));
+    }
+
+    @Test
+    public void fuzzyPrefix_oneEdit() {
+        assertTrue(SongSearchIndex.fuzzyPrefix("qeen", "queen"));
+        assertTrue(SongSearchIndex.fuzzyPrefix("queeen", "queen"));
+        assertTrue(SongSearchIndex.fuzzyPrefix("submar", "submarine"));
+        assertFalse(SongSearchIndex.fuzzyPrefix("qxxen", "queen"));
+    }
+}
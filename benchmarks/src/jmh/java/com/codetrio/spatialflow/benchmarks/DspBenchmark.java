@@ -0,0 +1,104 @@
+package com.codetrio.spatialflow.benchmarks;
+
+import com.codetrio.spatialflow.audio.BiquadEqualizer;
+import com.codetrio.spatialflow.audio.EqualPowerCrossfade;
+import com.codetrio.spatialflow.audio.Spatial8DProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-block cost of the real-time DSP. A block of 1024 stereo frames at
+ * 48 kHz is 21 ms of audio, anything close to that cannot keep up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DspBenchmark {
+
+    private static final int SAMPLE_RATE = 48_000;
+
+    @Param({"256", "1024"})
+    public int frames;
+
+    private float[] source;
+    private float[] incoming;
+    private float[] buffer;
+    private Spatial8DProcessor spatial8D;
+    private BiquadEqualizer eq5;
+    private BiquadEqualizer eq10;
+    private BiquadEqualizer eq31;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        source = new float[frames * 2];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextFloat() * 2f - 1f;
+        }
+        incoming = new float[source.length];
+        for (int i = 0; i < incoming.length; i++) {
+            incoming[i] = random.nextFloat() * 2f - 1f;
+        }
+        buffer = new float[source.length];
+
+        spatial8D = new Spatial8DProcessor(SAMPLE_RATE, 0.25f);
+        spatial8D.setEnabled(true);
+
+        eq5 = createEqualizer(BiquadEqualizer.FIVE_BAND_HZ);
+        eq10 = createEqualizer(BiquadEqualizer.TEN_BAND_HZ);
+        eq31 = createEqualizer(BiquadEqualizer.THIRTY_ONE_BAND_HZ);
+    }
+
+    private static BiquadEqualizer createEqualizer(float[] bands) {
+        BiquadEqualizer eq = new BiquadEqualizer(SAMPLE_RATE, bands);
+        // Every band active, zero-gain bands would be skipped
+        for (int i = 0; i < bands.length; i++) {
+            eq.setBandGain(i, i % 2 == 0 ? 6f : -4f);
+        }
+        eq.setEnabled(true);
+        return eq;
+    }
+
+    @Benchmark
+    public float[] spatial8D() {
+        // Fresh input each call, processing in place would feed back on itself
+        System.arraycopy(source, 0, buffer, 0, source.length);
+        spatial8D.process(buffer, frames);
+        return buffer;
+    }
+
+    @Benchmark
+    public float[] equalizer5Band() {
+        eq5.process(source, buffer, frames);
+        return buffer;
+    }
+
+    @Benchmark
+    public float[] equalizer10Band() {
+        eq10.process(source, buffer, frames);
+        return buffer;
+    }
+
+    @Benchmark
+    public float[] equalizer31Band() {
+        eq31.process(source, buffer, frames);
+        return buffer;
+    }
+
+    /** Mixing during a crossfade, added on top of the chain for the overlap. */
+    @Benchmark
+    public float[] crossfadeMix() {
+        EqualPowerCrossfade.mix(buffer, source, incoming, frames, frames, SAMPLE_RATE, SAMPLE_RATE * 4L);
+        return buffer;
+    }
+}
@@ -0,0 +1,45 @@
+package com.codetrio.spatialflow.benchmarks;
+
+import com.codetrio.spatialflow.util.FFmpegCommandBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command construction for exports, progressive renders and cache keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FFmpegCommandBuilderBenchmark {
+
+    private final String input = "/storage/emulated/0/Music/Artist - Some Fairly Long Song Title.mp3";
+    private final String output = "saf:12.m4a";
+    private final String pattern = "/data/user/0/com.codetrio.spatialflow/cache/8d_render_cache/"
+            + "0123456789abcdef0123456789abcdef01234567/p1_%03d.wav";
+    private final String list = "/data/user/0/com.codetrio.spatialflow/cache/8d_render_cache/"
+            + "0123456789abcdef0123456789abcdef01234567/list_1.csv";
+    private final String segmentTimes = "4.0,12.0,42.0,72.0,102.0";
+
+    @Benchmark
+    public String build8DExport() {
+        return FFmpegCommandBuilder.build8D(input, output, 0.2f, FFmpegCommandBuilder.Profile.EXPORT);
+    }
+
+    @Benchmark
+    public String build8DSegmentedShard() {
+        return FFmpegCommandBuilder.build8DSegmented(input, 120_000, 120_000, 4_000, pattern, list,
+                segmentTimes, 1.0f, FFmpegCommandBuilder.Profile.PREVIEW);
+    }
+
+    @Benchmark
+    public String describe8D() {
+        return FFmpegCommandBuilder.describe8D(1.0f, FFmpegCommandBuilder.Profile.PREVIEW);
+    }
+}
@@ -0,0 +1,128 @@
+package com.codetrio.spatialflow.benchmarks;
+
+import com.codetrio.spatialflow.model.Song;
+import com.codetrio.spatialflow.model.SongTable;
+import com.codetrio.spatialflow.util.SongOrders;
+import com.codetrio.spatialflow.util.SongSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Song picker search and sort over a synthetic library. Sorts start from the
+ * unsorted library on every call, the copy is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SongListBenchmark {
+
+    private static final String[] WORDS = {
+            "love", "night", "summer", "heart", "fire", "dream", "city", "light",
+            "blue", "road", "rain", "gold", "wild", "home", "echo", "river"
+    };
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private List<Song> songs;
+    private List<Song> work;
+    private SongTable table;
+    private SongSearchIndex index;
+    private SongOrders orders;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        songs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + i;
+            String artist = "Artist " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(200);
+            songs.add(new Song(i, title, artist, random.nextInt(500),
+                    "/storage/emulated/0/Music/" + title + ".mp3",
+                    1_600_000_000L + random.nextInt(100_000_000)));
+        }
+        work = new ArrayList<>(size);
+        table = tableBuild();
+        index = new SongSearchIndex(table);
+        orders = new SongOrders(table);
+    }
+
+    @Benchmark
+    public List<Song> filter() {
+        SongListUtils.filter(songs, "ri", work);
+        return work;
+    }
+
+    @Benchmark
+    public int[] indexSearchPrefix() {
+        return index.search("ri");
+    }
+
+    @Benchmark
+    public int[] indexSearchTwoWordsWithTypo() {
+        return index.search("lobe nig");
+    }
+
+    /** Search shown by artist: a permutation walk instead of a sort. */
+    @Benchmark
+    public int[] indexSearchByArtist() {
+        return index.search("ri", orders.get(SongOrders.ARTIST));
+    }
+
+    @Benchmark
+    public SongOrders ordersBuild() {
+        return new SongOrders(table);
+    }
+
+    @Benchmark
+    public SongSearchIndex indexBuild() {
+        return new SongSearchIndex(table);
+    }
+
+    /** Columnar library with shared title and artist strings. */
+    @Benchmark
+    public SongTable tableBuild() {
+        SongTable.Builder builder = new SongTable.Builder();
+        for (Song song : songs) {
+            builder.add(song.id, song.title, song.artist, song.albumId, song.path, song.dateAdded);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public List<Song> sortByName() {
+        work.clear();
+        work.addAll(songs);
+        SongListUtils.sortByName(work);
+        return work;
+    }
+
+    @Benchmark
+    public List<Song> sortByArtist() {
+        work.clear();
+        work.addAll(songs);
+        SongListUtils.sortByArtist(work);
+        return work;
+    }
+
+    @Benchmark
+    public List<Song> sortByDate() {
+        work.clear();
+        work.addAll(songs);
+        SongListUtils.sortByDate(work);
+        return work;
+    }
+}
@@ -0,0 +1,62 @@
+package com.codetrio.spatialflow.benchmarks;
+
+import com.codetrio.spatialflow.model.Song;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The song picker's search and sort before {@link
+ * com.codetrio.spatialflow.util.SongSearchIndex} and {@link
+ * com.codetrio.spatialflow.util.SongOrders}, kept as the baseline of
+ * {@link SongListBenchmark}.
+ */
+public class SongListUtils {
+
+    /**
+     * Replaces {@code out} with the songs whose title or artist contains
+     * {@code query}, ignoring case. An empty query matches everything.
+     */
+    public static void filter(List<Song> songs, String query, List<Song> out) {
+        out.clear();
+        if (query.isEmpty()) {
+            out.addAll(songs);
+            return;
+        }
+
+        String lowerQuery = query.toLowerCase().trim();
+        for (Song song : songs) {
+            if ((song.title != null && song.title.toLowerCase().contains(lowerQuery)) ||
+                    (song.artist != null && song.artist.toLowerCase().contains(lowerQuery))) {
+                out.add(song);
+            }
+        }
+    }
+
+    /**
+     * Songs without a title go last.
+     */
+    public static void sortByName(List<Song> songs) {
+        Collections.sort(songs, (a, b) -> compareIgnoreCase(a.title, b.title));
+    }
+
+    /**
+     * Songs without an artist go last.
+     */
+    public static void sortByArtist(List<Song> songs) {
+        Collections.sort(songs, (a, b) -> compareIgnoreCase(a.artist, b.artist));
+    }
+
+    /**
+     * Newest first.
+     */
+    public static void sortByDate(List<Song> songs) {
+        Collections.sort(songs, (a, b) -> Long.compare(b.dateAdded, a.dateAdded));
+    }
+
+    private static int compareIgnoreCase(String a, String b) {
+        if (a == null) return b == null ? 0 : 1;
+        if (b == null) return -1;
+        return a.compareToIgnoreCase(b);
+    }
+}
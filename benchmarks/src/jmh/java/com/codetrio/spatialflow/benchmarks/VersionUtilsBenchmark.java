@@ -0,0 +1,35 @@
+package com.codetrio.spatialflow.benchmarks;
+
+import com.codetrio.spatialflow.update.VersionUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update check version comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionUtilsBenchmark {
+
+    private String remote = "v1.10.3";
+    private String local = "1.9.12";
+    private String same = "v1.4";
+
+    @Benchmark
+    public boolean isNewer() {
+        return VersionUtils.isNewer(remote, local);
+    }
+
+    @Benchmark
+    public boolean isNewerEqual() {
+        return VersionUtils.isNewer(same, "1.4");
+    }
+}
@@ -0,0 +1,24 @@
+package android.util;
+
+/**
+ * No-op stand-in for the framework logger, so app classes that log compile
+ * and run on the desktop JVM.
+ */
+public final class Log {
+
+    private Log() { }
+
+    public static int v(String tag, String msg) { return 0; }
+
+    public static int d(String tag, String msg) { return 0; }
+
+    public static int i(String tag, String msg) { return 0; }
+
+    public static int w(String tag, String msg) { return 0; }
+
+    public static int w(String tag, String msg, Throwable tr) { return 0; }
+
+    public static int e(String tag, String msg) { return 0; }
+
+    public static int e(String tag, String msg, Throwable tr) { return 0; }
+}